@@ -0,0 +1,108 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+/**
+ * Creates typical TDLib objects used by benchmarks of the Java binding. The TDLib JNI library is loaded
+ * and TDLib logging is disabled when the class is initialized.
+ */
+final class BenchmarkObjects {
+    private BenchmarkObjects() {
+    }
+
+    static {
+        try {
+            System.loadLibrary("tdjni");
+        } catch (UnsatisfiedLinkError e) {
+            e.printStackTrace();
+        }
+        Client.execute(new TdApi.SetLogVerbosityLevel(0));
+    }
+
+    /**
+     * Ensures that the TDLib JNI library is loaded. Needed only by benchmarks, which don't create objects
+     * using other methods of the class before the first native call.
+     */
+    static void loadNativeLibrary() {
+        // the library is loaded by the static initializer
+    }
+
+    static String createText(int entityCount) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < entityCount; i++) {
+            text.append("Text with @mention").append(i).append(", https://t.me/link").append(i).append(" and #hashtag").append(i).append(". ");
+        }
+        return text.toString();
+    }
+
+    static TdApi.FormattedText createFormattedText(int entityCount) {
+        String text = createText(entityCount);
+        TdApi.TextEntity[] entities = new TdApi.TextEntity[entityCount];
+        int offset = 0;
+        for (int i = 0; i < entityCount; i++) {
+            int length = 10 + Integer.toString(i).length();
+            TdApi.TextEntityType type;
+            switch (i % 3) {
+                case 0:
+                    type = new TdApi.TextEntityTypeBold();
+                    break;
+                case 1:
+                    type = new TdApi.TextEntityTypeItalic();
+                    break;
+                default:
+                    type = new TdApi.TextEntityTypeTextUrl("https://t.me/link" + i);
+                    break;
+            }
+            entities[i] = new TdApi.TextEntity(offset, length, type);
+            offset = text.indexOf(". ", offset) + 2;
+        }
+        return new TdApi.FormattedText(text, entities);
+    }
+
+    static TdApi.Message createMessage(long chatId, long messageId, int entityCount) {
+        TdApi.Message message = new TdApi.Message();
+        message.id = messageId;
+        message.senderId = new TdApi.MessageSenderUser(5000000000L + messageId);
+        message.chatId = chatId;
+        message.canBeForwarded = true;
+        message.canBeSaved = true;
+        message.canBeDeletedOnlyForSelf = true;
+        message.isChannelPost = true;
+        message.date = 1650000000;
+        message.interactionInfo = new TdApi.MessageInteractionInfo(12345, 67, null, new TdApi.MessageReaction[0]);
+        message.unreadReactions = new TdApi.UnreadReaction[0];
+        message.authorSignature = "Author";
+        message.restrictionReason = "";
+        message.content = new TdApi.MessageText(createFormattedText(entityCount), null);
+        return message;
+    }
+
+    static TdApi.Chat createChat(long chatId, int entityCount) {
+        TdApi.Chat chat = new TdApi.Chat();
+        chat.id = chatId;
+        chat.type = new TdApi.ChatTypeSupergroup(-chatId - 1000000000000L, true);
+        chat.title = "Channel " + chatId;
+        chat.photo = new TdApi.ChatPhotoInfo(createFile(1), createFile(2), new TdApi.Minithumbnail(40, 40, new byte[800]), false);
+        chat.permissions = new TdApi.ChatPermissions(true, true, true, true, true, false, true, false);
+        chat.lastMessage = createMessage(chatId, 1 << 20, entityCount);
+        chat.positions = new TdApi.ChatPosition[]{new TdApi.ChatPosition(new TdApi.ChatListMain(), 1L << 52, false, null)};
+        chat.unreadCount = 42;
+        chat.lastReadInboxMessageId = 1 << 20;
+        chat.lastReadOutboxMessageId = 1 << 20;
+        chat.notificationSettings = new TdApi.ChatNotificationSettings(true, 0, true, "", true, true, true, false, true, false);
+        chat.availableReactions = new String[]{"\uD83D\uDC4D", "\uD83D\uDC4E", "\u2764"};
+        chat.themeName = "";
+        chat.videoChat = new TdApi.VideoChat(0, false, null);
+        chat.clientData = "";
+        return chat;
+    }
+
+    private static TdApi.File createFile(int fileId) {
+        return new TdApi.File(fileId, 12345, 12345, new TdApi.LocalFile("", true, false, false, false, 0, 0, 0),
+            new TdApi.RemoteFile("AQADAgATbOPnMgAEAgADbOPnMgAE" + fileId, "AQADbOPnMgAE" + fileId, false, true, 12345));
+    }
+}
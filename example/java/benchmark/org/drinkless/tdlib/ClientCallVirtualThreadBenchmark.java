@@ -0,0 +1,80 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stress test of Client.call with callerCount concurrent virtual threads, each of which waits for the result
+ * of its own request. Every operation fails if any call returns a wrong result or doesn't finish in time.
+ * The fork is run with "-Djdk.tracePinnedThreads=short", so a stack trace is printed if a waiting virtual thread
+ * pins its carrier thread. Requires JDK 21 or newer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Djdk.tracePinnedThreads=short"})
+public class ClientCallVirtualThreadBenchmark {
+    @Param({"100000"})
+    public int callerCount;
+
+    private Client client;
+
+    @Setup
+    public void setup() {
+        BenchmarkObjects.loadNativeLibrary();
+        client = Client.create(object -> {
+        }, null, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.send(new TdApi.Close(), null);
+    }
+
+    @Benchmark
+    public long callers() {
+        AtomicLong failedCallCount = new AtomicLong();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < callerCount; i++) {
+                int value = i % 46341; // the square must fit into int32
+                executor.execute(() -> {
+                    try {
+                        TdApi.TestInt result = client.call(new TdApi.TestSquareInt(value), 60, TimeUnit.SECONDS);
+                        if (result.value != value * value) {
+                            failedCallCount.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failedCallCount.incrementAndGet();
+                    }
+                });
+            }
+        } // waits for all callers
+        if (failedCallCount.get() != 0) {
+            throw new IllegalStateException(failedCallCount.get() + " of " + callerCount + " calls failed");
+        }
+        return callerCount;
+    }
+}
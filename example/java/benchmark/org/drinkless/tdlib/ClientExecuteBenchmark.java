@@ -0,0 +1,65 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures throughput of synchronous requests executed by Client.execute. getTextEntities converts a string
+ * with size entities to the TDLib and materializes the found entities; getJsonValue materializes a tree
+ * of about 10 * size objects from a small string argument.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientExecuteBenchmark {
+    @Param({"10", "1000"})
+    public int size;
+
+    private TdApi.GetTextEntities getTextEntities;
+    private TdApi.GetJsonValue getJsonValue;
+
+    @Setup
+    public void setup() {
+        getTextEntities = new TdApi.GetTextEntities(BenchmarkObjects.createText(size));
+
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(i).append(",\"is_outgoing\":false,\"date\":1650000000,\"text\":\"message ")
+                .append(i).append("\",\"entities\":[{\"offset\":0,\"length\":7},{\"offset\":8,\"length\":3}]}");
+        }
+        getJsonValue = new TdApi.GetJsonValue(json.append(']').toString());
+    }
+
+    @Benchmark
+    public TdApi.Object getTextEntities() {
+        return Client.execute(getTextEntities);
+    }
+
+    @Benchmark
+    public TdApi.Object getJsonValue() {
+        return Client.execute(getJsonValue);
+    }
+}
@@ -0,0 +1,82 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures round trip of requests through Client.send, nativeClientSend, the TDLib and nativeClientReceive
+ * for a client, which wasn't initialized. testCallEmpty gives the fixed cost of a request; sendMessage converts
+ * a big request with size text entities and receives a small error; testCallVectorStringObject converts and
+ * materializes size objects in both directions. Results are received through JNI objects if binaryTransportBufferSize
+ * is 0 and through a direct buffer in TL binary format otherwise.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientSendReceiveBenchmark {
+    @Param({"10", "1000"})
+    public int size;
+
+    @Param({"0", "1048576"})
+    public int binaryTransportBufferSize;
+
+    private Client client;
+    private TdApi.SendMessage sendMessage;
+    private TdApi.TestCallVectorStringObject testCallVectorStringObject;
+
+    @Setup
+    public void setup() {
+        sendMessage = new TdApi.SendMessage(-1001234567890L, 0, 0, null, null, new TdApi.InputMessageText(BenchmarkObjects.createFormattedText(size), false, true));
+        TdApi.TestString[] strings = new TdApi.TestString[size];
+        for (int i = 0; i < size; i++) {
+            strings[i] = new TdApi.TestString("string " + i);
+        }
+        testCallVectorStringObject = new TdApi.TestCallVectorStringObject(strings);
+        // every benchmark is run in a new JVM, so no Client was created yet
+        Client.setBinaryTransportBufferSize(binaryTransportBufferSize);
+        client = Client.create(object -> {
+        }, null, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.send(new TdApi.Close(), null);
+    }
+
+    @Benchmark
+    public Object testCallEmpty() {
+        return client.sendAsync(new TdApi.TestCallEmpty()).join();
+    }
+
+    @Benchmark
+    public Object sendMessage() {
+        // the client isn't initialized, so the request fails after it is converted
+        return client.sendAsync(sendMessage).handle((result, error) -> error).join();
+    }
+
+    @Benchmark
+    public Object testCallVectorStringObject() {
+        return client.sendAsync(testCallVectorStringObject).join();
+    }
+}
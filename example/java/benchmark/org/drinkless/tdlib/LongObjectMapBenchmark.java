@@ -0,0 +1,81 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares memory footprint of LongObjectMap and ConcurrentHashMap with boxed keys previously used by entity caches.
+ * Every operation fills a new map with entryCount entries. Retained heap size per entry is reported
+ * as the secondary result "bytesPerEntry"; values are shared between entries, so only the map overhead is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class LongObjectMapBenchmark {
+    @Param({"1000000", "10000000"})
+    public int entryCount;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long bytesPerEntry;
+    }
+
+    private final Object value = new Object();
+
+    private static long getUsedHeapSize() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // user identifiers are big and mostly increasing
+    private static long getKey(int i) {
+        return 5000000000L + i * 3L;
+    }
+
+    @Benchmark
+    public Object longObjectMap(Footprint footprint) {
+        long usedHeapSize = getUsedHeapSize();
+        LongObjectMap<Object> map = new LongObjectMap<Object>();
+        for (int i = 0; i < entryCount; i++) {
+            map.put(getKey(i), value);
+        }
+        footprint.bytesPerEntry = (getUsedHeapSize() - usedHeapSize) / entryCount;
+        return map;
+    }
+
+    @Benchmark
+    public Object concurrentHashMap(Footprint footprint) {
+        long usedHeapSize = getUsedHeapSize();
+        ConcurrentHashMap<Long, Object> map = new ConcurrentHashMap<Long, Object>();
+        for (int i = 0; i < entryCount; i++) {
+            map.put(getKey(i), value);
+        }
+        footprint.bytesPerEntry = (getUsedHeapSize() - usedHeapSize) / entryCount;
+        return map;
+    }
+}
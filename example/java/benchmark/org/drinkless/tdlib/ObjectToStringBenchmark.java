@@ -0,0 +1,65 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures TdApi.Object.toString and TdApi.Object.toJson for typical big objects. Both representations are built
+ * in Java without calls to the native code.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectToStringBenchmark {
+    @Param({"0", "100"})
+    public int entityCount;
+
+    private TdApi.Message message;
+    private TdApi.Chat chat;
+
+    @Setup
+    public void setup() {
+        message = BenchmarkObjects.createMessage(-1001234567890L, 1 << 20, entityCount);
+        chat = BenchmarkObjects.createChat(-1001234567890L, entityCount);
+    }
+
+    @Benchmark
+    public String message() {
+        return message.toString();
+    }
+
+    @Benchmark
+    public String chat() {
+        return chat.toString();
+    }
+
+    @Benchmark
+    public String messageJson() {
+        return message.toJson();
+    }
+
+    @Benchmark
+    public String chatJson() {
+        return chat.toJson();
+    }
+}
@@ -0,0 +1,134 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares OrderedChatList with TreeSet guarded by a global lock previously used by the Java example.
+ * Chats are moved by a single writer like the update handler does, while top chats are read by other threads.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderedChatListBenchmark {
+    @Param({"100000"})
+    public int chatCount;
+
+    @Param({"100"})
+    public int limit;
+
+    private static final class OrderedChat implements Comparable<OrderedChat> {
+        final long chatId;
+        final long order;
+
+        OrderedChat(long chatId, long order) {
+            this.chatId = chatId;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(OrderedChat o) {
+            if (this.order != o.order) {
+                return o.order < this.order ? -1 : 1;
+            }
+            if (this.chatId != o.chatId) {
+                return o.chatId < this.chatId ? -1 : 1;
+            }
+            return 0;
+        }
+    }
+
+    private final NavigableSet<OrderedChat> treeSet = new TreeSet<OrderedChat>();
+    private final HashMap<Long, Long> treeSetOrders = new HashMap<Long, Long>();
+    private final OrderedChatList chatList = new OrderedChatList();
+    private final Random random = new Random(0);
+    private long currentOrder;
+
+    @Setup
+    public void setup() {
+        for (long chatId = 1; chatId <= chatCount; chatId++) {
+            long order = nextOrder();
+            treeSet.add(new OrderedChat(chatId, order));
+            treeSetOrders.put(chatId, order);
+            chatList.setChatOrder(chatId, order);
+        }
+    }
+
+    private long nextOrder() {
+        // most moves bring a chat to the top of the list, as new messages do
+        currentOrder += 1 + random.nextInt(10);
+        return random.nextInt(10) == 0 ? Math.max(1, currentOrder - random.nextInt(chatCount)) : currentOrder;
+    }
+
+    private long nextChatId() {
+        return 1 + random.nextInt(chatCount);
+    }
+
+    @Benchmark
+    @Group("treeSet")
+    @GroupThreads(1)
+    public void treeSetMove() {
+        synchronized (treeSet) {
+            long chatId = nextChatId();
+            long order = nextOrder();
+            long oldOrder = treeSetOrders.put(chatId, order);
+            treeSet.remove(new OrderedChat(chatId, oldOrder));
+            treeSet.add(new OrderedChat(chatId, order));
+        }
+    }
+
+    @Benchmark
+    @Group("treeSet")
+    @GroupThreads(3)
+    public long treeSetTop() {
+        long result = 0;
+        synchronized (treeSet) {
+            Iterator<OrderedChat> it = treeSet.iterator();
+            for (int i = 0; i < limit && it.hasNext(); i++) {
+                result += it.next().chatId;
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    @Group("orderedChatList")
+    @GroupThreads(1)
+    public void orderedChatListMove() {
+        chatList.setChatOrder(nextChatId(), nextOrder());
+    }
+
+    @Benchmark
+    @Group("orderedChatList")
+    @GroupThreads(3)
+    public long[] orderedChatListTop() {
+        return chatList.getChatIds(limit);
+    }
+}
@@ -0,0 +1,68 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares PendingRequestTable with ConcurrentHashMap previously used by Client for handlers of pending requests.
+ * Every operation sends a new request and receives the result of the request sent inFlight requests before.
+ * Run with "-prof gc" to compare allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PendingRequestTableBenchmark {
+    @Param({"16", "1000", "100000"})
+    public int inFlight;
+
+    private final Object handler = new Object();
+
+    private PendingRequestTable<Object> table;
+    private ConcurrentHashMap<Long, Object> map;
+    private long currentQueryId;
+
+    @Setup
+    public void setup() {
+        table = new PendingRequestTable<Object>(1 << 14);
+        map = new ConcurrentHashMap<Long, Object>();
+        for (currentQueryId = 1; currentQueryId <= inFlight; currentQueryId++) {
+            table.put(currentQueryId, handler);
+            map.put(currentQueryId, handler);
+        }
+    }
+
+    @Benchmark
+    public Object pendingRequestTable() {
+        long queryId = currentQueryId++;
+        table.put(queryId, handler);
+        return table.remove(queryId - inFlight);
+    }
+
+    @Benchmark
+    public Object concurrentHashMap() {
+        long queryId = currentQueryId++;
+        map.put(queryId, handler);
+        return map.remove(queryId - inFlight);
+    }
+}
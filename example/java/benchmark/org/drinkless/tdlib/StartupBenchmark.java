@@ -0,0 +1,60 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures cold start of the Java binding: loading of the TDLib JNI library, including initialization
+ * of JNI classes of TDLib API objects, and the first synchronous request. Every measurement is done in a new JVM.
+ * Resident memory of the JVM after the start is printed to the output of each fork on Linux.
+ * To compare eager and lazy initialization of JNI classes, run the benchmark with TDLib built with
+ * TD_ENABLE_JNI_LAZY_INIT set to OFF and ON.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class StartupBenchmark {
+    @Benchmark
+    public TdApi.Object startup() {
+        BenchmarkObjects.loadNativeLibrary();
+        return Client.execute(new TdApi.GetTextEntities("@username https://t.me/username #hashtag"));
+    }
+
+    @TearDown(Level.Trial)
+    public void printResidentMemory() throws IOException {
+        Path status = Paths.get("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return;
+        }
+        for (String line : Files.readAllLines(status, StandardCharsets.UTF_8)) {
+            if (line.startsWith("VmRSS:")) {
+                System.out.println("Resident memory: " + line.substring(6).trim());
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures conversion of strings between Java and the TDLib for a batch of size messages, each of which has
+ * a username, a link, a language code and a text. toNative converts the strings from Java with getJsonString;
+ * fromNative converts the strings to Java with getJsonValue. Usernames and language codes are repeated between
+ * messages, texts are unique. If ascii is false, texts contain Cyrillic letters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringConversionBenchmark {
+    private static final String ASCII_TEXT = "Message text number ";
+    // the same text in Russian
+    private static final String NON_ASCII_TEXT = "\u0422\u0435\u043a\u0441\u0442 \u0441\u043e\u043e\u0431\u0449\u0435\u043d\u0438\u044f \u043d\u043e\u043c\u0435\u0440 ";
+
+    @Param({"100"})
+    public int size;
+
+    @Param({"true", "false"})
+    public boolean ascii;
+
+    private TdApi.GetJsonString getJsonString;
+    private TdApi.GetJsonValue getJsonValue;
+
+    @Setup
+    public void setup() {
+        TdApi.JsonValue[] messages = new TdApi.JsonValue[size];
+        for (int i = 0; i < size; i++) {
+            String username = "user" + (i % 10);
+            String text = (ascii ? ASCII_TEXT : NON_ASCII_TEXT) + i;
+            messages[i] = new TdApi.JsonValueObject(new TdApi.JsonObjectMember[] {
+                new TdApi.JsonObjectMember("username", new TdApi.JsonValueString(username)),
+                new TdApi.JsonObjectMember("link", new TdApi.JsonValueString("https://t.me/" + username + "/" + i)),
+                new TdApi.JsonObjectMember("language_code", new TdApi.JsonValueString(i % 2 == 0 ? "en" : "ru")),
+                new TdApi.JsonObjectMember("text", new TdApi.JsonValueString(text))
+            });
+        }
+        getJsonString = new TdApi.GetJsonString(new TdApi.JsonValueArray(messages));
+
+        BenchmarkObjects.loadNativeLibrary();
+        TdApi.Object json = Client.execute(getJsonString);
+        if (!(json instanceof TdApi.Text)) {
+            throw new IllegalStateException("Unexpected result " + json);
+        }
+        getJsonValue = new TdApi.GetJsonValue(((TdApi.Text) json).text);
+    }
+
+    @Benchmark
+    public TdApi.Object toNative() {
+        return Client.execute(getJsonString);
+    }
+
+    @Benchmark
+    public TdApi.Object fromNative() {
+        return Client.execute(getJsonValue);
+    }
+}
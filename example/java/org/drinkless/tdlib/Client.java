@@ -6,13 +6,28 @@
 //
 package org.drinkless.tdlib;
 
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
 
 /**
  * Main class for interaction with the TDLib.
  */
-public final class Client {
+public final class Client implements QuerySender {
     /**
      * Interface for handler for results of queries to TDLib and incoming updates from TDLib.
      */
@@ -25,6 +40,20 @@ public final class Client {
         void onResult(TdApi.Object object);
     }
 
+    /**
+     * Interface for handler of incoming updates of a specific type.
+     *
+     * @param <T> Type of the handled updates.
+     */
+    public interface UpdateTypeHandler<T extends TdApi.Update> {
+        /**
+         * Callback called on incoming update of the type, for which the handler was registered.
+         *
+         * @param update The update.
+         */
+        void onUpdate(T update);
+    }
+
     /**
      * Interface for handler of exceptions thrown while invoking ResultHandler.
      * By default, all such exceptions are ignored.
@@ -39,6 +68,206 @@ public final class Client {
         void onException(Throwable e);
     }
 
+    /**
+     * Exception with which futures returned by sendAsync are completed and which is thrown by call
+     * if TDLib returns TdApi.Error.
+     */
+    public static class TdlibException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Error returned by the TDLib.
+         */
+        public final TdApi.Error error;
+
+        /**
+         * @param error Error returned by the TDLib.
+         */
+        public TdlibException(TdApi.Error error) {
+            super(error.code + ": " + error.message);
+            this.error = error;
+        }
+    }
+
+    /**
+     * Describes what happens when the update queue of a client is full.
+     */
+    public enum UpdateQueueOverflowPolicy {
+        /**
+         * The TDLib thread waits until there is free space in the queue. Results for all clients are delayed.
+         */
+        BLOCK,
+
+        /**
+         * A queued update, which is superseded by the new update, is removed from the queue. For example, a queued
+         * TdApi.UpdateUserStatus is removed if a newer TdApi.UpdateUserStatus for the same user is received.
+         * If there is no such update, the TDLib thread waits until there is free space in the queue.
+         */
+        COALESCE,
+
+        /**
+         * The new update is dropped if its type is one of the droppable update types.
+         * Otherwise, the TDLib thread waits until there is free space in the queue.
+         */
+        DROP
+    }
+
+    /**
+     * Describes priority class of a request. Priorities are taken into account only if the concurrency limit
+     * of the client is enabled.
+     */
+    public enum RequestPriority {
+        /**
+         * The request is needed to respond to a user action. Waiting interactive requests are sent before
+         * waiting bulk requests.
+         */
+        INTERACTIVE,
+
+        /**
+         * The request is a part of a background job. Waiting bulk requests receive at least minBulkShare
+         * of free slots even if there are waiting interactive requests.
+         */
+        BULK
+    }
+
+    /**
+     * Contains parameters of the queue of updates waiting to be handled by a client's update handler.
+     */
+    public static class UpdateQueueParameters {
+        /**
+         * Maximum number of updates in the queue. Must be positive.
+         */
+        public int capacity;
+
+        /**
+         * Policy to apply when the queue is full.
+         */
+        public UpdateQueueOverflowPolicy overflowPolicy;
+
+        /**
+         * Constructors of updates, which can be dropped if the queue is full and overflowPolicy is DROP. Can be null.
+         */
+        public int[] droppableUpdateConstructors;
+
+        /**
+         * True, if a queued update must be removed from the queue as soon as a newer update superseding it is received,
+         * even if the queue isn't full. This way updates waiting while the update handler is busy are coalesced.
+         */
+        public boolean coalesceUpdates;
+
+        /**
+         * Default constructor for update queue parameters with capacity 10000 and BLOCK overflow policy.
+         */
+        public UpdateQueueParameters() {
+            this(10000, UpdateQueueOverflowPolicy.BLOCK, null, false);
+        }
+
+        /**
+         * Creates update queue parameters.
+         *
+         * @param capacity                    Maximum number of updates in the queue. Must be positive.
+         * @param overflowPolicy              Policy to apply when the queue is full.
+         * @param droppableUpdateConstructors Constructors of updates, which can be dropped if the queue is full
+         *                                    and overflowPolicy is DROP. Can be null.
+         */
+        public UpdateQueueParameters(int capacity, UpdateQueueOverflowPolicy overflowPolicy, int[] droppableUpdateConstructors) {
+            this(capacity, overflowPolicy, droppableUpdateConstructors, false);
+        }
+
+        /**
+         * Creates update queue parameters.
+         *
+         * @param capacity                    Maximum number of updates in the queue. Must be positive.
+         * @param overflowPolicy              Policy to apply when the queue is full.
+         * @param droppableUpdateConstructors Constructors of updates, which can be dropped if the queue is full
+         *                                    and overflowPolicy is DROP. Can be null.
+         * @param coalesceUpdates             True, if queued updates must be removed from the queue as soon as
+         *                                    newer updates superseding them are received.
+         */
+        public UpdateQueueParameters(int capacity, UpdateQueueOverflowPolicy overflowPolicy, int[] droppableUpdateConstructors, boolean coalesceUpdates) {
+            this.capacity = capacity;
+            this.overflowPolicy = overflowPolicy;
+            this.droppableUpdateConstructors = droppableUpdateConstructors;
+            this.coalesceUpdates = coalesceUpdates;
+        }
+    }
+
+    /**
+     * Contains parameters of the adaptive limit on the number of requests of a client in flight.
+     */
+    public static class ConcurrencyLimitParameters {
+        /**
+         * Initial maximum number of requests in flight.
+         */
+        public int initialLimit;
+
+        /**
+         * The limit is never decreased below this value. Must be positive.
+         */
+        public int minLimit;
+
+        /**
+         * The limit is never increased above this value.
+         */
+        public int maxLimit;
+
+        /**
+         * Requests with bigger latency are considered as a sign of overload, which causes the limit to be decreased.
+         */
+        public long targetLatencyMillis;
+
+        /**
+         * The limit is multiplied by this value on overload. Must be between 0 and 1.
+         */
+        public double backoffRatio;
+
+        /**
+         * Minimum share of admitted requests, which is reserved for BULK requests while there are waiting
+         * INTERACTIVE requests. Must be between 0 and 1.
+         */
+        public double minBulkShare;
+
+        /**
+         * Default constructor for concurrency limit parameters with initial limit 64, which can change from 1 to 10000,
+         * target latency of 1 second, backoff ratio 0.9 and minimum bulk share 0.1.
+         */
+        public ConcurrencyLimitParameters() {
+            this(64, 1, 10000, 1000, 0.9, 0.1);
+        }
+
+        /**
+         * Creates concurrency limit parameters.
+         *
+         * @param initialLimit        Initial maximum number of requests in flight.
+         * @param minLimit            Minimum value of the limit. Must be positive.
+         * @param maxLimit            Maximum value of the limit.
+         * @param targetLatencyMillis Maximum latency of a request, which doesn't cause the limit to be decreased.
+         * @param backoffRatio        Multiplier of the limit on overload. Must be between 0 and 1.
+         */
+        public ConcurrencyLimitParameters(int initialLimit, int minLimit, int maxLimit, long targetLatencyMillis, double backoffRatio) {
+            this(initialLimit, minLimit, maxLimit, targetLatencyMillis, backoffRatio, 0.1);
+        }
+
+        /**
+         * Creates concurrency limit parameters.
+         *
+         * @param initialLimit        Initial maximum number of requests in flight.
+         * @param minLimit            Minimum value of the limit. Must be positive.
+         * @param maxLimit            Maximum value of the limit.
+         * @param targetLatencyMillis Maximum latency of a request, which doesn't cause the limit to be decreased.
+         * @param backoffRatio        Multiplier of the limit on overload. Must be between 0 and 1.
+         * @param minBulkShare        Minimum share of admitted requests reserved for BULK requests. Must be between 0 and 1.
+         */
+        public ConcurrencyLimitParameters(int initialLimit, int minLimit, int maxLimit, long targetLatencyMillis, double backoffRatio, double minBulkShare) {
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.targetLatencyMillis = targetLatencyMillis;
+            this.backoffRatio = backoffRatio;
+            this.minBulkShare = minBulkShare;
+        }
+    }
+
     /**
      * Sends a request to the TDLib.
      *
@@ -51,12 +280,38 @@ public final class Client {
      *                         defaultExceptionHandler will be called.
      * @throws NullPointerException if query is null.
      */
-    public void send(TdApi.Function query, ResultHandler resultHandler, ExceptionHandler exceptionHandler) {
+    public void send(TdApi.Function<?> query, ResultHandler resultHandler, ExceptionHandler exceptionHandler) {
+        send(query, resultHandler, exceptionHandler, RequestPriority.INTERACTIVE);
+    }
+
+    /**
+     * Sends a request to the TDLib with the given priority.
+     *
+     * @param query            Object representing a query to the TDLib.
+     * @param resultHandler    Result handler with onResult method which will be called with result
+     *                         of the query or with TdApi.Error as parameter. If it is null, nothing
+     *                         will be called.
+     * @param exceptionHandler Exception handler with onException method which will be called on
+     *                         exception thrown from resultHandler. If it is null, then
+     *                         defaultExceptionHandler will be called.
+     * @param priority         Priority class of the request.
+     * @throws NullPointerException if query or priority is null.
+     */
+    public void send(TdApi.Function<?> query, ResultHandler resultHandler, ExceptionHandler exceptionHandler, RequestPriority priority) {
+        if (priority == null) {
+            throw new NullPointerException("priority is null");
+        }
         long queryId = currentQueryId.incrementAndGet();
-        if (resultHandler != null) {
-            handlers.put(queryId, new Handler(resultHandler, exceptionHandler));
+        ConcurrencyLimiter limiter = concurrencyLimiter;
+        if (limiter != null) {
+            sendLimited(limiter, queryId, query, resultHandler, exceptionHandler, priority);
+            return;
         }
-        nativeClientSend(nativeClientId, queryId, query);
+        Handler handler = createHandler(queryId, query, resultHandler, exceptionHandler);
+        if (handler != null) {
+            handlers.put(queryId, handler);
+        }
+        sendNative(queryId, query);
     }
 
     /**
@@ -68,10 +323,221 @@ public final class Client {
      *                      defaultExceptionHandler will be called.
      * @throws NullPointerException if query is null.
      */
-    public void send(TdApi.Function query, ResultHandler resultHandler) {
+    public void send(TdApi.Function<?> query, ResultHandler resultHandler) {
         send(query, resultHandler, null);
     }
 
+    /**
+     * Sends several requests to the TDLib at once. This is equivalent to sending the requests one by one,
+     * but all queries are passed to the TDLib in a single native call.
+     *
+     * @param queries          Objects representing queries to the TDLib.
+     * @param resultHandlers   Result handlers for the queries with the same indices. The array can be null
+     *                         or contain null values, then nothing will be called for corresponding queries.
+     * @param exceptionHandler Exception handler with onException method which will be called on
+     *                         exception thrown from resultHandlers. If it is null, then
+     *                         defaultExceptionHandler will be called.
+     * @throws NullPointerException     if queries or any of the queries is null.
+     * @throws IllegalArgumentException if resultHandlers and queries have different length.
+     */
+    @Override
+    public void sendBatch(TdApi.Function<?>[] queries, ResultHandler[] resultHandlers, ExceptionHandler exceptionHandler) {
+        sendBatch(queries, resultHandlers, exceptionHandler, RequestPriority.INTERACTIVE);
+    }
+
+    /**
+     * Sends several requests to the TDLib at once with the given priority. This is equivalent to sending
+     * the requests one by one, but all queries are passed to the TDLib in a single native call if the concurrency
+     * limit isn't enabled.
+     *
+     * @param queries          Objects representing queries to the TDLib.
+     * @param resultHandlers   Result handlers for the queries with the same indices. The array can be null
+     *                         or contain null values, then nothing will be called for corresponding queries.
+     * @param exceptionHandler Exception handler with onException method which will be called on
+     *                         exception thrown from resultHandlers. If it is null, then
+     *                         defaultExceptionHandler will be called.
+     * @param priority         Priority class of the requests.
+     * @throws NullPointerException     if queries, any of the queries or priority is null.
+     * @throws IllegalArgumentException if resultHandlers and queries have different length.
+     */
+    public void sendBatch(TdApi.Function<?>[] queries, ResultHandler[] resultHandlers, ExceptionHandler exceptionHandler, RequestPriority priority) {
+        if (priority == null) {
+            throw new NullPointerException("priority is null");
+        }
+        if (resultHandlers != null && resultHandlers.length != queries.length) {
+            throw new IllegalArgumentException("Number of result handlers must be equal to the number of queries");
+        }
+        for (TdApi.Function<?> query : queries) {
+            if (query == null) {
+                throw new NullPointerException("query is null");
+            }
+        }
+        if (queries.length == 0) {
+            return;
+        }
+        if (concurrencyLimiter != null) {
+            // every query is admitted separately
+            for (int i = 0; i < queries.length; i++) {
+                send(queries[i], resultHandlers == null ? null : resultHandlers[i], exceptionHandler, priority);
+            }
+            return;
+        }
+
+        long firstQueryId = currentQueryId.getAndAdd(queries.length) + 1;
+        for (int i = 0; i < queries.length; i++) {
+            Handler handler = createHandler(firstQueryId + i, queries[i], resultHandlers == null ? null : resultHandlers[i], exceptionHandler);
+            if (handler != null) {
+                handlers.put(firstQueryId + i, handler);
+            }
+        }
+        ClientEvents.RequestSendEvent event = new ClientEvents.RequestSendEvent();
+        event.begin();
+        int[] sentCount = new int[1];
+        try {
+            nativeClientSendBatch(nativeClientId, firstQueryId, queries, sentCount);
+        } catch (RuntimeException | Error e) {
+            // queries after the failed one weren't sent, so their handlers will never be called
+            for (int i = sentCount[0]; i < queries.length; i++) {
+                handlers.remove(firstQueryId + i);
+            }
+            throw e;
+        }
+        if (event.shouldCommit()) {
+            event.clientId = nativeClientId;
+            event.queryId = firstQueryId;
+            event.queryCount = queries.length;
+            event.functionConstructor = queries[0].getConstructor();
+            event.commit();
+        }
+    }
+
+    /**
+     * Sends several requests to the TDLib at once with an empty ExceptionHandler.
+     *
+     * @param queries        Objects representing queries to the TDLib.
+     * @param resultHandlers Result handlers for the queries with the same indices. The array can be null
+     *                       or contain null values, then nothing will be called for corresponding queries.
+     * @throws NullPointerException     if queries or any of the queries is null.
+     * @throws IllegalArgumentException if resultHandlers and queries have different length.
+     */
+    public void sendBatch(TdApi.Function<?>[] queries, ResultHandler[] resultHandlers) {
+        sendBatch(queries, resultHandlers, null);
+    }
+
+    /**
+     * Sends a request to the TDLib and returns a future for its result.
+     * The future is completed exceptionally with TdlibException if the TDLib returns TdApi.Error.
+     * If the future is cancelled or completed before the result is received, the result will be ignored.
+     *
+     * @param query Object representing a query to the TDLib.
+     * @param <R>   Type of the query result.
+     * @return future, which will be completed with the result of the query.
+     * @throws NullPointerException if query is null.
+     */
+    public <R extends TdApi.Object> CompletableFuture<R> sendAsync(TdApi.Function<R> query) {
+        return sendAsync(query, RequestPriority.INTERACTIVE);
+    }
+
+    /**
+     * Sends a request with the given priority to the TDLib and returns a future for its result.
+     * The future is completed exceptionally with TdlibException if the TDLib returns TdApi.Error.
+     * If the future is cancelled or completed before the result is received, the result will be ignored.
+     *
+     * @param query    Object representing a query to the TDLib.
+     * @param priority Priority class of the request.
+     * @param <R>      Type of the query result.
+     * @return future, which will be completed with the result of the query.
+     * @throws NullPointerException if query or priority is null.
+     */
+    public <R extends TdApi.Object> CompletableFuture<R> sendAsync(TdApi.Function<R> query, RequestPriority priority) {
+        if (priority == null) {
+            throw new NullPointerException("priority is null");
+        }
+        long queryId = currentQueryId.incrementAndGet();
+        AsyncResultHandler<R> resultHandler = new AsyncResultHandler<R>(queryId);
+        ConcurrencyLimiter limiter = concurrencyLimiter;
+        if (limiter != null) {
+            resultHandler.limitedQuery = sendLimited(limiter, queryId, query, resultHandler, resultHandler, priority);
+        } else {
+            handlers.put(queryId, createHandler(queryId, query, resultHandler, resultHandler));
+            sendNative(queryId, query);
+        }
+        resultHandler.future.whenComplete(resultHandler);
+        return resultHandler.future;
+    }
+
+    /**
+     * Sends a request to the TDLib and returns a future for its result, which is completed exceptionally
+     * with java.util.concurrent.TimeoutException if the result isn't received in the specified time.
+     *
+     * @param query   Object representing a query to the TDLib.
+     * @param timeout Maximum time to wait for the result of the query.
+     * @param unit    Unit of the timeout.
+     * @param <R>     Type of the query result.
+     * @return future, which will be completed with the result of the query.
+     * @throws NullPointerException if query or unit is null.
+     */
+    public <R extends TdApi.Object> CompletableFuture<R> sendAsync(TdApi.Function<R> query, long timeout, TimeUnit unit) {
+        return sendAsync(query).orTimeout(timeout, unit);
+    }
+
+    /**
+     * Sends a request to the TDLib and waits for its result. The calling thread is parked using LockSupport
+     * without holding any monitors, so a waiting virtual thread doesn't pin its carrier thread.
+     *
+     * @param query Object representing a query to the TDLib.
+     * @param <R>   Type of the query result.
+     * @return the result of the query.
+     * @throws NullPointerException if query is null.
+     * @throws TdlibException       if the TDLib returned TdApi.Error.
+     * @throws InterruptedException if the calling thread was interrupted while waiting. The result will be ignored.
+     */
+    public <R extends TdApi.Object> R call(TdApi.Function<R> query) throws TdlibException, InterruptedException {
+        return call(query, RequestPriority.INTERACTIVE);
+    }
+
+    /**
+     * Sends a request with the given priority to the TDLib and waits for its result. The calling thread is parked
+     * using LockSupport without holding any monitors, so a waiting virtual thread doesn't pin its carrier thread.
+     *
+     * @param query    Object representing a query to the TDLib.
+     * @param priority Priority class of the request.
+     * @param <R>      Type of the query result.
+     * @return the result of the query.
+     * @throws NullPointerException if query or priority is null.
+     * @throws TdlibException       if the TDLib returned TdApi.Error.
+     * @throws InterruptedException if the calling thread was interrupted while waiting. The result will be ignored.
+     */
+    public <R extends TdApi.Object> R call(TdApi.Function<R> query, RequestPriority priority) throws TdlibException, InterruptedException {
+        try {
+            return call(query, priority, 0);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(e); // can't happen without a timeout
+        }
+    }
+
+    /**
+     * Sends a request to the TDLib and waits for its result at most the specified time. The calling thread is parked
+     * using LockSupport without holding any monitors, so a waiting virtual thread doesn't pin its carrier thread.
+     *
+     * @param query   Object representing a query to the TDLib.
+     * @param timeout Maximum time to wait for the result of the query. Must be positive.
+     * @param unit    Unit of the timeout.
+     * @param <R>     Type of the query result.
+     * @return the result of the query.
+     * @throws NullPointerException     if query or unit is null.
+     * @throws IllegalArgumentException if timeout isn't positive.
+     * @throws TdlibException           if the TDLib returned TdApi.Error.
+     * @throws InterruptedException     if the calling thread was interrupted while waiting. The result will be ignored.
+     * @throws TimeoutException         if the result wasn't received in time. The result will be ignored.
+     */
+    public <R extends TdApi.Object> R call(TdApi.Function<R> query, long timeout, TimeUnit unit) throws TdlibException, InterruptedException, TimeoutException {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        return call(query, RequestPriority.INTERACTIVE, unit.toNanos(timeout));
+    }
+
     /**
      * Synchronously executes a TDLib request. Only a few marked accordingly requests can be executed synchronously.
      *
@@ -79,7 +545,7 @@ public final class Client {
      * @return request result.
      * @throws NullPointerException if query is null.
      */
-    public static TdApi.Object execute(TdApi.Function query) {
+    public static TdApi.Object execute(TdApi.Function<?> query) {
         return nativeClientExecute(query);
     }
 
@@ -92,11 +558,46 @@ public final class Client {
      * @return created Client
      */
     public static Client create(ResultHandler updateHandler, ExceptionHandler updateExceptionHandler, ExceptionHandler defaultExceptionHandler) {
-        Client client = new Client(updateHandler, updateExceptionHandler, defaultExceptionHandler);
+        return create(updateHandler, updateExceptionHandler, defaultExceptionHandler, null);
+    }
+
+    /**
+     * Creates new Client with a bounded queue of updates. Updates and results of queries are added to the queue
+     * by the TDLib thread and handled by a dispatcher thread, so a Client with an update queue can be created
+     * only if setDispatcherThreadCount was called with a positive number of threads.
+     *
+     * @param updateHandler           Handler for incoming updates.
+     * @param updateExceptionHandler  Handler for exceptions thrown from updateHandler. If it is null, exceptions will be iggnored.
+     * @param defaultExceptionHandler Default handler for exceptions thrown from all ResultHandler. If it is null, exceptions will be iggnored.
+     * @param updateQueueParameters   Parameters of the update queue. If it is null, updates are handled without a bounded queue.
+     * @return created Client
+     * @throws IllegalArgumentException if capacity of the update queue isn't positive.
+     * @throws IllegalStateException    if an update queue is requested, but there are no dispatcher threads.
+     */
+    public static Client create(ResultHandler updateHandler, ExceptionHandler updateExceptionHandler, ExceptionHandler defaultExceptionHandler, UpdateQueueParameters updateQueueParameters) {
+        UpdateQueue updateQueue = null;
+        if (updateQueueParameters != null) {
+            synchronized (responseReceiver) {
+                if (resultDispatchers == null) {
+                    throw new IllegalStateException("Update queue can't be used without dispatcher threads");
+                }
+            }
+            updateQueue = new UpdateQueue(updateQueueParameters);
+        }
+        Client client = new Client(updateHandler, updateExceptionHandler, defaultExceptionHandler, updateQueue);
         synchronized (responseReceiver) {
             if (!responseReceiver.isRun) {
                 responseReceiver.isRun = true;
 
+                ResultDispatcher[] dispatchers = resultDispatchers;
+                if (dispatchers != null) {
+                    for (int i = 0; i < dispatchers.length; i++) {
+                        Thread dispatcherThread = new Thread(dispatchers[i], "TDLib dispatcher thread " + i);
+                        dispatcherThread.setDaemon(true);
+                        dispatcherThread.start();
+                    }
+                }
+
                 Thread receiverThread = new Thread(responseReceiver, "TDLib thread");
                 receiverThread.setDaemon(true);
                 receiverThread.start();
@@ -105,89 +606,800 @@ public final class Client {
         return client;
     }
 
+    /**
+     * Changes the number of threads used to invoke result handlers. By default, all handlers are invoked
+     * from the single TDLib thread, which also receives results from the TDLib, so a slow handler delays
+     * results for all clients. If the number of dispatcher threads is positive, the TDLib thread only receives
+     * results and passes them to the dispatcher thread chosen by the client identifier. Results of each client
+     * are still handled sequentially in the order they were received, while handlers of different clients
+     * can be invoked in parallel. Must be called before the first Client is created.
+     *
+     * @param threadCount Number of dispatcher threads. Pass 0 to invoke all handlers from the TDLib thread.
+     * @throws IllegalArgumentException if threadCount is negative.
+     * @throws IllegalStateException    if a Client has already been created.
+     */
+    public static void setDispatcherThreadCount(int threadCount) {
+        if (threadCount < 0) {
+            throw new IllegalArgumentException("Number of dispatcher threads must be non-negative");
+        }
+        synchronized (responseReceiver) {
+            if (responseReceiver.isRun) {
+                throw new IllegalStateException("Number of dispatcher threads can't be changed after a Client is created");
+            }
+            if (threadCount == 0) {
+                resultDispatchers = null;
+            } else {
+                ResultDispatcher[] dispatchers = new ResultDispatcher[threadCount];
+                for (int i = 0; i < threadCount; i++) {
+                    dispatchers[i] = new ResultDispatcher();
+                }
+                resultDispatchers = dispatchers;
+            }
+        }
+    }
+
+    /**
+     * Changes the size of the direct buffer used to receive results from the TDLib. By default, every received
+     * result is converted to a Java object in the native code field by field through JNI calls. If the buffer size
+     * is positive, the TDLib serializes received results to the buffer in TL binary format instead, and they are
+     * decoded to the same TdApi objects in Java code, which avoids a JNI call per field. Results that don't fit
+     * in the empty buffer are still converted through JNI. Must be called before the first Client is created.
+     * The buffer is used only by the single TDLib thread, which receives results of all clients; the native code
+     * keeps a result, which didn't fit in the rest of the buffer, for the next receive call of the same thread.
+     *
+     * @param bufferSize Size of the buffer in bytes. Pass 0 to convert all results through JNI.
+     * @throws IllegalArgumentException if bufferSize is negative.
+     * @throws IllegalStateException    if a Client has already been created.
+     */
+    public static void setBinaryTransportBufferSize(int bufferSize) {
+        if (bufferSize < 0) {
+            throw new IllegalArgumentException("Size of the buffer must be non-negative");
+        }
+        synchronized (responseReceiver) {
+            if (responseReceiver.isRun) {
+                throw new IllegalStateException("Size of the buffer can't be changed after a Client is created");
+            }
+            if (bufferSize == 0) {
+                binaryTransportBuffer = null;
+            } else {
+                binaryTransportBuffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.nativeOrder());
+            }
+        }
+    }
+
+    /**
+     * Enables or disables coalescing of updates received from the TDLib at once. If enabled, an update is skipped
+     * if a newer update superseding it was received by the same client in the same batch of results, for example,
+     * only the last of several TdApi.UpdateUserStatus for the same user is passed to the update handler.
+     * Updates are coalesced only if the state changed by them is completely replaced by the newer update, and
+     * the order of the remaining results isn't changed. Coalescing is disabled by default.
+     *
+     * @param isEnabled True, if updates must be coalesced.
+     */
+    public static void setUpdateCoalescingEnabled(boolean isEnabled) {
+        isUpdateCoalescingEnabled = isEnabled;
+    }
+
+    /**
+     * Enables or disables collection of metrics of all clients, returned by getMetrics. Metrics collection adds
+     * a few timer calls per request, so it is disabled by default. Requests sent while metrics were disabled
+     * aren't included in request latencies.
+     *
+     * @param isEnabled True, if metrics must be collected.
+     */
+    public static void setMetricsEnabled(boolean isEnabled) {
+        isMetricsEnabled = isEnabled;
+    }
+
+    /**
+     * Returns a snapshot of metrics of all clients. The snapshot contains the number of pending requests even if
+     * metrics collection is disabled; other metrics are collected only while setMetricsEnabled(true) is in effect.
+     *
+     * @return the metrics snapshot.
+     */
+    public static ClientMetrics getMetrics() {
+        return metricsCollector.getSnapshot(handlers.size(), ResponseReceiver.MAX_EVENTS);
+    }
+
+    /**
+     * Enables adaptive limit on the number of requests of the client in flight. Requests over the limit wait
+     * in a queue and are sent to the TDLib in the order they were passed to send, sendBatch or sendAsync;
+     * waiting requests with RequestPriority.INTERACTIVE are sent before waiting requests with RequestPriority.BULK,
+     * but bulk requests receive at least minBulkShare of free slots.
+     * The limit is decreased if requests become slow or fail with a "Too Many Requests" error, and is increased
+     * while requests are successful. Requests sent before the limit was enabled aren't counted.
+     *
+     * @param parameters Parameters of the limit.
+     * @throws IllegalStateException if the limit is already enabled.
+     */
+    public void enableConcurrencyLimit(ConcurrencyLimitParameters parameters) {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(parameters);
+        synchronized (this) {
+            if (concurrencyLimiter != null) {
+                throw new IllegalStateException("Concurrency limit is already enabled");
+            }
+            concurrencyLimiter = limiter;
+        }
+    }
+
+    /**
+     * Returns the current maximum number of requests of the client in flight.
+     *
+     * @return the current limit or 0 if the limit isn't enabled.
+     */
+    public int getConcurrencyLimit() {
+        ConcurrencyLimiter limiter = concurrencyLimiter;
+        return limiter == null ? 0 : limiter.getLimit();
+    }
+
+    /**
+     * Returns the number of requests of the client, which wait for a free slot to be sent.
+     *
+     * @return the number of queued requests or 0 if the limit isn't enabled.
+     */
+    public int getConcurrencyLimitQueueLength() {
+        ConcurrencyLimiter limiter = concurrencyLimiter;
+        return limiter == null ? 0 : limiter.getQueueLength();
+    }
+
+    /**
+     * Returns the histogram of latencies of requests of the given priority, measured from the call to send
+     * or sendAsync until the result is received, including the time spent in the queue of the concurrency limit.
+     * Latencies are recorded only while the concurrency limit is enabled.
+     *
+     * @param priority Priority class of the requests.
+     * @return the latency histogram.
+     */
+    public LatencyHistogram getRequestLatency(RequestPriority priority) {
+        return requestLatencies[priority.ordinal()];
+    }
+
+    /**
+     * Sets the types of updates, which are needed by the client. Updates of other types are dropped by the native
+     * code before they are converted to Java objects, so they aren't passed to the update handler and
+     * to subscribers of update publishers. TdApi.UpdateAuthorizationState is always passed.
+     *
+     * @param updateConstructors Constructors of the needed updates, for example, TdApi.UpdateNewMessage.CONSTRUCTOR.
+     *                           If it is null, then all updates are passed.
+     */
+    public void setUpdateFilter(int[] updateConstructors) {
+        nativeClientSetUpdateFilter(nativeClientId, updateConstructors);
+    }
+
+    /**
+     * Registers a handler for incoming updates of the given type. Updates of the type are passed to the handler
+     * instead of the update handler of the client. The handler is found by TdApi.Object.getConstructorIndex()
+     * in an array, so dispatch of an update doesn't depend on the number of registered handlers.
+     * Exceptions thrown by the handler are passed to the default exception handler of the client.
+     *
+     * @param type    Class of the updates, for example, TdApi.UpdateNewMessage.class.
+     * @param handler Handler for the updates. If it is null, the previously registered handler is removed
+     *                and updates of the type are again passed to the update handler of the client.
+     * @param <T>     Type of the updates.
+     * @throws IllegalArgumentException if the type is abstract, for example, TdApi.Update.class.
+     */
+    public <T extends TdApi.Update> void on(Class<T> type, UpdateTypeHandler<? super T> handler) {
+        on(type, handler, null);
+    }
+
+    /**
+     * Registers a handler for incoming updates of the given type. See on(Class, UpdateTypeHandler) for details.
+     *
+     * @param type             Class of the updates, for example, TdApi.UpdateNewMessage.class.
+     * @param handler          Handler for the updates. If it is null, the previously registered handler is removed.
+     * @param exceptionHandler Handler for exceptions thrown from handler. If it is null, exceptions are passed
+     *                         to the default exception handler of the client.
+     * @param <T>              Type of the updates.
+     * @throws IllegalArgumentException if the type is abstract, for example, TdApi.Update.class.
+     */
+    public <T extends TdApi.Update> void on(final Class<T> type, final UpdateTypeHandler<? super T> handler, ExceptionHandler exceptionHandler) {
+        int constructorIndex = getConstructorIndex(type);
+        Handler typeHandler = null;
+        if (handler != null) {
+            typeHandler = new Handler(new ResultHandler() {
+                @Override
+                public void onResult(TdApi.Object object) {
+                    handler.onUpdate(type.cast(object));
+                }
+            }, exceptionHandler);
+        }
+        AtomicReferenceArray<Handler> typeHandlers;
+        synchronized (this) {
+            typeHandlers = updateTypeHandlers.get(nativeClientId);
+            if (typeHandlers == null) {
+                if (typeHandler == null) {
+                    return;
+                }
+                typeHandlers = new AtomicReferenceArray<Handler>(TdApi.CONSTRUCTOR_INDEX_COUNT);
+                updateTypeHandlers.put(nativeClientId, typeHandlers);
+            }
+        }
+        typeHandlers.set(constructorIndex, typeHandler);
+    }
+
+    private static int getConstructorIndex(Class<? extends TdApi.Object> type) {
+        if (Modifier.isAbstract(type.getModifiers())) {
+            throw new IllegalArgumentException(type.getName() + " is abstract");
+        }
+        try {
+            return type.getField("CONSTRUCTOR_INDEX").getInt(null);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalArgumentException(type.getName() + " isn't a TDLib interface class", e);
+        }
+    }
+
+    /**
+     * Returns a publisher of updates received by the client. Every subscriber receives updates in the order they
+     * were received, on its own task in ForkJoinPool.commonPool(), and only as many as it requested. Updates are
+     * buffered for each subscriber separately, so a slow subscriber doesn't delay the update handler or other
+     * subscribers. If Flow.defaultBufferSize() updates are buffered for a subscriber, a buffered update superseded
+     * by the new update is dropped, and if there is no such update, the subscriber receives onError with
+     * IllegalStateException. The subscribers receive onComplete after the client is closed.
+     *
+     * @param updateConstructors Constructors of the updates needed by subscribers, for example,
+     *                           TdApi.UpdateNewMessage.CONSTRUCTOR. If none are specified, all updates are published.
+     * @return the update publisher.
+     */
+    public Flow.Publisher<TdApi.Update> getUpdatePublisher(int... updateConstructors) {
+        return updatePublisher.getPublisher(ForkJoinPool.commonPool(), Flow.defaultBufferSize(), updateConstructors);
+    }
+
+    /**
+     * Returns a publisher of updates received by the client with the specified executor and buffer capacity
+     * of subscribers. See getUpdatePublisher(int...) for details.
+     *
+     * @param executor           Executor used to signal subscribers. Signals to a subscriber are never concurrent.
+     * @param bufferCapacity     Maximum number of updates buffered for a subscriber. Must be positive.
+     * @param updateConstructors Constructors of the updates needed by subscribers. If none are specified,
+     *                           all updates are published.
+     * @return the update publisher.
+     * @throws NullPointerException     if executor is null.
+     * @throws IllegalArgumentException if bufferCapacity isn't positive.
+     */
+    public Flow.Publisher<TdApi.Update> getUpdatePublisher(Executor executor, int bufferCapacity, int... updateConstructors) {
+        return updatePublisher.getPublisher(executor, bufferCapacity, updateConstructors);
+    }
+
+    /**
+     * Returns the number of updates waiting in the update queue of the client.
+     *
+     * @return number of queued updates or 0 if the client has no update queue.
+     */
+    public int getUpdateQueueSize() {
+        return updateQueue == null ? 0 : updateQueue.getUpdateCount();
+    }
+
+    /**
+     * Returns the maximum number of updates, which were simultaneously waiting in the update queue of the client.
+     *
+     * @return maximum number of queued updates or 0 if the client has no update queue.
+     */
+    public int getMaxUpdateQueueSize() {
+        return updateQueue == null ? 0 : updateQueue.getMaxUpdateCount();
+    }
+
+    /**
+     * Returns the number of updates dropped, because the update queue of the client was full.
+     *
+     * @return number of dropped updates or 0 if the client has no update queue.
+     */
+    public long getDroppedUpdateCount() {
+        return updateQueue == null ? 0 : updateQueue.getDroppedUpdateCount();
+    }
+
+    /**
+     * Returns the number of queued updates removed, because they were superseded by newer updates.
+     *
+     * @return number of coalesced updates or 0 if the client has no update queue.
+     */
+    public long getCoalescedUpdateCount() {
+        return updateQueue == null ? 0 : updateQueue.getCoalescedUpdateCount();
+    }
+
     private static class ResponseReceiver implements Runnable {
         public boolean isRun = false;
 
         @Override
         public void run() {
+            ResultDispatcher[] dispatchers = resultDispatchers;
+            ByteBuffer buffer = binaryTransportBuffer;
+            TdApi.TlBinaryReader reader = buffer == null ? null : new TdApi.TlBinaryReader(buffer);
             while (true) {
-                int resultN = nativeClientReceive(clientIds, eventIds, events, 100000.0 /*seconds*/);
+                boolean collectMetrics = isMetricsEnabled;
+                long receiveStartTime = collectMetrics ? System.nanoTime() : 0;
+                ClientEvents.ReceiveEvent receiveEvent = new ClientEvents.ReceiveEvent();
+                receiveEvent.begin();
+                int resultN;
+                if (buffer == null) {
+                    resultN = nativeClientReceive(clientIds, eventIds, events, 100000.0 /*seconds*/);
+                } else {
+                    resultN = nativeClientReceiveBinary(clientIds, eventIds, events, buffer, 100000.0 /*seconds*/);
+                    buffer.clear();
+                    for (int i = 0; i < resultN; i++) {
+                        if (events[i] == null) {
+                            // the result was serialized to the buffer
+                            events[i] = TdApi.fetch(reader);
+                        }
+                    }
+                }
+                if (receiveEvent.shouldCommit()) {
+                    receiveEvent.eventCount = resultN;
+                    receiveEvent.commit();
+                }
+                long dispatchStartTime = 0;
+                if (collectMetrics) {
+                    dispatchStartTime = System.nanoTime();
+                    metricsCollector.onReceive(resultN, resultN == MAX_EVENTS, dispatchStartTime - receiveStartTime);
+                }
+                if (isUpdateCoalescingEnabled) {
+                    removeSupersededUpdates(resultN);
+                }
                 for (int i = 0; i < resultN; i++) {
-                    processResult(clientIds[i], eventIds[i], events[i]);
+                    if (events[i] == null) {
+                        continue;
+                    }
+                    if (dispatchers == null) {
+                        processResult(clientIds[i], eventIds[i], events[i]);
+                    } else {
+                        // all results of the same client must be handled by the same dispatcher to keep their order
+                        ResultDispatcher dispatcher = dispatchers[clientIds[i] % dispatchers.length];
+                        UpdateQueueHandler updateQueueHandler = updateQueueHandlers.get(clientIds[i]);
+                        if (updateQueueHandler == null) {
+                            dispatcher.dispatch(new Result(clientIds[i], eventIds[i], events[i]));
+                        } else if (updateQueueHandler.updateQueue.put(eventIds[i], events[i])) {
+                            dispatcher.dispatch(updateQueueHandler);
+                        }
+                    }
                     events[i] = null;
                 }
+                if (collectMetrics) {
+                    metricsCollector.onDispatch(System.nanoTime() - dispatchStartTime);
+                }
             }
         }
 
-        private void processResult(int clientId, long id, TdApi.Object object) {
-            boolean isClosed = false;
-            if (id == 0 && object instanceof TdApi.UpdateAuthorizationState) {
-                TdApi.AuthorizationState authorizationState = ((TdApi.UpdateAuthorizationState) object).authorizationState;
-                if (authorizationState instanceof TdApi.AuthorizationStateClosed) {
-                    isClosed = true;
+        private void removeSupersededUpdates(int resultN) {
+            for (int i = resultN - 1; i >= 0; i--) {
+                if (eventIds[i] != 0) {
+                    continue;
+                }
+                UpdateKey key = UpdateKey.of(clientIds[i], events[i]);
+                if (key != null && !receivedUpdateKeys.add(key)) {
+                    // there is a newer update with the same key
+                    events[i] = null;
                 }
             }
+            receivedUpdateKeys.clear();
+        }
 
-            Handler handler = id == 0 ? updateHandlers.get(clientId) : handlers.remove(id);
-            if (handler != null) {
+        private static final int MAX_EVENTS = 1000;
+        private final int[] clientIds = new int[MAX_EVENTS];
+        private final long[] eventIds = new long[MAX_EVENTS];
+        private final TdApi.Object[] events = new TdApi.Object[MAX_EVENTS];
+        private final HashSet<UpdateKey> receivedUpdateKeys = new HashSet<UpdateKey>();
+    }
+
+    private static class ResultDispatcher implements Runnable {
+        private final LinkedBlockingQueue<Runnable> tasks = new LinkedBlockingQueue<Runnable>();
+
+        void dispatch(Runnable task) {
+            tasks.add(task);
+        }
+
+        @Override
+        public void run() {
+            ArrayList<Runnable> batch = new ArrayList<Runnable>();
+            while (true) {
                 try {
-                    handler.resultHandler.onResult(object);
-                } catch (Throwable cause) {
-                    ExceptionHandler exceptionHandler = handler.exceptionHandler;
-                    if (exceptionHandler == null) {
-                        exceptionHandler = defaultExceptionHandlers.get(clientId);
-                    }
-                    if (exceptionHandler != null) {
-                        try {
-                            exceptionHandler.onException(cause);
-                        } catch (Throwable ignored) {
-                        }
+                    batch.add(tasks.take());
+                } catch (InterruptedException ignored) {
+                    continue;
+                }
+                tasks.drainTo(batch);
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).run();
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private static class Result implements Runnable {
+        final int clientId;
+        final long id;
+        final TdApi.Object object;
+
+        Result(int clientId, long id, TdApi.Object object) {
+            this.clientId = clientId;
+            this.id = id;
+            this.object = object;
+        }
+
+        @Override
+        public void run() {
+            processResult(clientId, id, object);
+        }
+    }
+
+    private static class UpdateQueueHandler implements Runnable {
+        private static final int MAX_BATCH_SIZE = 1000;
+
+        final int clientId;
+        final UpdateQueue updateQueue;
+        final ResultDispatcher dispatcher;
+
+        UpdateQueueHandler(int clientId, UpdateQueue updateQueue, ResultDispatcher dispatcher) {
+            this.clientId = clientId;
+            this.updateQueue = updateQueue;
+            this.dispatcher = dispatcher;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < MAX_BATCH_SIZE; i++) {
+                UpdateQueue.Entry entry = updateQueue.poll();
+                if (entry == null) {
+                    return;
+                }
+                processResult(clientId, entry.id, entry.object);
+            }
+
+            // let other clients of the dispatcher handle their results
+            dispatcher.dispatch(this);
+        }
+    }
+
+    private static void processResult(int clientId, long id, TdApi.Object object) {
+        boolean isClosed = false;
+        if (id == 0 && object instanceof TdApi.UpdateAuthorizationState) {
+            TdApi.AuthorizationState authorizationState = ((TdApi.UpdateAuthorizationState) object).authorizationState;
+            if (authorizationState instanceof TdApi.AuthorizationStateClosed) {
+                isClosed = true;
+            }
+        }
+
+        Handler handler;
+        if (id == 0) {
+            handler = null;
+            AtomicReferenceArray<Handler> typeHandlers = updateTypeHandlers.get(clientId);
+            if (typeHandlers != null) {
+                handler = typeHandlers.get(object.getConstructorIndex());
+            }
+            if (handler == null) {
+                handler = updateHandlers.get(clientId);
+            }
+        } else {
+            handler = handlers.remove(id);
+        }
+        boolean collectMetrics = isMetricsEnabled;
+        long handlerStartTime = 0;
+        if (collectMetrics) {
+            handlerStartTime = System.nanoTime();
+            if (id == 0) {
+                metricsCollector.onUpdate(object.getConstructorIndex(), object.getConstructor());
+            } else {
+                if (handler != null && handler.sendTime != 0) {
+                    metricsCollector.onRequestFinished(handler.functionConstructorIndex, handler.functionConstructor, handlerStartTime - handler.sendTime);
+                }
+                if (object.getConstructor() == TdApi.Error.CONSTRUCTOR) {
+                    metricsCollector.onError(((TdApi.Error) object).code);
+                }
+            }
+        }
+        if (handler != null && handler.resultHandler != null) {
+            ClientEvents.ResultHandlerEvent handlerEvent = new ClientEvents.ResultHandlerEvent();
+            handlerEvent.begin();
+            try {
+                handler.resultHandler.onResult(object);
+            } catch (Throwable cause) {
+                ExceptionHandler exceptionHandler = handler.exceptionHandler;
+                if (exceptionHandler == null) {
+                    exceptionHandler = defaultExceptionHandlers.get(clientId);
+                }
+                if (exceptionHandler != null) {
+                    try {
+                        exceptionHandler.onException(cause);
+                    } catch (Throwable ignored) {
                     }
                 }
             }
+            if (collectMetrics) {
+                metricsCollector.onHandlerFinished(System.nanoTime() - handlerStartTime);
+            }
+            if (handlerEvent.shouldCommit()) {
+                handlerEvent.clientId = clientId;
+                handlerEvent.queryId = id;
+                handlerEvent.result = object.getClass().getSimpleName();
+                handlerEvent.commit();
+            }
+        }
+        if (handler != null && handler.event != null) {
+            if (object.getConstructor() == TdApi.Error.CONSTRUCTOR) {
+                handler.event.errorCode = ((TdApi.Error) object).code;
+            }
+            handler.event.commit();
+        }
 
-            if (isClosed) {
-                updateHandlers.remove(clientId);           // there will be no more updates
-                defaultExceptionHandlers.remove(clientId); // ignore further exceptions
-                clientCount.decrementAndGet();
+        if (id == 0 && object instanceof TdApi.Update) {
+            UpdatePublisher publisher = updatePublishers.get(clientId);
+            if (publisher != null && publisher.hasSubscribers()) {
+                publisher.publish((TdApi.Update) object);
             }
         }
 
-        private static final int MAX_EVENTS = 1000;
-        private final int[] clientIds = new int[MAX_EVENTS];
-        private final long[] eventIds = new long[MAX_EVENTS];
-        private final TdApi.Object[] events = new TdApi.Object[MAX_EVENTS];
+        if (isClosed) {
+            updateHandlers.remove(clientId);           // there will be no more updates
+            updateTypeHandlers.remove(clientId);
+            defaultExceptionHandlers.remove(clientId); // ignore further exceptions
+            updateQueueHandlers.remove(clientId);
+            UpdatePublisher publisher = updatePublishers.remove(clientId);
+            if (publisher != null) {
+                publisher.close();
+            }
+            clientCount.decrementAndGet();
+        }
     }
 
     private final int nativeClientId;
+    private final UpdateQueue updateQueue;
+    private final UpdatePublisher updatePublisher;
+    private volatile ConcurrencyLimiter concurrencyLimiter = null;
+    private final LatencyHistogram[] requestLatencies = new LatencyHistogram[]{new LatencyHistogram(), new LatencyHistogram()};
 
     private static final ConcurrentHashMap<Integer, ExceptionHandler> defaultExceptionHandlers = new ConcurrentHashMap<Integer, ExceptionHandler>();
     private static final ConcurrentHashMap<Integer, Handler> updateHandlers = new ConcurrentHashMap<Integer, Handler>();
-    private static final ConcurrentHashMap<Long, Handler> handlers = new ConcurrentHashMap<Long, Handler>();
+    private static final ConcurrentHashMap<Integer, AtomicReferenceArray<Handler>> updateTypeHandlers = new ConcurrentHashMap<Integer, AtomicReferenceArray<Handler>>();
+    private static final ConcurrentHashMap<Integer, UpdateQueueHandler> updateQueueHandlers = new ConcurrentHashMap<Integer, UpdateQueueHandler>();
+    private static final ConcurrentHashMap<Integer, UpdatePublisher> updatePublishers = new ConcurrentHashMap<Integer, UpdatePublisher>();
+    private static final PendingRequestTable<Handler> handlers = new PendingRequestTable<Handler>(1 << 14);
     private static final AtomicLong currentQueryId = new AtomicLong();
     private static final AtomicLong clientCount = new AtomicLong();
 
     private static final ResponseReceiver responseReceiver = new ResponseReceiver();
+    // written under the lock on responseReceiver, but read without it by the TDLib thread and new clients
+    private static volatile ResultDispatcher[] resultDispatchers = null;
+    private static volatile ByteBuffer binaryTransportBuffer = null;
+    private static volatile boolean isUpdateCoalescingEnabled = false;
+    private static final MetricsCollector metricsCollector = new MetricsCollector();
+    private static volatile boolean isMetricsEnabled = false;
 
     private static class Handler {
         final ResultHandler resultHandler;
         final ExceptionHandler exceptionHandler;
 
+        final int functionConstructorIndex;
+        final int functionConstructor;
+        final long sendTime;
+        final ClientEvents.RequestEvent event;
+
         Handler(ResultHandler resultHandler, ExceptionHandler exceptionHandler) {
+            this(resultHandler, exceptionHandler, 0, 0, 0, null);
+        }
+
+        Handler(ResultHandler resultHandler, ExceptionHandler exceptionHandler, int functionConstructorIndex, int functionConstructor, long sendTime, ClientEvents.RequestEvent event) {
             this.resultHandler = resultHandler;
             this.exceptionHandler = exceptionHandler;
+            this.functionConstructorIndex = functionConstructorIndex;
+            this.functionConstructor = functionConstructor;
+            this.sendTime = sendTime;
+            this.event = event;
+        }
+    }
+
+    private Handler createHandler(long queryId, TdApi.Function<?> query, ResultHandler resultHandler, ExceptionHandler exceptionHandler) {
+        ClientEvents.RequestEvent event = new ClientEvents.RequestEvent();
+        if (event.isEnabled()) {
+            event.begin();
+            event.clientId = nativeClientId;
+            event.queryId = queryId;
+            event.functionConstructor = query.getConstructor();
+            event.function = query.getClass().getSimpleName();
+        } else {
+            event = null;
+        }
+        boolean collectMetrics = isMetricsEnabled;
+        if (collectMetrics || event != null) {
+            // the handler is needed even if there is no resultHandler to measure latency of the query
+            return new Handler(resultHandler, exceptionHandler, query.getConstructorIndex(), query.getConstructor(), collectMetrics ? System.nanoTime() : 0, event);
+        }
+        return resultHandler == null ? null : new Handler(resultHandler, exceptionHandler);
+    }
+
+    private void sendNative(long queryId, TdApi.Function<?> query) {
+        ClientEvents.RequestSendEvent event = new ClientEvents.RequestSendEvent();
+        event.begin();
+        nativeClientSend(nativeClientId, queryId, query);
+        if (event.shouldCommit()) {
+            event.clientId = nativeClientId;
+            event.queryId = queryId;
+            event.queryCount = 1;
+            event.functionConstructor = query.getConstructor();
+            event.commit();
         }
     }
 
-    private Client(ResultHandler updateHandler, ExceptionHandler updateExceptionHandler, ExceptionHandler defaultExceptionHandler) {
+    private LimitedQuery sendLimited(ConcurrencyLimiter limiter, long queryId, TdApi.Function<?> query, ResultHandler resultHandler, ExceptionHandler exceptionHandler, RequestPriority priority) {
+        LimitedQuery limitedQuery = new LimitedQuery(limiter, queryId, query, resultHandler, priority);
+        // the handler is needed even if there is no resultHandler to release the slot of the query
+        handlers.put(queryId, createHandler(queryId, query, limitedQuery, exceptionHandler));
+        boolean isBulk = priority == RequestPriority.BULK;
+        if (limiter.tryAcquire(isBulk)) {
+            limitedQuery.run();
+        } else {
+            limiter.enqueue(limitedQuery, isBulk);
+        }
+        return limitedQuery;
+    }
+
+    private class LimitedQuery implements ResultHandler, Runnable {
+        private final ConcurrencyLimiter limiter;
+        private final long queryId;
+        private final TdApi.Function<?> query;
+        private final ResultHandler resultHandler;
+        private final RequestPriority priority;
+        private final long creationTime = System.nanoTime();
+        private long startTime;
+
+        LimitedQuery(ConcurrencyLimiter limiter, long queryId, TdApi.Function<?> query, ResultHandler resultHandler, RequestPriority priority) {
+            this.limiter = limiter;
+            this.queryId = queryId;
+            this.query = query;
+            this.resultHandler = resultHandler;
+            this.priority = priority;
+        }
+
+        // called when the query is admitted by the limiter
+        @Override
+        public void run() {
+            startTime = System.nanoTime();
+            sendNative(queryId, query);
+        }
+
+        @Override
+        public void onResult(TdApi.Object object) {
+            boolean isOverloaded = object.getConstructor() == TdApi.Error.CONSTRUCTOR && ((TdApi.Error) object).code == 429;
+            limiter.release(startTime, isOverloaded);
+            requestLatencies[priority.ordinal()].record(System.nanoTime() - creationTime);
+            if (resultHandler != null) {
+                resultHandler.onResult(object);
+            }
+        }
+
+        void cancel() {
+            // a query, which was already sent, must release its slot when the result is received
+            if (limiter.cancel(this)) {
+                handlers.remove(queryId);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R extends TdApi.Object> R call(TdApi.Function<R> query, RequestPriority priority, long timeoutNanos) throws TdlibException, InterruptedException, TimeoutException {
+        if (priority == null) {
+            throw new NullPointerException("priority is null");
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        long queryId = currentQueryId.incrementAndGet();
+        CallResultHandler resultHandler = new CallResultHandler();
+        LimitedQuery limitedQuery = null;
+        ConcurrencyLimiter limiter = concurrencyLimiter;
+        if (limiter != null) {
+            limitedQuery = sendLimited(limiter, queryId, query, resultHandler, null, priority);
+        } else {
+            handlers.put(queryId, createHandler(queryId, query, resultHandler, null));
+            sendNative(queryId, query);
+        }
+
+        TdApi.Object result;
+        try {
+            result = resultHandler.await(timeoutNanos);
+        } catch (InterruptedException e) {
+            cancel(queryId, limitedQuery);
+            throw e;
+        }
+        if (result == null) {
+            cancel(queryId, limitedQuery);
+            throw new TimeoutException();
+        }
+        if (result.getConstructor() == TdApi.Error.CONSTRUCTOR) {
+            throw new TdlibException((TdApi.Error) result);
+        }
+        return (R) result;
+    }
+
+    private static void cancel(long queryId, LimitedQuery limitedQuery) {
+        // the result is no longer needed
+        if (limitedQuery != null) {
+            limitedQuery.cancel();
+        } else {
+            handlers.remove(queryId);
+        }
+    }
+
+    private static class CallResultHandler implements ResultHandler {
+        private final Thread thread = Thread.currentThread();
+        private volatile TdApi.Object result;
+
+        @Override
+        public void onResult(TdApi.Object object) {
+            result = object;
+            LockSupport.unpark(thread);
+        }
+
+        // returns null on timeout
+        TdApi.Object await(long timeoutNanos) throws InterruptedException {
+            long deadline = System.nanoTime() + timeoutNanos;
+            TdApi.Object object;
+            while ((object = result) == null) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (timeoutNanos == 0) {
+                    LockSupport.park(this);
+                } else {
+                    long remainingNanos = deadline - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        return null;
+                    }
+                    LockSupport.parkNanos(this, remainingNanos);
+                }
+            }
+            return object;
+        }
+    }
+
+    private static class AsyncResultHandler<R extends TdApi.Object> implements ResultHandler, ExceptionHandler, BiConsumer<R, Throwable> {
+        final long queryId;
+        final CompletableFuture<R> future = new CompletableFuture<R>();
+        LimitedQuery limitedQuery;
+
+        AsyncResultHandler(long queryId) {
+            this.queryId = queryId;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onResult(TdApi.Object object) {
+            if (object instanceof TdApi.Error) {
+                future.completeExceptionally(new TdlibException((TdApi.Error) object));
+            } else {
+                future.complete((R) object);
+            }
+        }
+
+        @Override
+        public void onException(Throwable e) {
+            future.completeExceptionally(e);
+        }
+
+        @Override
+        public void accept(R result, Throwable e) {
+            // the future was cancelled or timed out, so the result is no longer needed
+            if (e != null) {
+                cancel(queryId, limitedQuery);
+            }
+        }
+    }
+
+    private Client(ResultHandler updateHandler, ExceptionHandler updateExceptionHandler, ExceptionHandler defaultExceptionHandler, UpdateQueue updateQueue) {
         clientCount.incrementAndGet();
         nativeClientId = createNativeClient();
+        this.updateQueue = updateQueue;
+        if (updateQueue != null) {
+            ResultDispatcher[] dispatchers = resultDispatchers;
+            ResultDispatcher dispatcher = dispatchers[nativeClientId % dispatchers.length];
+            updateQueueHandlers.put(nativeClientId, new UpdateQueueHandler(nativeClientId, updateQueue, dispatcher));
+        }
         if (updateHandler != null) {
             updateHandlers.put(nativeClientId, new Handler(updateHandler, updateExceptionHandler));
         }
         if (defaultExceptionHandler != null) {
             defaultExceptionHandlers.put(nativeClientId, defaultExceptionHandler);
         }
+        updatePublisher = new UpdatePublisher(nativeClientId);
+        updatePublishers.put(nativeClientId, updatePublisher);
         send(new TdApi.GetOption("version"), null, null);
     }
 
@@ -198,9 +1410,17 @@ public final class Client {
 
     private static native int createNativeClient();
 
-    private static native void nativeClientSend(int nativeClientId, long eventId, TdApi.Function function);
+    private static native void nativeClientSend(int nativeClientId, long eventId, TdApi.Function<?> function);
+
+    // stores the number of sent functions to sentCount[0] even if an exception is thrown
+    private static native void nativeClientSendBatch(int nativeClientId, long firstEventId, TdApi.Function<?>[] functions, int[] sentCount);
 
     private static native int nativeClientReceive(int[] clientIds, long[] eventIds, TdApi.Object[] events, double timeout);
 
-    private static native TdApi.Object nativeClientExecute(TdApi.Function function);
+    // must be called only from the TDLib thread
+    private static native int nativeClientReceiveBinary(int[] clientIds, long[] eventIds, TdApi.Object[] events, ByteBuffer buffer, double timeout);
+
+    private static native TdApi.Object nativeClientExecute(TdApi.Function<?> function);
+
+    private static native void nativeClientSetUpdateFilter(int nativeClientId, int[] updateConstructors);
 }
@@ -0,0 +1,97 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events emitted by Client. The events are enabled or disabled through standard JFR settings,
+ * for example, "org.drinkless.tdlib.Request#enabled=false". A request can be traced by its client identifier
+ * and query identifier: RequestSend covers conversion of the request to a TDLib object and its enqueueing,
+ * Receive covers waiting for results and their conversion to Java objects, ResultHandler covers the handler call,
+ * and Request covers the whole lifecycle of the request from the call to send until its handler returns.
+ */
+final class ClientEvents {
+    private ClientEvents() {
+    }
+
+    @Name("org.drinkless.tdlib.Request")
+    @Label("TDLib Request")
+    @Category("TDLib")
+    @Description("Lifecycle of a request from the call to send until the result handler returns")
+    @StackTrace(false)
+    static final class RequestEvent extends Event {
+        @Label("Client Identifier")
+        int clientId;
+
+        @Label("Query Identifier")
+        long queryId;
+
+        @Label("Function Constructor")
+        int functionConstructor;
+
+        @Label("Function")
+        String function;
+
+        @Label("Error Code")
+        @Description("Code of the returned error or 0 if the request succeeded")
+        int errorCode;
+    }
+
+    @Name("org.drinkless.tdlib.RequestSend")
+    @Label("TDLib Request Send")
+    @Category("TDLib")
+    @Description("Conversion of requests to TDLib objects and their passing to the TDLib")
+    @StackTrace(false)
+    static final class RequestSendEvent extends Event {
+        @Label("Client Identifier")
+        int clientId;
+
+        @Label("Query Identifier")
+        @Description("Identifier of the first sent query; identifiers of the queries are consecutive")
+        long queryId;
+
+        @Label("Query Count")
+        int queryCount;
+
+        @Label("Function Constructor")
+        @Description("Constructor of the first sent query")
+        int functionConstructor;
+    }
+
+    @Name("org.drinkless.tdlib.Receive")
+    @Label("TDLib Receive")
+    @Category("TDLib")
+    @Description("Waiting for updates and request results and their conversion to Java objects by the TDLib thread")
+    @StackTrace(false)
+    static final class ReceiveEvent extends Event {
+        @Label("Event Count")
+        int eventCount;
+    }
+
+    @Name("org.drinkless.tdlib.ResultHandler")
+    @Label("TDLib Result Handler")
+    @Category("TDLib")
+    @Description("Call of a result handler or an update handler")
+    @StackTrace(false)
+    static final class ResultHandlerEvent extends Event {
+        @Label("Client Identifier")
+        int clientId;
+
+        @Label("Query Identifier")
+        @Description("Identifier of the query or 0 for updates")
+        long queryId;
+
+        @Label("Result")
+        String result;
+    }
+}
@@ -0,0 +1,179 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Snapshot of metrics of all clients, returned by Client.getMetrics. All counters are cumulative since metrics
+ * were enabled, so rates can be computed as differences between two snapshots divided by the difference
+ * of their times.
+ */
+public final class ClientMetrics {
+    private final long time;
+    private final int pendingRequestCount;
+    private final int maxReceiveBatchSize;
+    private final long receiveCount;
+    private final long receivedEventCount;
+    private final long fullReceiveCount;
+    private final long receiveNanos;
+    private final long dispatchNanos;
+    private final LatencyHistogram handlerLatency;
+    private final Map<Integer, LatencyHistogram> requestLatencies;
+    private final Map<Integer, Long> errorCounts;
+    private final Map<Integer, Long> updateCounts;
+
+    ClientMetrics(long time, int pendingRequestCount, int maxReceiveBatchSize, long receiveCount, long receivedEventCount,
+                  long fullReceiveCount, long receiveNanos, long dispatchNanos, LatencyHistogram handlerLatency,
+                  Map<Integer, LatencyHistogram> requestLatencies, Map<Integer, Long> errorCounts, Map<Integer, Long> updateCounts) {
+        this.time = time;
+        this.pendingRequestCount = pendingRequestCount;
+        this.maxReceiveBatchSize = maxReceiveBatchSize;
+        this.receiveCount = receiveCount;
+        this.receivedEventCount = receivedEventCount;
+        this.fullReceiveCount = fullReceiveCount;
+        this.receiveNanos = receiveNanos;
+        this.dispatchNanos = dispatchNanos;
+        this.handlerLatency = handlerLatency;
+        this.requestLatencies = Collections.unmodifiableMap(requestLatencies);
+        this.errorCounts = Collections.unmodifiableMap(errorCounts);
+        this.updateCounts = Collections.unmodifiableMap(updateCounts);
+    }
+
+    /**
+     * Returns time when the snapshot was taken.
+     *
+     * @return value of System.nanoTime() at the moment the snapshot was taken.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the number of sent requests, for which a result wasn't received yet.
+     * Requests without a result handler are counted only if they were sent while metrics were enabled.
+     *
+     * @return the number of pending requests.
+     */
+    public int getPendingRequestCount() {
+        return pendingRequestCount;
+    }
+
+    /**
+     * Returns the maximum number of events, which can be received by the TDLib thread at once.
+     *
+     * @return the maximum size of a receive batch.
+     */
+    public int getMaxReceiveBatchSize() {
+        return maxReceiveBatchSize;
+    }
+
+    /**
+     * Returns the number of calls to nativeClientReceive by the TDLib thread.
+     *
+     * @return the number of receive batches.
+     */
+    public long getReceiveCount() {
+        return receiveCount;
+    }
+
+    /**
+     * Returns the total number of updates and request results received by the TDLib thread.
+     *
+     * @return the number of received events.
+     */
+    public long getReceivedEventCount() {
+        return receivedEventCount;
+    }
+
+    /**
+     * Returns the number of receive batches of the maximum size. A large share of full batches means that
+     * the TDLib thread can't keep up with incoming events.
+     *
+     * @return the number of full receive batches.
+     */
+    public long getFullReceiveCount() {
+        return fullReceiveCount;
+    }
+
+    /**
+     * Returns the mean number of events in a receive batch.
+     *
+     * @return the mean size of receive batches or 0 if nothing was received.
+     */
+    public double getMeanReceiveBatchSize() {
+        return receiveCount == 0 ? 0.0 : (double) receivedEventCount / receiveCount;
+    }
+
+    /**
+     * Returns total time spent by the TDLib thread in nativeClientReceive, i.e. waiting for events and converting
+     * them to Java objects.
+     *
+     * @return the time in nanoseconds.
+     */
+    public long getReceiveNanos() {
+        return receiveNanos;
+    }
+
+    /**
+     * Returns total time spent by the TDLib thread handling received events or passing them to dispatcher threads.
+     *
+     * @return the time in nanoseconds.
+     */
+    public long getDispatchNanos() {
+        return dispatchNanos;
+    }
+
+    /**
+     * Returns the share of time spent by the TDLib thread outside of nativeClientReceive. A value close to 1 means
+     * that received events are handled slower than they arrive.
+     *
+     * @return the utilization of the TDLib thread between 0 and 1.
+     */
+    public double getReceiverUtilization() {
+        long totalNanos = receiveNanos + dispatchNanos;
+        return totalNanos == 0 ? 0.0 : (double) dispatchNanos / totalNanos;
+    }
+
+    /**
+     * Returns the histogram of durations of calls to result handlers and update handlers.
+     *
+     * @return the handler latency histogram.
+     */
+    public LatencyHistogram getHandlerLatency() {
+        return handlerLatency;
+    }
+
+    /**
+     * Returns histograms of latencies of requests, measured from sending of a request until its result is received.
+     *
+     * @return map from identifier of the request method, i.e. CONSTRUCTOR of the TdApi.Function class, to the
+     * histogram of latencies of requests of the method.
+     */
+    public Map<Integer, LatencyHistogram> getRequestLatencies() {
+        return requestLatencies;
+    }
+
+    /**
+     * Returns the number of requests, which failed with each error code.
+     *
+     * @return map from TdApi.Error.code to the number of requests failed with the code.
+     */
+    public Map<Integer, Long> getErrorCounts() {
+        return errorCounts;
+    }
+
+    /**
+     * Returns the number of received updates of each type.
+     *
+     * @return map from CONSTRUCTOR of the TdApi.Update class to the number of received updates of the type.
+     */
+    public Map<Integer, Long> getUpdateCounts() {
+        return updateCounts;
+    }
+}
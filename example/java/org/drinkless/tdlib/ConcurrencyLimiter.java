@@ -0,0 +1,201 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of requests in flight. The limit is adjusted using additive increase/multiplicative decrease:
+ * it grows by one per limit of successful requests while the limit is reached, and is multiplied by the backoff
+ * ratio if a request is too slow or fails with a "Too Many Requests" error. The limit is decreased at most once
+ * for requests, which were sent before the previous decrease. Requests over the limit wait in one of two FIFO queues:
+ * interactive requests are admitted before bulk requests, but bulk requests are guaranteed at least the given share
+ * of admissions while both queues are non-empty.
+ */
+final class ConcurrencyLimiter {
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetLatency;
+    private final double backoffRatio;
+    private final double minBulkShare;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Runnable> interactiveQueue = new ArrayDeque<Runnable>();
+    private final ArrayDeque<Runnable> bulkQueue = new ArrayDeque<Runnable>();
+    private double bulkCredit = 0.0;
+    private double limit;
+    private int inFlightCount = 0;
+    private long lastDecreaseTime;
+
+    ConcurrencyLimiter(Client.ConcurrencyLimitParameters parameters) {
+        if (parameters.minLimit <= 0 || parameters.maxLimit < parameters.minLimit || parameters.initialLimit < parameters.minLimit || parameters.initialLimit > parameters.maxLimit) {
+            throw new IllegalArgumentException("Invalid concurrency limits");
+        }
+        if (parameters.targetLatencyMillis <= 0) {
+            throw new IllegalArgumentException("Target latency must be positive");
+        }
+        if (!(parameters.backoffRatio > 0.0 && parameters.backoffRatio < 1.0)) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1");
+        }
+        if (!(parameters.minBulkShare >= 0.0 && parameters.minBulkShare <= 1.0)) {
+            throw new IllegalArgumentException("Minimum bulk share must be between 0 and 1");
+        }
+        this.minLimit = parameters.minLimit;
+        this.maxLimit = parameters.maxLimit;
+        this.targetLatency = parameters.targetLatencyMillis * 1000000L;
+        this.backoffRatio = parameters.backoffRatio;
+        this.minBulkShare = parameters.minBulkShare;
+        this.limit = parameters.initialLimit;
+        this.lastDecreaseTime = System.nanoTime();
+    }
+
+    /**
+     * Acquires a slot for a request if the request doesn't need to wait.
+     *
+     * @param isBulk True, if the request is a bulk request.
+     * @return true, if the request can be sent immediately.
+     */
+    boolean tryAcquire(boolean isBulk) {
+        lock.lock();
+        try {
+            if (interactiveQueue.isEmpty() && (!isBulk || bulkQueue.isEmpty()) && inFlightCount < (int) limit) {
+                inFlightCount++;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a request, which will be started when a slot is released, to the queue.
+     *
+     * @param request Runnable, which sends the request.
+     * @param isBulk  True, if the request is a bulk request.
+     */
+    void enqueue(Runnable request, boolean isBulk) {
+        List<Runnable> readyRequests;
+        lock.lock();
+        try {
+            (isBulk ? bulkQueue : interactiveQueue).add(request);
+            // a slot can be released after tryAcquire failed
+            readyRequests = pollReadyRequests();
+        } finally {
+            lock.unlock();
+        }
+        run(readyRequests);
+    }
+
+    /**
+     * Removes a request, which wasn't started yet, from the queue.
+     *
+     * @param request The request.
+     * @return true, if the request was removed and will never be started.
+     */
+    boolean cancel(Runnable request) {
+        lock.lock();
+        try {
+            return interactiveQueue.removeFirstOccurrence(request) || bulkQueue.removeFirstOccurrence(request);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases the slot of a finished request and starts queued requests, for which there are free slots.
+     *
+     * @param startTime    Time when the request was sent, in nanoseconds.
+     * @param isOverloaded True, if the request failed because of too many requests.
+     */
+    void release(long startTime, boolean isOverloaded) {
+        List<Runnable> readyRequests;
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            boolean wasLimitReached = inFlightCount >= (int) limit;
+            inFlightCount--;
+            if (isOverloaded || now - startTime > targetLatency) {
+                if (startTime - lastDecreaseTime >= 0) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecreaseTime = now;
+                }
+            } else if (wasLimitReached || !interactiveQueue.isEmpty() || !bulkQueue.isEmpty()) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            readyRequests = pollReadyRequests();
+        } finally {
+            lock.unlock();
+        }
+        run(readyRequests);
+    }
+
+    int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getQueueLength() {
+        lock.lock();
+        try {
+            return interactiveQueue.size() + bulkQueue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getInFlightCount() {
+        lock.lock();
+        try {
+            return inFlightCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<Runnable> pollReadyRequests() {
+        List<Runnable> readyRequests = null;
+        while ((!interactiveQueue.isEmpty() || !bulkQueue.isEmpty()) && inFlightCount < (int) limit) {
+            if (readyRequests == null) {
+                readyRequests = new ArrayList<Runnable>();
+            }
+            readyRequests.add(pollNextRequest());
+            inFlightCount++;
+        }
+        return readyRequests;
+    }
+
+    private Runnable pollNextRequest() {
+        if (bulkQueue.isEmpty()) {
+            return interactiveQueue.poll();
+        }
+        if (interactiveQueue.isEmpty()) {
+            return bulkQueue.poll();
+        }
+        bulkCredit += minBulkShare;
+        if (bulkCredit >= 1.0) {
+            bulkCredit -= 1.0;
+            return bulkQueue.poll();
+        }
+        return interactiveQueue.poll();
+    }
+
+    private static void run(List<Runnable> requests) {
+        if (requests != null) {
+            for (Runnable request : requests) {
+                request.run();
+            }
+        }
+    }
+}
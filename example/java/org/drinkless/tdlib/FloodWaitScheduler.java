@@ -0,0 +1,422 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Scheduler of requests, which limits the rate of requests of each method and handles "Too Many Requests" errors.
+ * A request, which fails with an error 429 "Too Many Requests: retry after N", is automatically sent again
+ * after N seconds; until then, all requests of the same method are delayed. The rate of requests can be limited
+ * separately for every method using token buckets. Requests of the same method are sent in the order they were
+ * passed to the scheduler, except for retried requests, which are sent before all other requests of the method
+ * in the order they were originally passed to the scheduler. A request is retried at most maxRetryCount times.
+ * Requests, which become ready to be sent at the same time, are passed to the underlying sender as one batch.
+ */
+public final class FloodWaitScheduler implements QuerySender {
+    private static final class Request implements Comparable<Request> {
+        final TdApi.Function<?> query;
+        final Client.ResultHandler resultHandler;
+        final Client.ExceptionHandler exceptionHandler;
+        final long sequenceNumber;
+        int retryCount = 0;
+
+        Request(TdApi.Function<?> query, Client.ResultHandler resultHandler, Client.ExceptionHandler exceptionHandler,
+                long sequenceNumber) {
+            this.query = query;
+            this.resultHandler = resultHandler;
+            this.exceptionHandler = exceptionHandler;
+            this.sequenceNumber = sequenceNumber;
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            return Long.compare(sequenceNumber, other.sequenceNumber);
+        }
+    }
+
+    private final class MethodQueue implements Runnable {
+        final ArrayDeque<Request> requests = new ArrayDeque<Request>();
+        // requests, which failed with "Too Many Requests", ordered by their sequence numbers
+        final PriorityQueue<Request> retriedRequests = new PriorityQueue<Request>();
+        double tokensPerNanosecond = Double.POSITIVE_INFINITY;
+        double maxTokens = Double.POSITIVE_INFINITY;
+        double tokens = Double.POSITIVE_INFINITY;
+        long lastRefillTime = System.nanoTime();
+        long blockedUntil = lastRefillTime;
+        boolean isDrainScheduled = false;
+
+        boolean isEmpty() {
+            return requests.isEmpty() && retriedRequests.isEmpty();
+        }
+
+        Request poll() {
+            return retriedRequests.isEmpty() ? requests.poll() : retriedRequests.poll();
+        }
+
+        boolean tryAcquire(long now) {
+            if (now - blockedUntil < 0) {
+                return false;
+            }
+            if (tokens < maxTokens) {
+                tokens = Math.min(maxTokens, tokens + (now - lastRefillTime) * tokensPerNanosecond);
+            }
+            lastRefillTime = now;
+            if (tokens < 1.0) {
+                return false;
+            }
+            tokens -= 1.0;
+            return true;
+        }
+
+        long getDelay(long now) {
+            long delay = now - blockedUntil < 0 ? blockedUntil - now : 0;
+            if (tokens < 1.0) {
+                delay = Math.max(delay, (long) Math.ceil((1.0 - tokens) / tokensPerNanosecond));
+            }
+            return delay;
+        }
+
+        void scheduleDrain(long now) {
+            if (!isDrainScheduled) {
+                isDrainScheduled = true;
+                timer.schedule(this, getDelay(now), TimeUnit.NANOSECONDS);
+            }
+        }
+
+        @Override
+        public void run() {
+            ArrayList<Request> readyRequests = new ArrayList<Request>();
+            lock.lock();
+            try {
+                isDrainScheduled = false;
+                long now = System.nanoTime();
+                while (!isEmpty() && tryAcquire(now)) {
+                    readyRequests.add(poll());
+                }
+                waitingRequestCount -= readyRequests.size();
+                if (!isEmpty()) {
+                    scheduleDrain(now);
+                }
+            } finally {
+                lock.unlock();
+            }
+            sendNow(readyRequests);
+        }
+    }
+
+    private final class FloodWaitHandler implements Client.ResultHandler {
+        private final Request request;
+
+        FloodWaitHandler(Request request) {
+            this.request = request;
+        }
+
+        @Override
+        public void onResult(TdApi.Object object) {
+            if (object.getConstructor() == TdApi.Error.CONSTRUCTOR) {
+                TdApi.Error error = (TdApi.Error) object;
+                int retryAfter = getRetryAfter(error);
+                if (retryAfter >= 0 && retryAfter <= maxRetryDelay && retry(request, retryAfter)) {
+                    return;
+                }
+            }
+            if (request.resultHandler == null) {
+                return;
+            }
+            if (request.exceptionHandler == null) {
+                // the exception is passed to the default exception handler of the client
+                request.resultHandler.onResult(object);
+                return;
+            }
+            // requests of a batch have different exception handlers, so they are called here instead of the client
+            try {
+                request.resultHandler.onResult(object);
+            } catch (Throwable cause) {
+                try {
+                    request.exceptionHandler.onException(cause);
+                } catch (Throwable ignored) {
+                }
+            }
+        }
+    }
+
+    private final QuerySender sender;
+    private final ScheduledExecutorService timer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final HashMap<Integer, MethodQueue> methodQueues = new HashMap<Integer, MethodQueue>();
+    private long nextSequenceNumber = 0;
+    private int waitingRequestCount = 0;
+    private long retriedRequestCount = 0;
+    private volatile int maxRetryDelay = Integer.MAX_VALUE;
+    private volatile int maxRetryCount = 5;
+
+    /**
+     * Creates a scheduler of requests sent through the given sender.
+     *
+     * @param sender Sender of the scheduled requests, usually a Client.
+     */
+    public FloodWaitScheduler(QuerySender sender) {
+        this.sender = sender;
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "TDLib flood wait scheduler thread");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Limits the rate of requests of a method.
+     *
+     * @param functionConstructor Identifier of the method, i.e. CONSTRUCTOR of the TdApi.Function class.
+     * @param requestsPerSecond   Maximum average number of requests per second. Must be positive.
+     * @param burst               Maximum number of requests, which can be sent at once after a period of inactivity.
+     *                            Must be positive.
+     */
+    public void setRateLimit(int functionConstructor, double requestsPerSecond, int burst) {
+        if (!(requestsPerSecond > 0) || burst <= 0) {
+            throw new IllegalArgumentException("Rate limit must be positive");
+        }
+        lock.lock();
+        try {
+            MethodQueue methodQueue = getMethodQueue(functionConstructor);
+            methodQueue.tokensPerNanosecond = requestsPerSecond * 1e-9;
+            methodQueue.maxTokens = burst;
+            methodQueue.tokens = Math.min(methodQueue.tokens, burst);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Changes the maximum delay for which a request can be postponed. Errors with a longer retry delay are passed
+     * to the result handler of the request. By default, the delay isn't limited.
+     *
+     * @param maxRetryDelay Maximum retry delay in seconds.
+     */
+    public void setMaxRetryDelay(int maxRetryDelay) {
+        this.maxRetryDelay = maxRetryDelay;
+    }
+
+    /**
+     * Changes the maximum number of times a request can be re-sent after "Too Many Requests" errors. The error
+     * received after the last retry is passed to the result handler of the request. By default, a request is
+     * re-sent at most 5 times.
+     *
+     * @param maxRetryCount Maximum number of retries of a request. Must be non-negative.
+     */
+    public void setMaxRetryCount(int maxRetryCount) {
+        if (maxRetryCount < 0) {
+            throw new IllegalArgumentException("Maximum retry count must be non-negative");
+        }
+        this.maxRetryCount = maxRetryCount;
+    }
+
+    /**
+     * Sends a request to the TDLib as soon as the rate limits of its method allow.
+     *
+     * @param query            Object representing a query to the TDLib.
+     * @param resultHandler    Result handler with onResult method which will be called with result
+     *                         of the query or with TdApi.Error as parameter. "Too Many Requests" errors are passed
+     *                         to the handler only if the retry delay exceeds the maximum retry delay.
+     *                         If it is null, nothing will be called.
+     * @param exceptionHandler Exception handler with onException method which will be called on
+     *                         exception thrown from resultHandler. If it is null, then
+     *                         defaultExceptionHandler of the client will be called.
+     * @throws NullPointerException if query is null.
+     */
+    @Override
+    public void send(TdApi.Function<?> query, Client.ResultHandler resultHandler, Client.ExceptionHandler exceptionHandler) {
+        Request request;
+        lock.lock();
+        try {
+            MethodQueue methodQueue = getMethodQueue(query.getConstructor());
+            request = new Request(query, resultHandler, exceptionHandler, nextSequenceNumber++);
+            long now = System.nanoTime();
+            if (!methodQueue.isEmpty() || !methodQueue.tryAcquire(now)) {
+                methodQueue.requests.add(request);
+                waitingRequestCount++;
+                methodQueue.scheduleDrain(now);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        sendNow(request);
+    }
+
+    /**
+     * Sends several requests to the TDLib as soon as the rate limits of their methods allow. Requests, which can be
+     * sent immediately, are passed to the underlying sender as one batch.
+     *
+     * @param queries          Objects representing queries to the TDLib.
+     * @param resultHandlers   Result handlers for the queries with the same indices. The array can be null
+     *                         or contain null values, then nothing will be called for corresponding queries.
+     * @param exceptionHandler Exception handler with onException method which will be called on
+     *                         exception thrown from resultHandlers. If it is null, then
+     *                         defaultExceptionHandler of the client will be called.
+     * @throws NullPointerException     if queries or any of the queries is null.
+     * @throws IllegalArgumentException if resultHandlers and queries have different length.
+     */
+    @Override
+    public void sendBatch(TdApi.Function<?>[] queries, Client.ResultHandler[] resultHandlers, Client.ExceptionHandler exceptionHandler) {
+        if (resultHandlers != null && resultHandlers.length != queries.length) {
+            throw new IllegalArgumentException("Number of result handlers must be equal to the number of queries");
+        }
+        for (TdApi.Function<?> query : queries) {
+            if (query == null) {
+                throw new NullPointerException("query is null");
+            }
+        }
+        ArrayList<Request> readyRequests = new ArrayList<Request>(queries.length);
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            for (int i = 0; i < queries.length; i++) {
+                MethodQueue methodQueue = getMethodQueue(queries[i].getConstructor());
+                Request request = new Request(queries[i], resultHandlers == null ? null : resultHandlers[i], exceptionHandler, nextSequenceNumber++);
+                if (!methodQueue.isEmpty() || !methodQueue.tryAcquire(now)) {
+                    methodQueue.requests.add(request);
+                    waitingRequestCount++;
+                    methodQueue.scheduleDrain(now);
+                } else {
+                    readyRequests.add(request);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        sendNow(readyRequests);
+    }
+
+    /**
+     * Returns the number of requests, which are waiting to be sent or re-sent.
+     *
+     * @return the number of waiting requests.
+     */
+    public int getWaitingRequestCount() {
+        lock.lock();
+        try {
+            return waitingRequestCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the total number of requests, which were re-sent after a "Too Many Requests" error.
+     *
+     * @return the number of retried requests.
+     */
+    public long getRetriedRequestCount() {
+        lock.lock();
+        try {
+            return retriedRequestCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the scheduler. Waiting requests are never sent.
+     */
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Returns the delay after which a failed request can be repeated.
+     *
+     * @param error The error returned for the request.
+     * @return the delay in seconds or -1 if the request can't be repeated.
+     */
+    static int getRetryAfter(TdApi.Error error) {
+        if (error.code != 429) {
+            return -1;
+        }
+        String prefix = "retry after ";
+        int pos = error.message.indexOf(prefix);
+        if (pos < 0) {
+            return -1;
+        }
+        int retryAfter = 0;
+        for (pos += prefix.length(); pos < error.message.length(); pos++) {
+            char c = error.message.charAt(pos);
+            if (c < '0' || c > '9' || retryAfter > 100000000) {
+                break;
+            }
+            retryAfter = retryAfter * 10 + (c - '0');
+        }
+        return retryAfter;
+    }
+
+    private MethodQueue getMethodQueue(int functionConstructor) {
+        MethodQueue methodQueue = methodQueues.get(functionConstructor);
+        if (methodQueue == null) {
+            methodQueue = new MethodQueue();
+            methodQueues.put(functionConstructor, methodQueue);
+        }
+        return methodQueue;
+    }
+
+    private void sendNow(Request request) {
+        sender.send(request.query, new FloodWaitHandler(request), null);
+    }
+
+    private void sendNow(ArrayList<Request> requests) {
+        if (requests.size() <= 1) {
+            if (!requests.isEmpty()) {
+                sendNow(requests.get(0));
+            }
+            return;
+        }
+        TdApi.Function<?>[] queries = new TdApi.Function<?>[requests.size()];
+        Client.ResultHandler[] resultHandlers = new Client.ResultHandler[requests.size()];
+        for (int i = 0; i < queries.length; i++) {
+            Request request = requests.get(i);
+            queries[i] = request.query;
+            resultHandlers[i] = new FloodWaitHandler(request);
+        }
+        sender.sendBatch(queries, resultHandlers, null);
+    }
+
+    private boolean retry(Request request, int retryAfter) {
+        lock.lock();
+        try {
+            if (request.retryCount >= maxRetryCount) {
+                return false;
+            }
+            MethodQueue methodQueue = getMethodQueue(request.query.getConstructor());
+            long now = System.nanoTime();
+            long blockedUntil = now + TimeUnit.SECONDS.toNanos(retryAfter);
+            if (methodQueue.blockedUntil - blockedUntil < 0) {
+                methodQueue.blockedUntil = blockedUntil;
+            }
+            request.retryCount++;
+            methodQueue.retriedRequests.add(request);
+            waitingRequestCount++;
+            retriedRequestCount++;
+            // if a drain is already scheduled, it will find the method blocked and reschedule itself
+            methodQueue.scheduleDrain(now);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of request latencies with a relative error of at most 12.5%. Latencies are recorded in microseconds into
+ * 8 buckets per power of two, so recording never allocates memory and can be done concurrently from any threads.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_BUCKET_COUNT = SUB_BUCKET_COUNT * 2;
+    private static final int BUCKET_COUNT = LINEAR_BUCKET_COUNT + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    private static int getBucket(long micros) {
+        if (micros < LINEAR_BUCKET_COUNT) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return LINEAR_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long getBucketLowerBound(int bucket) {
+        if (bucket < LINEAR_BUCKET_COUNT) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKET_COUNT) / SUB_BUCKET_COUNT + SUB_BUCKET_BITS + 1;
+        long subBucket = (bucket - LINEAR_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(getBucket(micros));
+        totalCount.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+    }
+
+    LatencyHistogram copy() {
+        // the copy can miss concurrently recorded latencies, but its count must match its buckets
+        LatencyHistogram result = new LatencyHistogram();
+        long count = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            long bucketCount = counts.get(bucket);
+            result.counts.set(bucket, bucketCount);
+            count += bucketCount;
+        }
+        result.totalCount.set(count);
+        result.totalMicros.set(totalMicros.get());
+        result.maxMicros.set(maxMicros.get());
+        return result;
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return the number of recorded latencies.
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Returns the mean recorded latency.
+     *
+     * @return the mean latency in microseconds or 0 if nothing was recorded.
+     */
+    public long getMeanMicros() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : totalMicros.get() / count;
+    }
+
+    /**
+     * Returns the maximum recorded latency.
+     *
+     * @return the maximum latency in microseconds.
+     */
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * Returns approximate value of a percentile of the recorded latencies.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return the latency in microseconds, which isn't exceeded by the given percent of recorded latencies,
+     * or 0 if nothing was recorded.
+     */
+    public long getPercentileMicros(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank && seen > 0) {
+                long max = maxMicros.get();
+                return bucket + 1 == BUCKET_COUNT ? max : Math.min(getBucketLowerBound(bucket + 1) - 1, max);
+            }
+        }
+        return maxMicros.get();
+    }
+
+    @Override
+    public String toString() {
+        return "count = " + getCount() + ", mean = " + getMeanMicros() + "us, p50 = " + getPercentileMicros(50) +
+            "us, p99 = " + getPercentileMicros(99) + "us, max = " + getMaxMicros() + "us";
+    }
+}
@@ -0,0 +1,77 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import java.lang.ref.Cleaner;
+
+/**
+ * TDLib API object, which is kept in the native memory until it is needed in Java. Objects of this class are
+ * created by the native code for fields, which are materialized lazily, and are accessed through generated getters
+ * of the fields. The native object is released when it is converted to a Java object, when it is released explicitly,
+ * or, if neither happened, after the LazyObject becomes unreachable.
+ */
+final class LazyObject {
+    private static final class NativeObject implements Runnable {
+        private long pointer;
+
+        NativeObject(long pointer) {
+            this.pointer = pointer;
+        }
+
+        synchronized long take() {
+            long result = pointer;
+            pointer = 0;
+            return result;
+        }
+
+        @Override
+        public void run() {
+            long pointer = take();
+            if (pointer != 0) {
+                nativeRelease(pointer);
+            }
+        }
+    }
+
+    private final NativeObject nativeObject;
+    private final Cleaner.Cleanable cleanable;
+    private TdApi.Object object;
+
+    // called from the native code
+    private LazyObject(long pointer) {
+        this.nativeObject = new NativeObject(pointer);
+        this.cleanable = cleaner.register(this, nativeObject);
+    }
+
+    /**
+     * Returns the object, converting it to a Java object on the first call.
+     *
+     * @return The object or null, if the native object was released before it was converted.
+     */
+    synchronized TdApi.Object get() {
+        long pointer = nativeObject.take();
+        if (pointer != 0) {
+            // the native object is destroyed after conversion
+            object = nativeGet(pointer);
+            cleanable.clean();
+        }
+        return object;
+    }
+
+    /**
+     * Releases the native object, if it wasn't converted to a Java object yet.
+     */
+    void release() {
+        cleanable.clean();
+    }
+
+    private static final Cleaner cleaner = Cleaner.create();
+
+    private static native TdApi.Object nativeGet(long pointer);
+
+    private static native void nativeRelease(long pointer);
+}
@@ -0,0 +1,196 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Open-addressing hash map from long keys to objects, which doesn't box keys and doesn't allocate per-entry nodes.
+ * The map is intended for identifiers of TDLib objects, which are non-zero and often allocated sequentially.
+ * The map can be read by any number of threads without locking, but all modifications must be done from one thread
+ * at a time. Readers see a weakly consistent view of the map.
+ * A removed key keeps its slot until the table is rebuilt, so a key, which is added again, reuses its slot.
+ */
+final class LongObjectMap<V> {
+    /**
+     * Interface for visiting entries of the map.
+     */
+    interface Visitor<V> {
+        void visit(long key, V value);
+    }
+
+    private static final class Table<V> {
+        final int mask;
+        final AtomicLongArray keys;
+        final AtomicReferenceArray<V> values;
+
+        Table(int capacity) {
+            this.mask = capacity - 1;
+            this.keys = new AtomicLongArray(capacity);
+            this.values = new AtomicReferenceArray<V>(capacity);
+        }
+    }
+
+    private static final long EMPTY_KEY = 0;
+    private static final int MIN_CAPACITY = 16;
+
+    private volatile Table<V> table;
+    private volatile V zeroKeyValue;
+    private volatile int size;
+    private int usedSlotCount;
+
+    LongObjectMap() {
+        this.table = new Table<V>(MIN_CAPACITY);
+    }
+
+    private static int getSlot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    V get(long key) {
+        if (key == EMPTY_KEY) {
+            return zeroKeyValue;
+        }
+        Table<V> t = table;
+        for (int slot = getSlot(key, t.mask); ; slot = (slot + 1) & t.mask) {
+            long slotKey = t.keys.get(slot);
+            if (slotKey == key) {
+                return t.values.get(slot);
+            }
+            if (slotKey == EMPTY_KEY) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Associates a value with a key.
+     *
+     * @param key   The key.
+     * @param value The value. Must not be null.
+     * @return the previous value associated with the key or null if none.
+     */
+    V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        if (key == EMPTY_KEY) {
+            V oldValue = zeroKeyValue;
+            zeroKeyValue = value;
+            if (oldValue == null) {
+                size++;
+            }
+            return oldValue;
+        }
+        Table<V> t = table;
+        for (int slot = getSlot(key, t.mask); ; slot = (slot + 1) & t.mask) {
+            long slotKey = t.keys.get(slot);
+            if (slotKey == key) {
+                V oldValue = t.values.getAndSet(slot, value);
+                if (oldValue == null) {
+                    size++;
+                }
+                return oldValue;
+            }
+            if (slotKey == EMPTY_KEY) {
+                // the value must be visible before the key is published to readers
+                t.values.set(slot, value);
+                t.keys.set(slot, key);
+                size++;
+                if (++usedSlotCount * 2 > t.mask + 1) {
+                    rebuild();
+                }
+                return null;
+            }
+        }
+    }
+
+    V remove(long key) {
+        if (key == EMPTY_KEY) {
+            V oldValue = zeroKeyValue;
+            zeroKeyValue = null;
+            if (oldValue != null) {
+                size--;
+            }
+            return oldValue;
+        }
+        Table<V> t = table;
+        for (int slot = getSlot(key, t.mask); ; slot = (slot + 1) & t.mask) {
+            long slotKey = t.keys.get(slot);
+            if (slotKey == key) {
+                V oldValue = t.values.getAndSet(slot, null);
+                if (oldValue != null) {
+                    size--;
+                }
+                return oldValue;
+            }
+            if (slotKey == EMPTY_KEY) {
+                return null;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Calls the visitor for every entry of the map.
+     *
+     * @param visitor The visitor.
+     */
+    void forEach(Visitor<? super V> visitor) {
+        V value = zeroKeyValue;
+        if (value != null) {
+            visitor.visit(EMPTY_KEY, value);
+        }
+        Table<V> t = table;
+        for (int slot = 0; slot <= t.mask; slot++) {
+            long key = t.keys.get(slot);
+            if (key != EMPTY_KEY) {
+                value = t.values.get(slot);
+                if (value != null) {
+                    visitor.visit(key, value);
+                }
+            }
+        }
+    }
+
+    // moves live entries to a new table, which is at most a quarter full, and drops slots of removed keys;
+    // the table can't be half full, otherwise the map would be rebuilt on every new key if the size is stable
+    private void rebuild() {
+        Table<V> oldTable = table;
+        int liveCount = 0;
+        for (int slot = 0; slot <= oldTable.mask; slot++) {
+            if (oldTable.values.get(slot) != null) {
+                liveCount++;
+            }
+        }
+        int capacity = MIN_CAPACITY;
+        while (capacity < liveCount * 4) {
+            capacity <<= 1;
+        }
+
+        Table<V> newTable = new Table<V>(capacity);
+        for (int oldSlot = 0; oldSlot <= oldTable.mask; oldSlot++) {
+            V value = oldTable.values.get(oldSlot);
+            if (value != null) {
+                long key = oldTable.keys.get(oldSlot);
+                int slot = getSlot(key, newTable.mask);
+                while (newTable.keys.get(slot) != EMPTY_KEY) {
+                    slot = (slot + 1) & newTable.mask;
+                }
+                newTable.values.lazySet(slot, value);
+                newTable.keys.lazySet(slot, key);
+            }
+        }
+        usedSlotCount = liveCount;
+        table = newTable;
+    }
+}
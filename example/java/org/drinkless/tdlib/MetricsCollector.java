@@ -0,0 +1,126 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Collects metrics of all clients. Receiver metrics are updated only by the TDLib thread, all other metrics can be
+ * updated from any thread.
+ */
+final class MetricsCollector {
+    // error codes in [0, ERROR_CODE_COUNT) are counted without allocations
+    private static final int ERROR_CODE_COUNT = 1000;
+
+    // metrics are indexed by TdApi CONSTRUCTOR_INDEX; CONSTRUCTOR for the index is stored before the first metric
+    private final AtomicIntegerArray constructors = new AtomicIntegerArray(TdApi.CONSTRUCTOR_INDEX_COUNT);
+    private final AtomicReferenceArray<LatencyHistogram> requestLatencies = new AtomicReferenceArray<LatencyHistogram>(TdApi.CONSTRUCTOR_INDEX_COUNT);
+    private final AtomicLongArray updateCounts = new AtomicLongArray(TdApi.CONSTRUCTOR_INDEX_COUNT);
+    private final AtomicLongArray errorCounts = new AtomicLongArray(ERROR_CODE_COUNT);
+    private final ConcurrentHashMap<Integer, AtomicLong> otherErrorCounts = new ConcurrentHashMap<Integer, AtomicLong>();
+    private final LatencyHistogram handlerLatency = new LatencyHistogram();
+
+    private volatile long receiveCount = 0;
+    private volatile long receivedEventCount = 0;
+    private volatile long fullReceiveCount = 0;
+    private volatile long receiveNanos = 0;
+    private volatile long dispatchNanos = 0;
+
+    // called only from the TDLib thread
+    void onReceive(int eventCount, boolean isFull, long nanos) {
+        receiveCount++;
+        receivedEventCount += eventCount;
+        if (isFull) {
+            fullReceiveCount++;
+        }
+        receiveNanos += nanos;
+    }
+
+    // called only from the TDLib thread
+    void onDispatch(long nanos) {
+        dispatchNanos += nanos;
+    }
+
+    void onRequestFinished(int functionConstructorIndex, int functionConstructor, long nanos) {
+        LatencyHistogram histogram = requestLatencies.get(functionConstructorIndex);
+        if (histogram == null) {
+            setConstructor(functionConstructorIndex, functionConstructor);
+            requestLatencies.compareAndSet(functionConstructorIndex, null, new LatencyHistogram());
+            histogram = requestLatencies.get(functionConstructorIndex);
+        }
+        histogram.record(nanos);
+    }
+
+    void onError(int code) {
+        if (code >= 0 && code < ERROR_CODE_COUNT) {
+            errorCounts.incrementAndGet(code);
+            return;
+        }
+        AtomicLong count = otherErrorCounts.get(code);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong();
+            count = otherErrorCounts.putIfAbsent(code, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    void onUpdate(int updateConstructorIndex, int updateConstructor) {
+        setConstructor(updateConstructorIndex, updateConstructor);
+        updateCounts.incrementAndGet(updateConstructorIndex);
+    }
+
+    void onHandlerFinished(long nanos) {
+        handlerLatency.record(nanos);
+    }
+
+    ClientMetrics getSnapshot(int pendingRequestCount, int maxReceiveBatchSize) {
+        HashMap<Integer, LatencyHistogram> requestLatenciesCopy = new HashMap<Integer, LatencyHistogram>();
+        HashMap<Integer, Long> updateCountsCopy = new HashMap<Integer, Long>();
+        for (int i = 0; i < TdApi.CONSTRUCTOR_INDEX_COUNT; i++) {
+            int constructor = constructors.get(i);
+            if (constructor == 0) {
+                continue;
+            }
+            LatencyHistogram histogram = requestLatencies.get(i);
+            if (histogram != null) {
+                requestLatenciesCopy.put(constructor, histogram.copy());
+            }
+            long updateCount = updateCounts.get(i);
+            if (updateCount != 0) {
+                updateCountsCopy.put(constructor, updateCount);
+            }
+        }
+        HashMap<Integer, Long> errorCountsCopy = new HashMap<Integer, Long>();
+        for (int code = 0; code < ERROR_CODE_COUNT; code++) {
+            long errorCount = errorCounts.get(code);
+            if (errorCount != 0) {
+                errorCountsCopy.put(code, errorCount);
+            }
+        }
+        for (Map.Entry<Integer, AtomicLong> entry : otherErrorCounts.entrySet()) {
+            errorCountsCopy.put(entry.getKey(), entry.getValue().get());
+        }
+        return new ClientMetrics(System.nanoTime(), pendingRequestCount, maxReceiveBatchSize, receiveCount,
+            receivedEventCount, fullReceiveCount, receiveNanos, dispatchNanos, handlerLatency.copy(),
+            requestLatenciesCopy, errorCountsCopy, updateCountsCopy);
+    }
+
+    private void setConstructor(int constructorIndex, int constructor) {
+        if (constructors.get(constructorIndex) == 0) {
+            constructors.set(constructorIndex, constructor);
+        }
+    }
+}
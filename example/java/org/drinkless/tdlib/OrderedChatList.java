@@ -0,0 +1,133 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Concurrent list of chats sorted by their position in a chat list, i.e. by descending pair (order, chatId).
+ * Chat positions can be changed from one thread, for example, from the update handler, while any number
+ * of threads read the list without locking. Position changes of different chats can be also applied concurrently.
+ * Readers see a weakly consistent view of the list: a chat, which is being moved, can be temporarily absent.
+ */
+public final class OrderedChatList {
+    private static final class OrderedChat implements Comparable<OrderedChat> {
+        final long chatId;
+        final long order;
+
+        OrderedChat(long chatId, long order) {
+            this.chatId = chatId;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(OrderedChat o) {
+            if (this.order != o.order) {
+                return o.order < this.order ? -1 : 1;
+            }
+            if (this.chatId != o.chatId) {
+                return o.chatId < this.chatId ? -1 : 1;
+            }
+            return 0;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof OrderedChat)) {
+                return false;
+            }
+            OrderedChat o = (OrderedChat) obj;
+            return this.chatId == o.chatId && this.order == o.order;
+        }
+
+        @Override
+        public int hashCode() {
+            long hash = chatId * 31 + order;
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+
+    private final ConcurrentSkipListSet<OrderedChat> orderedChats = new ConcurrentSkipListSet<OrderedChat>();
+    private final ConcurrentHashMap<Long, OrderedChat> chatPositions = new ConcurrentHashMap<Long, OrderedChat>();
+
+    /**
+     * Changes order of a chat in the list.
+     *
+     * @param chatId Chat identifier.
+     * @param order  New order of the chat. If 0, then the chat is removed from the list.
+     */
+    public void setChatOrder(final long chatId, final long order) {
+        // chat positions are changed under the lock of the chat's bin in the map, so concurrent changes
+        // of the same chat are serialized, but readers of orderedChats never wait for them
+        chatPositions.compute(chatId, (key, oldChat) -> {
+            if (oldChat != null) {
+                if (oldChat.order == order) {
+                    return oldChat;
+                }
+                orderedChats.remove(oldChat);
+            }
+            if (order == 0) {
+                return null;
+            }
+            OrderedChat newChat = new OrderedChat(chatId, order);
+            orderedChats.add(newChat);
+            return newChat;
+        });
+    }
+
+    /**
+     * Removes a chat from the list.
+     *
+     * @param chatId Chat identifier.
+     */
+    public void removeChat(long chatId) {
+        setChatOrder(chatId, 0);
+    }
+
+    /**
+     * Returns order of a chat in the list.
+     *
+     * @param chatId Chat identifier.
+     * @return order of the chat or 0 if the chat isn't in the list.
+     */
+    public long getChatOrder(long chatId) {
+        OrderedChat chat = chatPositions.get(chatId);
+        return chat == null ? 0 : chat.order;
+    }
+
+    /**
+     * Returns identifiers of the first chats in the list without locking.
+     *
+     * @param limit Maximum number of chats to return.
+     * @return identifiers of the first chats in the list in the order of their position.
+     */
+    public long[] getChatIds(int limit) {
+        long[] chatIds = new long[Math.max(0, Math.min(limit, chatPositions.size()))];
+        int count = 0;
+        Iterator<OrderedChat> it = orderedChats.iterator();
+        while (count < chatIds.length && it.hasNext()) {
+            chatIds[count++] = it.next().chatId;
+        }
+        if (count != chatIds.length) {
+            long[] result = new long[count];
+            System.arraycopy(chatIds, 0, result, 0, count);
+            return result;
+        }
+        return chatIds;
+    }
+
+    /**
+     * Returns the number of chats in the list.
+     *
+     * @return the number of chats in the list.
+     */
+    public int size() {
+        return chatPositions.size();
+    }
+}
@@ -0,0 +1,85 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Concurrent ordered lists of chats for all chat lists of a client, i.e. the main chat list, the archive chat list
+ * and lists of chats in chat filters. The lists are filled from chat positions received in updates.
+ */
+public final class OrderedChatLists {
+    private final ConcurrentHashMap<Long, OrderedChatList> chatLists = new ConcurrentHashMap<Long, OrderedChatList>();
+
+    /**
+     * Returns a number, which uniquely identifies a chat list.
+     *
+     * @param list The chat list.
+     * @return identifier of the chat list.
+     */
+    public static long getChatListId(TdApi.ChatList list) {
+        long filterId = list instanceof TdApi.ChatListFilter ? ((TdApi.ChatListFilter) list).chatFilterId : 0;
+        return ((long) list.getConstructor() << 32) | (filterId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns ordered list of chats in a chat list. The list is created if it doesn't exist yet.
+     *
+     * @param list The chat list.
+     * @return ordered list of chats in the chat list.
+     */
+    public OrderedChatList get(TdApi.ChatList list) {
+        long chatListId = getChatListId(list);
+        OrderedChatList chatList = chatLists.get(chatListId);
+        if (chatList == null) {
+            OrderedChatList newChatList = new OrderedChatList();
+            chatList = chatLists.putIfAbsent(chatListId, newChatList);
+            if (chatList == null) {
+                chatList = newChatList;
+            }
+        }
+        return chatList;
+    }
+
+    /**
+     * Changes position of a chat in the chat list specified in the position.
+     *
+     * @param chatId   Chat identifier.
+     * @param position New position of the chat. If position.order is 0, then the chat is removed from the chat list.
+     */
+    public void setChatPosition(long chatId, TdApi.ChatPosition position) {
+        get(position.list).setChatOrder(chatId, position.order);
+    }
+
+    /**
+     * Replaces all positions of a chat.
+     *
+     * @param chatId       Chat identifier.
+     * @param oldPositions Previous positions of the chat.
+     * @param newPositions New positions of the chat.
+     */
+    public void setChatPositions(long chatId, TdApi.ChatPosition[] oldPositions, TdApi.ChatPosition[] newPositions) {
+        for (TdApi.ChatPosition oldPosition : oldPositions) {
+            if (!containsChatList(newPositions, oldPosition.list)) {
+                get(oldPosition.list).removeChat(chatId);
+            }
+        }
+        for (TdApi.ChatPosition newPosition : newPositions) {
+            setChatPosition(chatId, newPosition);
+        }
+    }
+
+    private static boolean containsChatList(TdApi.ChatPosition[] positions, TdApi.ChatList list) {
+        long chatListId = getChatListId(list);
+        for (TdApi.ChatPosition position : positions) {
+            if (getChatListId(position.list) == chatListId) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
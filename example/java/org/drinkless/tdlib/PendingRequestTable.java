@@ -0,0 +1,92 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Table of handlers of pending requests keyed by query identifier.
+ * Query identifiers are positive and increase monotonically, so the identifier modulo the table capacity
+ * is used as a slot index. A slot is released when the result of the request is received, so slots are
+ * reused without any allocation. If the slot is still occupied by an older request, the value is stored
+ * in a fallback map instead. The table has no shared counters, which would be updated on every operation,
+ * so the number of pending requests is computed only when requested.
+ * A value must be put to the table before it can be removed by its identifier.
+ */
+final class PendingRequestTable<V> {
+    private static final long FREE_SLOT = 0;
+
+    private final int mask;
+    private final AtomicLongArray ids;
+    private final AtomicReferenceArray<V> values;
+    private final LongObjectMap<V> overflow = new LongObjectMap<V>();  // guarded by itself
+    private final AtomicInteger overflowSize = new AtomicInteger();
+
+    /**
+     * @param capacity Number of slots in the table. Must be a power of two.
+     */
+    PendingRequestTable(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        this.mask = capacity - 1;
+        this.ids = new AtomicLongArray(capacity);
+        this.values = new AtomicReferenceArray<V>(capacity);
+    }
+
+    void put(long id, V value) {
+        int slot = (int) id & mask;
+        if (ids.compareAndSet(slot, FREE_SLOT, id)) {
+            values.set(slot, value);
+        } else {
+            overflowSize.incrementAndGet();
+            synchronized (overflow) {
+                overflow.put(id, value);
+            }
+        }
+    }
+
+    V remove(long id) {
+        int slot = (int) id & mask;
+        if (ids.get(slot) == id) {
+            V value = values.get(slot);
+            if (value != null && values.compareAndSet(slot, value, null)) {
+                ids.set(slot, FREE_SLOT);
+                return value;
+            }
+            return null;
+        }
+        if (overflowSize.get() == 0) {
+            return null;
+        }
+        V value;
+        synchronized (overflow) {
+            value = overflow.remove(id);
+        }
+        if (value != null) {
+            overflowSize.decrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of pending requests. The table is scanned, so the method is intended only for metrics.
+     *
+     * @return the number of values in the table.
+     */
+    int size() {
+        int result = overflowSize.get();
+        for (int slot = 0; slot <= mask; slot++) {
+            if (ids.get(slot) != FREE_SLOT) {
+                result++;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,42 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+/**
+ * Interface for sending queries to TDLib. It is implemented by Client itself and by request schedulers
+ * wrapping a client, so they can be stacked or replaced with a fake implementation.
+ */
+public interface QuerySender {
+    /**
+     * Sends a request to the TDLib.
+     *
+     * @param query            Object representing a query to the TDLib.
+     * @param resultHandler    Result handler with onResult method which will be called with result
+     *                         of the query or with TdApi.Error as parameter. If it is null, nothing
+     *                         will be called.
+     * @param exceptionHandler Exception handler with onException method which will be called on
+     *                         exception thrown from resultHandler. If it is null, then
+     *                         defaultExceptionHandler will be called.
+     */
+    void send(TdApi.Function<?> query, Client.ResultHandler resultHandler, Client.ExceptionHandler exceptionHandler);
+
+    /**
+     * Sends several requests to the TDLib at once. By default, the requests are sent one by one.
+     *
+     * @param queries          Objects representing queries to the TDLib.
+     * @param resultHandlers   Result handlers for the queries with the same indices. The array can be null
+     *                         or contain null values, then nothing will be called for corresponding queries.
+     * @param exceptionHandler Exception handler with onException method which will be called on
+     *                         exception thrown from resultHandlers. If it is null, then
+     *                         defaultExceptionHandler will be called.
+     */
+    default void sendBatch(TdApi.Function<?>[] queries, Client.ResultHandler[] resultHandlers, Client.ExceptionHandler exceptionHandler) {
+        for (int i = 0; i < queries.length; i++) {
+            send(queries[i], resultHandlers == null ? null : resultHandlers[i], exceptionHandler);
+        }
+    }
+}
@@ -0,0 +1,614 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of users, basic groups, supergroups, secret chats, chats and their full info, which is kept up-to-date
+ * by updates received from TDLib. All updates received by a client must be passed to the cache in the order
+ * they were received, usually from the update handler of the client. Updates must not be applied concurrently.
+ * Objects returned by the cache are never modified after they are returned, so they can be used from any thread
+ * without synchronization. A change of an object is applied to its copy, which replaces the object in the cache.
+ * Returned objects must not be modified by the caller.
+ * The number of cached full info objects can be bounded, in which case least recently used full info objects are
+ * evicted from the cache and need to be requested again through getUserFullInfo, getBasicGroupFullInfo
+ * or getSupergroupFullInfo.
+ */
+public final class TdlibStateCache implements Client.ResultHandler {
+    private static final int[] UPDATE_CONSTRUCTORS = new int[]{
+        TdApi.UpdateUser.CONSTRUCTOR,
+        TdApi.UpdateUserStatus.CONSTRUCTOR,
+        TdApi.UpdateBasicGroup.CONSTRUCTOR,
+        TdApi.UpdateSupergroup.CONSTRUCTOR,
+        TdApi.UpdateSecretChat.CONSTRUCTOR,
+        TdApi.UpdateNewChat.CONSTRUCTOR,
+        TdApi.UpdateChatTitle.CONSTRUCTOR,
+        TdApi.UpdateChatPhoto.CONSTRUCTOR,
+        TdApi.UpdateChatPermissions.CONSTRUCTOR,
+        TdApi.UpdateChatLastMessage.CONSTRUCTOR,
+        TdApi.UpdateChatPosition.CONSTRUCTOR,
+        TdApi.UpdateChatReadInbox.CONSTRUCTOR,
+        TdApi.UpdateChatReadOutbox.CONSTRUCTOR,
+        TdApi.UpdateChatActionBar.CONSTRUCTOR,
+        TdApi.UpdateChatAvailableReactions.CONSTRUCTOR,
+        TdApi.UpdateChatDraftMessage.CONSTRUCTOR,
+        TdApi.UpdateChatMessageSender.CONSTRUCTOR,
+        TdApi.UpdateChatMessageTtl.CONSTRUCTOR,
+        TdApi.UpdateChatNotificationSettings.CONSTRUCTOR,
+        TdApi.UpdateChatPendingJoinRequests.CONSTRUCTOR,
+        TdApi.UpdateChatReplyMarkup.CONSTRUCTOR,
+        TdApi.UpdateChatTheme.CONSTRUCTOR,
+        TdApi.UpdateChatUnreadMentionCount.CONSTRUCTOR,
+        TdApi.UpdateMessageMentionRead.CONSTRUCTOR,
+        TdApi.UpdateChatUnreadReactionCount.CONSTRUCTOR,
+        TdApi.UpdateMessageUnreadReactions.CONSTRUCTOR,
+        TdApi.UpdateChatVideoChat.CONSTRUCTOR,
+        TdApi.UpdateChatDefaultDisableNotification.CONSTRUCTOR,
+        TdApi.UpdateChatHasProtectedContent.CONSTRUCTOR,
+        TdApi.UpdateChatHasScheduledMessages.CONSTRUCTOR,
+        TdApi.UpdateChatIsBlocked.CONSTRUCTOR,
+        TdApi.UpdateChatIsMarkedAsUnread.CONSTRUCTOR,
+        TdApi.UpdateUserFullInfo.CONSTRUCTOR,
+        TdApi.UpdateBasicGroupFullInfo.CONSTRUCTOR,
+        TdApi.UpdateSupergroupFullInfo.CONSTRUCTOR
+    };
+
+    private final LongObjectMap<TdApi.User> users = new LongObjectMap<TdApi.User>();
+    private final LongObjectMap<TdApi.BasicGroup> basicGroups = new LongObjectMap<TdApi.BasicGroup>();
+    private final LongObjectMap<TdApi.Supergroup> supergroups = new LongObjectMap<TdApi.Supergroup>();
+    private final LongObjectMap<TdApi.SecretChat> secretChats = new LongObjectMap<TdApi.SecretChat>();
+    private final LongObjectMap<TdApi.Chat> chats = new LongObjectMap<TdApi.Chat>();
+    private final OrderedChatLists chatLists = new OrderedChatLists();
+
+    private final BoundedMap<Long, TdApi.UserFullInfo> usersFullInfo;
+    private final BoundedMap<Long, TdApi.BasicGroupFullInfo> basicGroupsFullInfo;
+    private final BoundedMap<Long, TdApi.SupergroupFullInfo> supergroupsFullInfo;
+
+    /**
+     * Creates a cache without a limit on the number of full info objects.
+     */
+    public TdlibStateCache() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a cache with a limit on the number of full info objects.
+     *
+     * @param maxFullInfoCount Maximum number of cached full info objects of each kind, i.e. separately for users,
+     *                         basic groups and supergroups. Must be positive.
+     */
+    public TdlibStateCache(int maxFullInfoCount) {
+        if (maxFullInfoCount <= 0) {
+            throw new IllegalArgumentException("Maximum number of full info objects must be positive");
+        }
+        usersFullInfo = new BoundedMap<Long, TdApi.UserFullInfo>(maxFullInfoCount);
+        basicGroupsFullInfo = new BoundedMap<Long, TdApi.BasicGroupFullInfo>(maxFullInfoCount);
+        supergroupsFullInfo = new BoundedMap<Long, TdApi.SupergroupFullInfo>(maxFullInfoCount);
+    }
+
+    /**
+     * Returns constructors of all updates applied by the cache, which can be passed to Client.setUpdateFilter.
+     *
+     * @return constructors of the supported updates.
+     */
+    public static int[] getUpdateConstructors() {
+        return UPDATE_CONSTRUCTORS.clone();
+    }
+
+    /**
+     * Applies an update to the cache. Objects, which aren't supported by the cache, are ignored.
+     *
+     * @param object An update received from TDLib.
+     */
+    @Override
+    public void onResult(TdApi.Object object) {
+        switch (object.getConstructor()) {
+            case TdApi.UpdateUser.CONSTRUCTOR: {
+                TdApi.User user = ((TdApi.UpdateUser) object).user;
+                users.put(user.id, user);
+                break;
+            }
+            case TdApi.UpdateUserStatus.CONSTRUCTOR: {
+                TdApi.UpdateUserStatus update = (TdApi.UpdateUserStatus) object;
+                TdApi.User user = users.get(update.userId);
+                if (user != null) {
+                    user = copyUser(user);
+                    user.status = update.status;
+                    users.put(user.id, user);
+                }
+                break;
+            }
+            case TdApi.UpdateBasicGroup.CONSTRUCTOR: {
+                TdApi.BasicGroup basicGroup = ((TdApi.UpdateBasicGroup) object).basicGroup;
+                basicGroups.put(basicGroup.id, basicGroup);
+                break;
+            }
+            case TdApi.UpdateSupergroup.CONSTRUCTOR: {
+                TdApi.Supergroup supergroup = ((TdApi.UpdateSupergroup) object).supergroup;
+                supergroups.put(supergroup.id, supergroup);
+                break;
+            }
+            case TdApi.UpdateSecretChat.CONSTRUCTOR: {
+                TdApi.SecretChat secretChat = ((TdApi.UpdateSecretChat) object).secretChat;
+                secretChats.put(secretChat.id, secretChat);
+                break;
+            }
+
+            case TdApi.UpdateNewChat.CONSTRUCTOR: {
+                TdApi.Chat chat = ((TdApi.UpdateNewChat) object).chat;
+                TdApi.Chat oldChat = chats.put(chat.id, chat);
+                chatLists.setChatPositions(chat.id, oldChat == null ? new TdApi.ChatPosition[0] : oldChat.positions, chat.positions);
+                break;
+            }
+            case TdApi.UpdateChatTitle.CONSTRUCTOR: {
+                TdApi.UpdateChatTitle update = (TdApi.UpdateChatTitle) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.title = update.title;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatPhoto.CONSTRUCTOR: {
+                TdApi.UpdateChatPhoto update = (TdApi.UpdateChatPhoto) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.photo = update.photo;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatPermissions.CONSTRUCTOR: {
+                TdApi.UpdateChatPermissions update = (TdApi.UpdateChatPermissions) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.permissions = update.permissions;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatLastMessage.CONSTRUCTOR: {
+                TdApi.UpdateChatLastMessage update = (TdApi.UpdateChatLastMessage) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.lastMessage = update.lastMessage;
+                    setChatPositions(chat, update.positions);
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatPosition.CONSTRUCTOR: {
+                TdApi.UpdateChatPosition update = (TdApi.UpdateChatPosition) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    long chatListId = OrderedChatLists.getChatListId(update.position.list);
+                    int i;
+                    for (i = 0; i < chat.positions.length; i++) {
+                        if (OrderedChatLists.getChatListId(chat.positions[i].list) == chatListId) {
+                            break;
+                        }
+                    }
+                    TdApi.ChatPosition[] newPositions = new TdApi.ChatPosition[chat.positions.length + (update.position.order == 0 ? 0 : 1) - (i < chat.positions.length ? 1 : 0)];
+                    int pos = 0;
+                    if (update.position.order != 0) {
+                        newPositions[pos++] = update.position;
+                    }
+                    for (int j = 0; j < chat.positions.length; j++) {
+                        if (j != i) {
+                            newPositions[pos++] = chat.positions[j];
+                        }
+                    }
+                    assert pos == newPositions.length;
+
+                    setChatPositions(chat, newPositions);
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatReadInbox.CONSTRUCTOR: {
+                TdApi.UpdateChatReadInbox update = (TdApi.UpdateChatReadInbox) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.lastReadInboxMessageId = update.lastReadInboxMessageId;
+                    chat.unreadCount = update.unreadCount;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatReadOutbox.CONSTRUCTOR: {
+                TdApi.UpdateChatReadOutbox update = (TdApi.UpdateChatReadOutbox) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.lastReadOutboxMessageId = update.lastReadOutboxMessageId;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatActionBar.CONSTRUCTOR: {
+                TdApi.UpdateChatActionBar update = (TdApi.UpdateChatActionBar) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.actionBar = update.actionBar;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatAvailableReactions.CONSTRUCTOR: {
+                TdApi.UpdateChatAvailableReactions update = (TdApi.UpdateChatAvailableReactions) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.availableReactions = update.availableReactions;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatDraftMessage.CONSTRUCTOR: {
+                TdApi.UpdateChatDraftMessage update = (TdApi.UpdateChatDraftMessage) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.draftMessage = update.draftMessage;
+                    setChatPositions(chat, update.positions);
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatMessageSender.CONSTRUCTOR: {
+                TdApi.UpdateChatMessageSender update = (TdApi.UpdateChatMessageSender) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.messageSenderId = update.messageSenderId;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatMessageTtl.CONSTRUCTOR: {
+                TdApi.UpdateChatMessageTtl update = (TdApi.UpdateChatMessageTtl) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.messageTtl = update.messageTtl;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatNotificationSettings.CONSTRUCTOR: {
+                TdApi.UpdateChatNotificationSettings update = (TdApi.UpdateChatNotificationSettings) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.notificationSettings = update.notificationSettings;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatPendingJoinRequests.CONSTRUCTOR: {
+                TdApi.UpdateChatPendingJoinRequests update = (TdApi.UpdateChatPendingJoinRequests) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.pendingJoinRequests = update.pendingJoinRequests;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatReplyMarkup.CONSTRUCTOR: {
+                TdApi.UpdateChatReplyMarkup update = (TdApi.UpdateChatReplyMarkup) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.replyMarkupMessageId = update.replyMarkupMessageId;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatTheme.CONSTRUCTOR: {
+                TdApi.UpdateChatTheme update = (TdApi.UpdateChatTheme) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.themeName = update.themeName;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatUnreadMentionCount.CONSTRUCTOR: {
+                TdApi.UpdateChatUnreadMentionCount update = (TdApi.UpdateChatUnreadMentionCount) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.unreadMentionCount = update.unreadMentionCount;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateMessageMentionRead.CONSTRUCTOR: {
+                TdApi.UpdateMessageMentionRead update = (TdApi.UpdateMessageMentionRead) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.unreadMentionCount = update.unreadMentionCount;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatUnreadReactionCount.CONSTRUCTOR: {
+                TdApi.UpdateChatUnreadReactionCount update = (TdApi.UpdateChatUnreadReactionCount) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.unreadReactionCount = update.unreadReactionCount;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateMessageUnreadReactions.CONSTRUCTOR: {
+                TdApi.UpdateMessageUnreadReactions update = (TdApi.UpdateMessageUnreadReactions) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.unreadReactionCount = update.unreadReactionCount;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatVideoChat.CONSTRUCTOR: {
+                TdApi.UpdateChatVideoChat update = (TdApi.UpdateChatVideoChat) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.videoChat = update.videoChat;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatDefaultDisableNotification.CONSTRUCTOR: {
+                TdApi.UpdateChatDefaultDisableNotification update = (TdApi.UpdateChatDefaultDisableNotification) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.defaultDisableNotification = update.defaultDisableNotification;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatHasProtectedContent.CONSTRUCTOR: {
+                TdApi.UpdateChatHasProtectedContent update = (TdApi.UpdateChatHasProtectedContent) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.hasProtectedContent = update.hasProtectedContent;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatHasScheduledMessages.CONSTRUCTOR: {
+                TdApi.UpdateChatHasScheduledMessages update = (TdApi.UpdateChatHasScheduledMessages) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.hasScheduledMessages = update.hasScheduledMessages;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatIsBlocked.CONSTRUCTOR: {
+                TdApi.UpdateChatIsBlocked update = (TdApi.UpdateChatIsBlocked) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.isBlocked = update.isBlocked;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+            case TdApi.UpdateChatIsMarkedAsUnread.CONSTRUCTOR: {
+                TdApi.UpdateChatIsMarkedAsUnread update = (TdApi.UpdateChatIsMarkedAsUnread) object;
+                TdApi.Chat chat = copyChat(update.chatId);
+                if (chat != null) {
+                    chat.isMarkedAsUnread = update.isMarkedAsUnread;
+                    chats.put(chat.id, chat);
+                }
+                break;
+            }
+
+            case TdApi.UpdateUserFullInfo.CONSTRUCTOR: {
+                TdApi.UpdateUserFullInfo update = (TdApi.UpdateUserFullInfo) object;
+                usersFullInfo.put(update.userId, update.userFullInfo);
+                break;
+            }
+            case TdApi.UpdateBasicGroupFullInfo.CONSTRUCTOR: {
+                TdApi.UpdateBasicGroupFullInfo update = (TdApi.UpdateBasicGroupFullInfo) object;
+                basicGroupsFullInfo.put(update.basicGroupId, update.basicGroupFullInfo);
+                break;
+            }
+            case TdApi.UpdateSupergroupFullInfo.CONSTRUCTOR: {
+                TdApi.UpdateSupergroupFullInfo update = (TdApi.UpdateSupergroupFullInfo) object;
+                supergroupsFullInfo.put(update.supergroupId, update.supergroupFullInfo);
+                break;
+            }
+            default:
+                // the update doesn't change cached objects
+        }
+    }
+
+    /**
+     * Returns a user from the cache.
+     *
+     * @param userId User identifier.
+     * @return the user or null if it isn't cached.
+     */
+    public TdApi.User getUser(long userId) {
+        return users.get(userId);
+    }
+
+    /**
+     * Returns a basic group from the cache.
+     *
+     * @param basicGroupId Basic group identifier.
+     * @return the basic group or null if it isn't cached.
+     */
+    public TdApi.BasicGroup getBasicGroup(long basicGroupId) {
+        return basicGroups.get(basicGroupId);
+    }
+
+    /**
+     * Returns a supergroup from the cache.
+     *
+     * @param supergroupId Supergroup identifier.
+     * @return the supergroup or null if it isn't cached.
+     */
+    public TdApi.Supergroup getSupergroup(long supergroupId) {
+        return supergroups.get(supergroupId);
+    }
+
+    /**
+     * Returns a secret chat from the cache.
+     *
+     * @param secretChatId Secret chat identifier.
+     * @return the secret chat or null if it isn't cached.
+     */
+    public TdApi.SecretChat getSecretChat(int secretChatId) {
+        return secretChats.get(secretChatId);
+    }
+
+    /**
+     * Returns a chat from the cache.
+     *
+     * @param chatId Chat identifier.
+     * @return the chat or null if it isn't cached.
+     */
+    public TdApi.Chat getChat(long chatId) {
+        return chats.get(chatId);
+    }
+
+    /**
+     * Returns full information about a user from the cache.
+     *
+     * @param userId User identifier.
+     * @return full information about the user or null if it isn't cached.
+     */
+    public TdApi.UserFullInfo getUserFullInfo(long userId) {
+        return usersFullInfo.get(userId);
+    }
+
+    /**
+     * Returns full information about a basic group from the cache.
+     *
+     * @param basicGroupId Basic group identifier.
+     * @return full information about the basic group or null if it isn't cached.
+     */
+    public TdApi.BasicGroupFullInfo getBasicGroupFullInfo(long basicGroupId) {
+        return basicGroupsFullInfo.get(basicGroupId);
+    }
+
+    /**
+     * Returns full information about a supergroup from the cache.
+     *
+     * @param supergroupId Supergroup identifier.
+     * @return full information about the supergroup or null if it isn't cached.
+     */
+    public TdApi.SupergroupFullInfo getSupergroupFullInfo(long supergroupId) {
+        return supergroupsFullInfo.get(supergroupId);
+    }
+
+    /**
+     * Returns ordered lists of known chats. The lists must not be modified by the caller.
+     *
+     * @return ordered lists of known chats.
+     */
+    public OrderedChatLists getChatLists() {
+        return chatLists;
+    }
+
+    /**
+     * Returns a read-only snapshot of all known users. The snapshot isn't changed by subsequent updates.
+     *
+     * @return map from user identifiers to users.
+     */
+    public Map<Long, TdApi.User> getUsers() {
+        return snapshot(users);
+    }
+
+    /**
+     * Returns a read-only snapshot of all known chats. The snapshot isn't changed by subsequent updates.
+     *
+     * @return map from chat identifiers to chats.
+     */
+    public Map<Long, TdApi.Chat> getChats() {
+        return snapshot(chats);
+    }
+
+    /**
+     * Returns the number of known users.
+     *
+     * @return the number of known users.
+     */
+    public int getUserCount() {
+        return users.size();
+    }
+
+    /**
+     * Returns the number of known chats.
+     *
+     * @return the number of known chats.
+     */
+    public int getChatCount() {
+        return chats.size();
+    }
+
+    /**
+     * Returns the total number of cached full info objects.
+     *
+     * @return the number of cached full info objects.
+     */
+    public int getFullInfoCount() {
+        return usersFullInfo.size() + basicGroupsFullInfo.size() + supergroupsFullInfo.size();
+    }
+
+    private static <V> Map<Long, V> snapshot(LongObjectMap<V> map) {
+        final HashMap<Long, V> result = new HashMap<Long, V>(map.size() * 4 / 3 + 1);
+        map.forEach(new LongObjectMap.Visitor<V>() {
+            @Override
+            public void visit(long key, V value) {
+                result.put(key, value);
+            }
+        });
+        return Collections.unmodifiableMap(result);
+    }
+
+    private void setChatPositions(TdApi.Chat chat, TdApi.ChatPosition[] positions) {
+        chatLists.setChatPositions(chat.id, chat.positions, positions);
+        chat.positions = positions;
+    }
+
+    private static TdApi.User copyUser(TdApi.User user) {
+        return (TdApi.User) user.copy();
+    }
+
+    private TdApi.Chat copyChat(long chatId) {
+        TdApi.Chat chat = chats.get(chatId);
+        if (chat == null) {
+            return null;
+        }
+        return (TdApi.Chat) chat.copy();
+    }
+
+    private static final class BoundedMap<K, V> {
+        private final LinkedHashMap<K, V> map;
+
+        BoundedMap(final int maxSize) {
+            map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        synchronized V get(K key) {
+            return map.get(key);
+        }
+
+        synchronized void put(K key, V value) {
+            map.put(key, value);
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+    }
+}
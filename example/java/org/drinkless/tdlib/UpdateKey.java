@@ -0,0 +1,80 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+/**
+ * Identifies the state changed by an update, which is completely replaced by the next update with the same key.
+ * Of two updates with equal keys only the later one needs to be handled, provided that the relative order
+ * of the remaining updates is kept.
+ */
+final class UpdateKey {
+    private final int clientId;
+    private final int constructor;
+    private final long id;
+    private final long subId;
+
+    private UpdateKey(int clientId, int constructor, long id, long subId) {
+        this.clientId = clientId;
+        this.constructor = constructor;
+        this.id = id;
+        this.subId = subId;
+    }
+
+    /**
+     * Returns key of the update or null if the update can't be superseded by other updates.
+     *
+     * @param clientId Identifier of the client, which received the update. Can be 0 if all compared keys
+     *                 belong to the same client.
+     * @param update   The update.
+     * @return key of the update or null.
+     */
+    static UpdateKey of(int clientId, TdApi.Object update) {
+        switch (update.getConstructor()) {
+            case TdApi.UpdateUserStatus.CONSTRUCTOR:
+                return new UpdateKey(clientId, TdApi.UpdateUserStatus.CONSTRUCTOR, ((TdApi.UpdateUserStatus) update).userId, 0);
+            case TdApi.UpdateChatReadInbox.CONSTRUCTOR:
+                return new UpdateKey(clientId, TdApi.UpdateChatReadInbox.CONSTRUCTOR, ((TdApi.UpdateChatReadInbox) update).chatId, 0);
+            case TdApi.UpdateChatReadOutbox.CONSTRUCTOR:
+                return new UpdateKey(clientId, TdApi.UpdateChatReadOutbox.CONSTRUCTOR, ((TdApi.UpdateChatReadOutbox) update).chatId, 0);
+            case TdApi.UpdateChatLastMessage.CONSTRUCTOR:
+                return new UpdateKey(clientId, TdApi.UpdateChatLastMessage.CONSTRUCTOR, ((TdApi.UpdateChatLastMessage) update).chatId, 0);
+            case TdApi.UpdateChatPosition.CONSTRUCTOR: {
+                TdApi.UpdateChatPosition updateChatPosition = (TdApi.UpdateChatPosition) update;
+                return new UpdateKey(clientId, TdApi.UpdateChatPosition.CONSTRUCTOR, updateChatPosition.chatId, OrderedChatLists.getChatListId(updateChatPosition.position.list));
+            }
+            case TdApi.UpdateChatUnreadMentionCount.CONSTRUCTOR:
+                return new UpdateKey(clientId, TdApi.UpdateChatUnreadMentionCount.CONSTRUCTOR, ((TdApi.UpdateChatUnreadMentionCount) update).chatId, 0);
+            case TdApi.UpdateChatUnreadReactionCount.CONSTRUCTOR:
+                return new UpdateKey(clientId, TdApi.UpdateChatUnreadReactionCount.CONSTRUCTOR, ((TdApi.UpdateChatUnreadReactionCount) update).chatId, 0);
+            case TdApi.UpdateChatOnlineMemberCount.CONSTRUCTOR:
+                return new UpdateKey(clientId, TdApi.UpdateChatOnlineMemberCount.CONSTRUCTOR, ((TdApi.UpdateChatOnlineMemberCount) update).chatId, 0);
+            case TdApi.UpdateUserFullInfo.CONSTRUCTOR:
+                return new UpdateKey(clientId, TdApi.UpdateUserFullInfo.CONSTRUCTOR, ((TdApi.UpdateUserFullInfo) update).userId, 0);
+            case TdApi.UpdateBasicGroupFullInfo.CONSTRUCTOR:
+                return new UpdateKey(clientId, TdApi.UpdateBasicGroupFullInfo.CONSTRUCTOR, ((TdApi.UpdateBasicGroupFullInfo) update).basicGroupId, 0);
+            case TdApi.UpdateSupergroupFullInfo.CONSTRUCTOR:
+                return new UpdateKey(clientId, TdApi.UpdateSupergroupFullInfo.CONSTRUCTOR, ((TdApi.UpdateSupergroupFullInfo) update).supergroupId, 0);
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof UpdateKey)) {
+            return false;
+        }
+        UpdateKey o = (UpdateKey) obj;
+        return clientId == o.clientId && constructor == o.constructor && id == o.id && subId == o.subId;
+    }
+
+    @Override
+    public int hashCode() {
+        long hash = id * 31 + subId;
+        return ((int) (hash ^ (hash >>> 32)) * 31 + constructor) * 31 + clientId;
+    }
+}
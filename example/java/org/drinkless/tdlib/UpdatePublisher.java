@@ -0,0 +1,274 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes updates of a client to its subscribers. Every subscriber has its own bounded buffer of updates and
+ * receives them on its executor only as requested, so a slow subscriber never delays the client or other
+ * subscribers. If the buffer of a subscriber is full, a buffered update superseded by the new update is removed;
+ * if there is no such update, the subscription is cancelled and the subscriber receives onError.
+ */
+final class UpdatePublisher {
+    private final int clientId;
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+    private volatile boolean isClosed = false;
+
+    UpdatePublisher(int clientId) {
+        this.clientId = clientId;
+    }
+
+    /**
+     * Returns a publisher of updates of the given types.
+     *
+     * @param executor           Executor used to signal subscribers.
+     * @param bufferCapacity     Maximum number of updates buffered for a subscriber. Must be positive.
+     * @param updateConstructors Constructors of the needed updates. If empty, all updates are published.
+     * @return the publisher.
+     */
+    Flow.Publisher<TdApi.Update> getPublisher(final Executor executor, final int bufferCapacity, int[] updateConstructors) {
+        if (executor == null) {
+            throw new NullPointerException("executor is null");
+        }
+        if (bufferCapacity <= 0) {
+            throw new IllegalArgumentException("Buffer capacity must be positive");
+        }
+        final int[] filter = updateConstructors == null || updateConstructors.length == 0 ? null : updateConstructors.clone();
+        if (filter != null) {
+            Arrays.sort(filter);
+        }
+        return new Flow.Publisher<TdApi.Update>() {
+            @Override
+            public void subscribe(Flow.Subscriber<? super TdApi.Update> subscriber) {
+                if (subscriber == null) {
+                    throw new NullPointerException("subscriber is null");
+                }
+                Subscription subscription = new Subscription(subscriber, executor, bufferCapacity, filter);
+                subscriptions.add(subscription);
+                if (isClosed) {
+                    subscription.complete();
+                }
+                subscription.schedule();
+            }
+        };
+    }
+
+    boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    // called only from the thread, which handles results of the client
+    void publish(TdApi.Update update) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(update);
+        }
+    }
+
+    void close() {
+        isClosed = true;
+        for (Subscription subscription : subscriptions) {
+            subscription.complete();
+        }
+    }
+
+    private final class Subscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super TdApi.Update> subscriber;
+        private final Executor executor;
+        private final int bufferCapacity;
+        private final int[] filter;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ArrayDeque<TdApi.Update> buffer = new ArrayDeque<TdApi.Update>();
+        private long demand = 0;
+        private boolean isCancelled = false;
+        private boolean isCompleted = false;
+        private Throwable error = null;
+
+        private final AtomicInteger pendingDrainCount = new AtomicInteger();
+        private boolean isSubscribed = false; // accessed only from the drain
+
+        Subscription(Flow.Subscriber<? super TdApi.Update> subscriber, Executor executor, int bufferCapacity, int[] filter) {
+            this.subscriber = subscriber;
+            this.executor = executor;
+            this.bufferCapacity = bufferCapacity;
+            this.filter = filter;
+        }
+
+        void offer(TdApi.Update update) {
+            if (filter != null && Arrays.binarySearch(filter, update.getConstructor()) < 0) {
+                return;
+            }
+            lock.lock();
+            try {
+                if (isCancelled || isCompleted || error != null) {
+                    return;
+                }
+                if (buffer.size() >= bufferCapacity && !removeSupersededUpdate(update)) {
+                    buffer.clear();
+                    error = new IllegalStateException("Update buffer of " + bufferCapacity + " updates is full");
+                } else {
+                    buffer.add(update);
+                }
+            } finally {
+                lock.unlock();
+            }
+            schedule();
+        }
+
+        void complete() {
+            lock.lock();
+            try {
+                isCompleted = true;
+            } finally {
+                lock.unlock();
+            }
+            schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            lock.lock();
+            try {
+                if (isCancelled || error != null) {
+                    return;
+                }
+                if (n <= 0) {
+                    buffer.clear();
+                    error = new IllegalArgumentException("Non-positive number of updates requested");
+                } else {
+                    demand += n;
+                    if (demand < 0) {
+                        demand = Long.MAX_VALUE;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                isCancelled = true;
+                buffer.clear();
+            } finally {
+                lock.unlock();
+            }
+            subscriptions.remove(this);
+        }
+
+        void schedule() {
+            if (pendingDrainCount.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RuntimeException e) {
+                    // the executor was shut down, so the subscriber can't be signalled anymore
+                    cancel();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int drainCount = 1;
+            do {
+                drain();
+                drainCount = pendingDrainCount.addAndGet(-drainCount);
+            } while (drainCount != 0);
+        }
+
+        private void drain() {
+            if (!isSubscribed) {
+                isSubscribed = true;
+                try {
+                    subscriber.onSubscribe(this);
+                } catch (Throwable e) {
+                    cancel();
+                    return;
+                }
+            }
+            while (true) {
+                TdApi.Update update = null;
+                Throwable terminalError = null;
+                boolean isTerminated = false;
+                lock.lock();
+                try {
+                    if (isCancelled) {
+                        return;
+                    }
+                    if (error != null) {
+                        terminalError = error;
+                        isTerminated = true;
+                    } else if (!buffer.isEmpty()) {
+                        if (demand == 0) {
+                            return;
+                        }
+                        update = buffer.poll();
+                        if (demand != Long.MAX_VALUE) {
+                            demand--;
+                        }
+                    } else if (isCompleted) {
+                        isTerminated = true;
+                    } else {
+                        return;
+                    }
+                    if (isTerminated) {
+                        isCancelled = true;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+
+                if (isTerminated) {
+                    subscriptions.remove(this);
+                    try {
+                        if (terminalError != null) {
+                            subscriber.onError(terminalError);
+                        } else {
+                            subscriber.onComplete();
+                        }
+                    } catch (Throwable ignored) {
+                    }
+                    return;
+                }
+                try {
+                    subscriber.onNext(update);
+                } catch (Throwable e) {
+                    // the subscriber violated the specification, so it can't be signalled anymore
+                    cancel();
+                    return;
+                }
+            }
+        }
+
+        private boolean removeSupersededUpdate(TdApi.Update update) {
+            UpdateKey key = UpdateKey.of(clientId, update);
+            if (key == null) {
+                return false;
+            }
+            Iterator<TdApi.Update> it = buffer.descendingIterator();
+            while (it.hasNext()) {
+                TdApi.Update bufferedUpdate = it.next();
+                if (bufferedUpdate.getConstructor() == update.getConstructor() && key.equals(UpdateKey.of(clientId, bufferedUpdate))) {
+                    it.remove();
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queue of results received for a single client, which are waiting to be handled.
+ * The queue bounds only the number of updates; results of queries are always accepted, because their
+ * number is bounded by the number of pending requests. Updates are handled in the order they were received.
+ */
+final class UpdateQueue {
+    static final class Entry {
+        final long id;
+        final TdApi.Object object;
+        final UpdateKey key;
+
+        Entry(long id, TdApi.Object object, UpdateKey key) {
+            this.id = id;
+            this.object = object;
+            this.key = key;
+        }
+    }
+
+    private final int capacity;
+    private final Client.UpdateQueueOverflowPolicy overflowPolicy;
+    private final boolean coalesceUpdates;
+    private final int[] droppableConstructors;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final LinkedHashSet<Entry> entries = new LinkedHashSet<Entry>();
+    private final HashMap<UpdateKey, Entry> lastEntries = new HashMap<UpdateKey, Entry>();
+    private int updateCount = 0;
+    private boolean isScheduled = false;
+
+    private int maxUpdateCount = 0;
+    private long droppedUpdateCount = 0;
+    private long coalescedUpdateCount = 0;
+
+    UpdateQueue(Client.UpdateQueueParameters parameters) {
+        if (parameters.capacity <= 0) {
+            throw new IllegalArgumentException("Update queue capacity must be positive");
+        }
+        this.capacity = parameters.capacity;
+        this.overflowPolicy = parameters.overflowPolicy;
+        this.coalesceUpdates = parameters.coalesceUpdates;
+        this.droppableConstructors = parameters.droppableUpdateConstructors == null ? new int[0] : parameters.droppableUpdateConstructors.clone();
+    }
+
+    private boolean isDroppable(int constructor) {
+        for (int droppableConstructor : droppableConstructors) {
+            if (droppableConstructor == constructor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a result to the queue, waiting for free space if the overflow policy requires.
+     *
+     * @param id     Identifier of the query or 0 for updates.
+     * @param object The result.
+     * @return true, if the queue must be scheduled for handling.
+     */
+    boolean put(long id, TdApi.Object object) {
+        lock.lock();
+        try {
+            UpdateKey key = null;
+            if (id == 0) {
+                if (coalesceUpdates || overflowPolicy == Client.UpdateQueueOverflowPolicy.COALESCE) {
+                    key = UpdateKey.of(0, object);
+                }
+                if (coalesceUpdates && key != null) {
+                    Entry lastEntry = lastEntries.get(key);
+                    if (lastEntry != null) {
+                        // the queued update is superseded by the new update
+                        entries.remove(lastEntry);
+                        updateCount--;
+                        coalescedUpdateCount++;
+                    }
+                }
+                while (updateCount >= capacity) {
+                    if (key != null) {
+                        Entry lastEntry = lastEntries.get(key);
+                        if (lastEntry != null) {
+                            // the queued update is superseded by the new update
+                            entries.remove(lastEntry);
+                            updateCount--;
+                            coalescedUpdateCount++;
+                            break;
+                        }
+                    }
+                    if (overflowPolicy == Client.UpdateQueueOverflowPolicy.DROP && isDroppable(object.getConstructor())) {
+                        droppedUpdateCount++;
+                        return false;
+                    }
+                    notFull.awaitUninterruptibly();
+                }
+                updateCount++;
+                if (updateCount > maxUpdateCount) {
+                    maxUpdateCount = updateCount;
+                }
+            }
+
+            Entry entry = new Entry(id, object, key);
+            entries.add(entry);
+            if (key != null) {
+                lastEntries.put(key, entry);
+            }
+
+            if (isScheduled) {
+                return false;
+            }
+            isScheduled = true;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the next result to handle. If the queue is empty, it is marked as not scheduled for handling.
+     *
+     * @return the next result or null if the queue is empty.
+     */
+    Entry poll() {
+        lock.lock();
+        try {
+            Iterator<Entry> it = entries.iterator();
+            if (!it.hasNext()) {
+                isScheduled = false;
+                return null;
+            }
+            Entry entry = it.next();
+            it.remove();
+            if (entry.key != null && lastEntries.get(entry.key) == entry) {
+                lastEntries.remove(entry.key);
+            }
+            if (entry.id == 0) {
+                updateCount--;
+                notFull.signal();
+            }
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getUpdateCount() {
+        lock.lock();
+        try {
+            return updateCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getMaxUpdateCount() {
+        lock.lock();
+        try {
+            return maxUpdateCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getDroppedUpdateCount() {
+        lock.lock();
+        try {
+            return droppedUpdateCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getCoalescedUpdateCount() {
+        lock.lock();
+        try {
+            return coalescedUpdateCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -7,17 +7,24 @@
 package org.drinkless.tdlib.example;
 
 import org.drinkless.tdlib.Client;
+import org.drinkless.tdlib.FloodWaitScheduler;
+import org.drinkless.tdlib.OrderedChatList;
+import org.drinkless.tdlib.QuerySender;
+import org.drinkless.tdlib.TdlibStateCache;
 import org.drinkless.tdlib.TdApi;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -37,21 +44,19 @@ public final class Example {
 
     private static final Client.ResultHandler defaultHandler = new DefaultHandler();
 
-    private static final Lock authorizationLock = new ReentrantLock();
-    private static final Condition gotAuthorization = authorizationLock.newCondition();
+    // reports are sent through the scheduler to survive "Too Many Requests" errors
+    private static final FloodWaitScheduler reportScheduler = new FloodWaitScheduler(new BulkQuerySender());
 
-    private static final ConcurrentMap<Long, TdApi.User> users = new ConcurrentHashMap<Long, TdApi.User>();
-    private static final ConcurrentMap<Long, TdApi.BasicGroup> basicGroups = new ConcurrentHashMap<Long, TdApi.BasicGroup>();
-    private static final ConcurrentMap<Long, TdApi.Supergroup> supergroups = new ConcurrentHashMap<Long, TdApi.Supergroup>();
-    private static final ConcurrentMap<Integer, TdApi.SecretChat> secretChats = new ConcurrentHashMap<Integer, TdApi.SecretChat>();
+    static {
+        reportScheduler.setRateLimit(TdApi.ReportChat.CONSTRUCTOR, 5.0, 20);
+        reportScheduler.setRateLimit(TdApi.SearchPublicChat.CONSTRUCTOR, 1.0, 10);
+    }
 
-    private static final ConcurrentMap<Long, TdApi.Chat> chats = new ConcurrentHashMap<Long, TdApi.Chat>();
-    private static final NavigableSet<OrderedChat> mainChatList = new TreeSet<OrderedChat>();
-    private static boolean haveFullMainChatList = false;
+    private static final Lock authorizationLock = new ReentrantLock();
+    private static final Condition gotAuthorization = authorizationLock.newCondition();
 
-    private static final ConcurrentMap<Long, TdApi.UserFullInfo> usersFullInfo = new ConcurrentHashMap<Long, TdApi.UserFullInfo>();
-    private static final ConcurrentMap<Long, TdApi.BasicGroupFullInfo> basicGroupsFullInfo = new ConcurrentHashMap<Long, TdApi.BasicGroupFullInfo>();
-    private static final ConcurrentMap<Long, TdApi.SupergroupFullInfo> supergroupsFullInfo = new ConcurrentHashMap<Long, TdApi.SupergroupFullInfo>();
+    private static final TdlibStateCache stateCache = new TdlibStateCache(1000);
+    private static volatile boolean haveFullMainChatList = false;
 
     private static final String newLine = System.getProperty("line.separator");
     private static final String commandsLine = "Enter command (\n" +
@@ -94,28 +99,6 @@ public final class Example {
         }
     }
 
-    private static void setChatPositions(TdApi.Chat chat, TdApi.ChatPosition[] positions) {
-        synchronized (mainChatList) {
-            synchronized (chat) {
-                for (TdApi.ChatPosition position : chat.positions) {
-                    if (position.list.getConstructor() == TdApi.ChatListMain.CONSTRUCTOR) {
-                        boolean isRemoved = mainChatList.remove(new OrderedChat(chat.id, position));
-                        assert isRemoved;
-                    }
-                }
-
-                chat.positions = positions;
-
-                for (TdApi.ChatPosition position : chat.positions) {
-                    if (position.list.getConstructor() == TdApi.ChatListMain.CONSTRUCTOR) {
-                        boolean isAdded = mainChatList.add(new OrderedChat(chat.id, position));
-                        assert isAdded;
-                    }
-                }
-            }
-        }
-    }
-
     private static void onAuthorizationStateUpdated(TdApi.AuthorizationState authorizationState) {
         if (authorizationState != null) {
             Example.authorizationState = authorizationState;
@@ -184,7 +167,7 @@ public final class Example {
             case TdApi.AuthorizationStateClosed.CONSTRUCTOR:
                 print("Closed");
                 if (!needQuit) {
-                    client = Client.create(new UpdateHandler(), null, null); // recreate client after previous has closed
+                    client = createClient(); // recreate client after previous has closed
                 } else {
                     canQuit = true;
                 }
@@ -311,68 +294,73 @@ public final class Example {
     private static void report(String[] commands, TdApi.ChatReportReason reason) {
         String text = commands[0];
         String channel = commands[1];
-        LinkedBlockingQueue<Long> chatIds = new LinkedBlockingQueue<>(commands.length);
-        LinkedBlockingQueue<Long> messageIds = new LinkedBlockingQueue<>(commands.length);
-        CountDownLatch latch = new CountDownLatch(commands.length - 2);
+        List<CompletableFuture<TdApi.MessageLinkInfo>> links = new ArrayList<>(commands.length - 2);
         for (int i = 2; i < commands.length; i++) {
-            client.send(new TdApi.GetMessageLinkInfo("https://t.me/" + channel + "/" + commands[i]), object -> {
-                TdApi.MessageLinkInfo info = (TdApi.MessageLinkInfo) object;
+            links.add(client.sendAsync(new TdApi.GetMessageLinkInfo("https://t.me/" + channel + "/" + commands[i])));
+        }
+        CompletableFuture.allOf(links.toArray(new CompletableFuture<?>[0])).handle((ignored, e) -> {
+            List<Long> chatIds = new ArrayList<>(links.size());
+            List<Long> messageIds = new ArrayList<>(links.size());
+            for (CompletableFuture<TdApi.MessageLinkInfo> link : links) {
+                if (link.isCompletedExceptionally()) {
+                    continue;
+                }
+                TdApi.MessageLinkInfo info = link.join();
+                if (info.message == null) {
+                    continue;
+                }
                 messageIds.add(info.message.id);
                 chatIds.add(info.message.chatId);
-                latch.countDown();
-            });
-        }
-        try {
-            latch.await();
-        } catch (InterruptedException e) {
-            throw new IllegalStateException(e);
-        }
-        System.out.println("Reporting chat ids:" + chatIds);
-        System.out.println("Reporting message ids:" + messageIds);
-        client.send(new TdApi.ReportChat(chatIds.poll(), messageIds.stream().mapToLong(Long::longValue).toArray(), reason, text), defaultHandler);
+            }
+            if (chatIds.isEmpty()) {
+                print("Failed to resolve any of the messages");
+                return null;
+            }
+            print("Reporting chat ids:" + chatIds);
+            print("Reporting message ids:" + messageIds);
+            client.send(new TdApi.ReportChat(chatIds.get(0), messageIds.stream().mapToLong(Long::longValue).toArray(), reason, text), defaultHandler);
+            return null;
+        }).exceptionally(e -> {
+            // failed links are skipped, so only an unexpected failure of the report itself can get here
+            print("Failed to report messages: " + e);
+            return null;
+        });
     }
 
     private static void getMainChatList(final int limit) {
-        synchronized (mainChatList) {
-            if (!haveFullMainChatList && limit > mainChatList.size()) {
-                // send LoadChats request if there are some unknown chats and have not enough known chats
-                client.send(new TdApi.LoadChats(new TdApi.ChatListMain(), limit - mainChatList.size()), new Client.ResultHandler() {
-                    @Override
-                    public void onResult(TdApi.Object object) {
-                        switch (object.getConstructor()) {
-                            case TdApi.Error.CONSTRUCTOR:
-                                if (((TdApi.Error) object).code == 404) {
-                                    synchronized (mainChatList) {
-                                        haveFullMainChatList = true;
-                                    }
-                                } else {
-                                    System.err.println("Receive an error for LoadChats:" + newLine + object);
-                                }
-                                break;
-                            case TdApi.Ok.CONSTRUCTOR:
-                                // chats had already been received through updates, let's retry request
-                                getMainChatList(limit);
-                                break;
-                            default:
-                                System.err.println("Receive wrong response from TDLib:" + newLine + object);
-                        }
+        OrderedChatList mainChatList = stateCache.getChatLists().get(new TdApi.ChatListMain());
+        if (!haveFullMainChatList && limit > mainChatList.size()) {
+            // send LoadChats request if there are some unknown chats and have not enough known chats
+            client.send(new TdApi.LoadChats(new TdApi.ChatListMain(), limit - mainChatList.size()), new Client.ResultHandler() {
+                @Override
+                public void onResult(TdApi.Object object) {
+                    switch (object.getConstructor()) {
+                        case TdApi.Error.CONSTRUCTOR:
+                            if (((TdApi.Error) object).code == 404) {
+                                haveFullMainChatList = true;
+                            } else {
+                                System.err.println("Receive an error for LoadChats:" + newLine + object);
+                            }
+                            break;
+                        case TdApi.Ok.CONSTRUCTOR:
+                            // chats had already been received through updates, let's retry request
+                            getMainChatList(limit);
+                            break;
+                        default:
+                            System.err.println("Receive wrong response from TDLib:" + newLine + object);
                     }
-                });
-                return;
-            }
-
-            java.util.Iterator<OrderedChat> iter = mainChatList.iterator();
-            System.out.println();
-            System.out.println("First " + limit + " chat(s) out of " + mainChatList.size() + " known chat(s):");
-            for (int i = 0; i < limit && i < mainChatList.size(); i++) {
-                long chatId = iter.next().chatId;
-                TdApi.Chat chat = chats.get(chatId);
-                synchronized (chat) {
-                    System.out.println(chatId + ": " + chat.title);
                 }
-            }
-            print("");
+            });
+            return;
+        }
+
+        long[] chatIds = mainChatList.getChatIds(limit);
+        System.out.println();
+        System.out.println("First " + limit + " chat(s) out of " + mainChatList.size() + " known chat(s):");
+        for (long chatId : chatIds) {
+            System.out.println(chatId + ": " + stateCache.getChat(chatId).title);
         }
+        print("");
     }
 
     private static void sendMessage(long chatId, String message) {
@@ -392,7 +380,7 @@ public final class Example {
         }
 
         // create client
-        client = Client.create(new UpdateHandler(), null, null);
+        client = createClient();
 
         // test Client.execute
         defaultHandler.onResult(Client.execute(new TdApi.GetTextEntities("@telegram /test_command https://telegram.org telegram.me @gif @test")));
@@ -418,251 +406,44 @@ public final class Example {
         }
     }
 
-    private static class OrderedChat implements Comparable<OrderedChat> {
-        final long chatId;
-        final TdApi.ChatPosition position;
-
-        OrderedChat(long chatId, TdApi.ChatPosition position) {
-            this.chatId = chatId;
-            this.position = position;
-        }
-
+    private static class DefaultHandler implements Client.ResultHandler {
         @Override
-        public int compareTo(OrderedChat o) {
-            if (this.position.order != o.position.order) {
-                return o.position.order < this.position.order ? -1 : 1;
-            }
-            if (this.chatId != o.chatId) {
-                return o.chatId < this.chatId ? -1 : 1;
-            }
-            return 0;
+        public void onResult(TdApi.Object object) {
+            print(object.toString());
         }
+    }
+
+    private static Client createClient() {
+        Client newClient = Client.create(new UpdateHandler(), null, null);
+        // updates, which aren't handled by UpdateHandler, are dropped before they are converted to Java objects
+        newClient.setUpdateFilter(TdlibStateCache.getUpdateConstructors());
+        // the limit is needed for priorities, so that bulk reports don't delay requests of the user
+        newClient.enableConcurrencyLimit(new Client.ConcurrencyLimitParameters());
+        return newClient;
+    }
 
+    // sends requests of the scheduler with low priority; requests, which are ready at the same time, are sent at once
+    private static class BulkQuerySender implements QuerySender {
         @Override
-        public boolean equals(Object obj) {
-            OrderedChat o = (OrderedChat) obj;
-            return this.chatId == o.chatId && this.position.order == o.position.order;
+        public void send(TdApi.Function<?> query, Client.ResultHandler resultHandler, Client.ExceptionHandler exceptionHandler) {
+            client.send(query, resultHandler, exceptionHandler, Client.RequestPriority.BULK);
         }
-    }
 
-    private static class DefaultHandler implements Client.ResultHandler {
         @Override
-        public void onResult(TdApi.Object object) {
-            print(object.toString());
+        public void sendBatch(TdApi.Function<?>[] queries, Client.ResultHandler[] resultHandlers, Client.ExceptionHandler exceptionHandler) {
+            client.sendBatch(queries, resultHandlers, exceptionHandler, Client.RequestPriority.BULK);
         }
     }
 
     private static class UpdateHandler implements Client.ResultHandler {
         @Override
         public void onResult(TdApi.Object object) {
+            stateCache.onResult(object);
+
             switch (object.getConstructor()) {
                 case TdApi.UpdateAuthorizationState.CONSTRUCTOR:
                     onAuthorizationStateUpdated(((TdApi.UpdateAuthorizationState) object).authorizationState);
                     break;
-
-                case TdApi.UpdateUser.CONSTRUCTOR:
-                    TdApi.UpdateUser updateUser = (TdApi.UpdateUser) object;
-                    users.put(updateUser.user.id, updateUser.user);
-                    break;
-                case TdApi.UpdateUserStatus.CONSTRUCTOR:  {
-                    TdApi.UpdateUserStatus updateUserStatus = (TdApi.UpdateUserStatus) object;
-                    TdApi.User user = users.get(updateUserStatus.userId);
-                    synchronized (user) {
-                        user.status = updateUserStatus.status;
-                    }
-                    break;
-                }
-                case TdApi.UpdateBasicGroup.CONSTRUCTOR:
-                    TdApi.UpdateBasicGroup updateBasicGroup = (TdApi.UpdateBasicGroup) object;
-                    basicGroups.put(updateBasicGroup.basicGroup.id, updateBasicGroup.basicGroup);
-                    break;
-                case TdApi.UpdateSupergroup.CONSTRUCTOR:
-                    TdApi.UpdateSupergroup updateSupergroup = (TdApi.UpdateSupergroup) object;
-                    supergroups.put(updateSupergroup.supergroup.id, updateSupergroup.supergroup);
-                    break;
-                case TdApi.UpdateSecretChat.CONSTRUCTOR:
-                    TdApi.UpdateSecretChat updateSecretChat = (TdApi.UpdateSecretChat) object;
-                    secretChats.put(updateSecretChat.secretChat.id, updateSecretChat.secretChat);
-                    break;
-
-                case TdApi.UpdateNewChat.CONSTRUCTOR: {
-                    TdApi.UpdateNewChat updateNewChat = (TdApi.UpdateNewChat) object;
-                    TdApi.Chat chat = updateNewChat.chat;
-                    synchronized (chat) {
-                        chats.put(chat.id, chat);
-
-                        TdApi.ChatPosition[] positions = chat.positions;
-                        chat.positions = new TdApi.ChatPosition[0];
-                        setChatPositions(chat, positions);
-                    }
-                    break;
-                }
-                case TdApi.UpdateChatTitle.CONSTRUCTOR: {
-                    TdApi.UpdateChatTitle updateChat = (TdApi.UpdateChatTitle) object;
-                    TdApi.Chat chat = chats.get(updateChat.chatId);
-                    synchronized (chat) {
-                        chat.title = updateChat.title;
-                    }
-                    break;
-                }
-                case TdApi.UpdateChatPhoto.CONSTRUCTOR: {
-                    TdApi.UpdateChatPhoto updateChat = (TdApi.UpdateChatPhoto) object;
-                    TdApi.Chat chat = chats.get(updateChat.chatId);
-                    synchronized (chat) {
-                        chat.photo = updateChat.photo;
-                    }
-                    break;
-                }
-                case TdApi.UpdateChatLastMessage.CONSTRUCTOR: {
-                    TdApi.UpdateChatLastMessage updateChat = (TdApi.UpdateChatLastMessage) object;
-                    TdApi.Chat chat = chats.get(updateChat.chatId);
-                    synchronized (chat) {
-                        chat.lastMessage = updateChat.lastMessage;
-                        setChatPositions(chat, updateChat.positions);
-                    }
-                    break;
-                }
-                case TdApi.UpdateChatPosition.CONSTRUCTOR: {
-                    TdApi.UpdateChatPosition updateChat = (TdApi.UpdateChatPosition) object;
-                    if (updateChat.position.list.getConstructor() != TdApi.ChatListMain.CONSTRUCTOR) {
-                      break;
-                    }
-
-                    TdApi.Chat chat = chats.get(updateChat.chatId);
-                    synchronized (chat) {
-                        int i;
-                        for (i = 0; i < chat.positions.length; i++) {
-                            if (chat.positions[i].list.getConstructor() == TdApi.ChatListMain.CONSTRUCTOR) {
-                                break;
-                            }
-                        }
-                        TdApi.ChatPosition[] new_positions = new TdApi.ChatPosition[chat.positions.length + (updateChat.position.order == 0 ? 0 : 1) - (i < chat.positions.length ? 1 : 0)];
-                        int pos = 0;
-                        if (updateChat.position.order != 0) {
-                          new_positions[pos++] = updateChat.position;
-                        }
-                        for (int j = 0; j < chat.positions.length; j++) {
-                            if (j != i) {
-                                new_positions[pos++] = chat.positions[j];
-                            }
-                        }
-                        assert pos == new_positions.length;
-
-                        setChatPositions(chat, new_positions);
-                    }
-                    break;
-                }
-                case TdApi.UpdateChatReadInbox.CONSTRUCTOR: {
-                    TdApi.UpdateChatReadInbox updateChat = (TdApi.UpdateChatReadInbox) object;
-                    TdApi.Chat chat = chats.get(updateChat.chatId);
-                    synchronized (chat) {
-                        chat.lastReadInboxMessageId = updateChat.lastReadInboxMessageId;
-                        chat.unreadCount = updateChat.unreadCount;
-                    }
-                    break;
-                }
-                case TdApi.UpdateChatReadOutbox.CONSTRUCTOR: {
-                    TdApi.UpdateChatReadOutbox updateChat = (TdApi.UpdateChatReadOutbox) object;
-                    TdApi.Chat chat = chats.get(updateChat.chatId);
-                    synchronized (chat) {
-                        chat.lastReadOutboxMessageId = updateChat.lastReadOutboxMessageId;
-                    }
-                    break;
-                }
-                case TdApi.UpdateChatUnreadMentionCount.CONSTRUCTOR: {
-                    TdApi.UpdateChatUnreadMentionCount updateChat = (TdApi.UpdateChatUnreadMentionCount) object;
-                    TdApi.Chat chat = chats.get(updateChat.chatId);
-                    synchronized (chat) {
-                        chat.unreadMentionCount = updateChat.unreadMentionCount;
-                    }
-                    break;
-                }
-                case TdApi.UpdateMessageMentionRead.CONSTRUCTOR: {
-                    TdApi.UpdateMessageMentionRead updateChat = (TdApi.UpdateMessageMentionRead) object;
-                    TdApi.Chat chat = chats.get(updateChat.chatId);
-                    synchronized (chat) {
-                        chat.unreadMentionCount = updateChat.unreadMentionCount;
-                    }
-                    break;
-                }
-                case TdApi.UpdateChatReplyMarkup.CONSTRUCTOR: {
-                    TdApi.UpdateChatReplyMarkup updateChat = (TdApi.UpdateChatReplyMarkup) object;
-                    TdApi.Chat chat = chats.get(updateChat.chatId);
-                    synchronized (chat) {
-                        chat.replyMarkupMessageId = updateChat.replyMarkupMessageId;
-                    }
-                    break;
-                }
-                case TdApi.UpdateChatDraftMessage.CONSTRUCTOR: {
-                    TdApi.UpdateChatDraftMessage updateChat = (TdApi.UpdateChatDraftMessage) object;
-                    TdApi.Chat chat = chats.get(updateChat.chatId);
-                    synchronized (chat) {
-                        chat.draftMessage = updateChat.draftMessage;
-                        setChatPositions(chat, updateChat.positions);
-                    }
-                    break;
-                }
-                case TdApi.UpdateChatPermissions.CONSTRUCTOR: {
-                    TdApi.UpdateChatPermissions update = (TdApi.UpdateChatPermissions) object;
-                    TdApi.Chat chat = chats.get(update.chatId);
-                    synchronized (chat) {
-                        chat.permissions = update.permissions;
-                    }
-                    break;
-                }
-                case TdApi.UpdateChatNotificationSettings.CONSTRUCTOR: {
-                    TdApi.UpdateChatNotificationSettings update = (TdApi.UpdateChatNotificationSettings) object;
-                    TdApi.Chat chat = chats.get(update.chatId);
-                    synchronized (chat) {
-                        chat.notificationSettings = update.notificationSettings;
-                    }
-                    break;
-                }
-                case TdApi.UpdateChatDefaultDisableNotification.CONSTRUCTOR: {
-                    TdApi.UpdateChatDefaultDisableNotification update = (TdApi.UpdateChatDefaultDisableNotification) object;
-                    TdApi.Chat chat = chats.get(update.chatId);
-                    synchronized (chat) {
-                        chat.defaultDisableNotification = update.defaultDisableNotification;
-                    }
-                    break;
-                }
-                case TdApi.UpdateChatIsMarkedAsUnread.CONSTRUCTOR: {
-                    TdApi.UpdateChatIsMarkedAsUnread update = (TdApi.UpdateChatIsMarkedAsUnread) object;
-                    TdApi.Chat chat = chats.get(update.chatId);
-                    synchronized (chat) {
-                        chat.isMarkedAsUnread = update.isMarkedAsUnread;
-                    }
-                    break;
-                }
-                case TdApi.UpdateChatIsBlocked.CONSTRUCTOR: {
-                    TdApi.UpdateChatIsBlocked update = (TdApi.UpdateChatIsBlocked) object;
-                    TdApi.Chat chat = chats.get(update.chatId);
-                    synchronized (chat) {
-                        chat.isBlocked = update.isBlocked;
-                    }
-                    break;
-                }
-                case TdApi.UpdateChatHasScheduledMessages.CONSTRUCTOR: {
-                    TdApi.UpdateChatHasScheduledMessages update = (TdApi.UpdateChatHasScheduledMessages) object;
-                    TdApi.Chat chat = chats.get(update.chatId);
-                    synchronized (chat) {
-                        chat.hasScheduledMessages = update.hasScheduledMessages;
-                    }
-                    break;
-                }
-
-                case TdApi.UpdateUserFullInfo.CONSTRUCTOR:
-                    TdApi.UpdateUserFullInfo updateUserFullInfo = (TdApi.UpdateUserFullInfo) object;
-                    usersFullInfo.put(updateUserFullInfo.userId, updateUserFullInfo.userFullInfo);
-                    break;
-                case TdApi.UpdateBasicGroupFullInfo.CONSTRUCTOR:
-                    TdApi.UpdateBasicGroupFullInfo updateBasicGroupFullInfo = (TdApi.UpdateBasicGroupFullInfo) object;
-                    basicGroupsFullInfo.put(updateBasicGroupFullInfo.basicGroupId, updateBasicGroupFullInfo.basicGroupFullInfo);
-                    break;
-                case TdApi.UpdateSupergroupFullInfo.CONSTRUCTOR:
-                    TdApi.UpdateSupergroupFullInfo updateSupergroupFullInfo = (TdApi.UpdateSupergroupFullInfo) object;
-                    supergroupsFullInfo.put(updateSupergroupFullInfo.supergroupId, updateSupergroupFullInfo.supergroupFullInfo);
-                    break;
                 default:
                     // print("Unsupported update:" + newLine + object);
             }
@@ -746,50 +527,149 @@ public final class Example {
     }
 
     public static class ReportMessageResolver {
+        private static final int DEFAULT_WINDOW_SIZE = 256;
+        private static final int CHECKPOINT_INTERVAL = 1000;
+        private static final long RESOLVE_TIMEOUT_SECONDS = 60;
 
         public static void resolveIds(Path path) {
-            try (
-                BufferedReader br = Files.newBufferedReader(path);
-                BufferedWriter bw = Files.newBufferedWriter(path.getParent().resolve("resolved_" + path.getFileName()))) {
+            resolveIds(path, DEFAULT_WINDOW_SIZE);
+        }
+
+        /**
+         * Resolves message links from the file and writes resolved records in the same order to the file
+         * "resolved_&lt;name&gt;" in the same directory. Lines are resolved simultaneously, up to windowSize lines at a time.
+         * Progress is saved to the file "resolved_&lt;name&gt;.checkpoint", so resolving of a partially resolved file
+         * continues from the last checkpoint. Links, which aren't resolved in RESOLVE_TIMEOUT_SECONDS seconds,
+         * are considered invalid, so a lost response doesn't stop resolving.
+         *
+         * @param path       Path to the file with unresolved records.
+         * @param windowSize Maximum number of lines being resolved simultaneously.
+         */
+        public static void resolveIds(Path path, int windowSize) {
+            Path resolvedPath = path.getParent().resolve("resolved_" + path.getFileName());
+            Path checkpointPath = path.getParent().resolve("resolved_" + path.getFileName() + ".checkpoint");
+            try {
+                ResolvedRecordWriter writer = ResolvedRecordWriter.open(resolvedPath, checkpointPath);
+                try (BufferedReader br = Files.newBufferedReader(path)) {
+                    // CSV file delimiter
+                    String DELIMITER = ";";
+
+                    // skip already resolved lines
+                    for (long i = 0; i < writer.lineCount; i++) {
+                        if (br.readLine() == null) {
+                            break;
+                        }
+                    }
 
-                // CSV file delimiter
-                String DELIMITER = ";";
+                    // read the file line by line, keeping resolving lines in the order they were read
+                    ArrayDeque<CompletableFuture<String>> resolvingLines = new ArrayDeque<>(windowSize);
+                    String line;
+                    while ((line = br.readLine()) != null) {
+                        // convert line into columns
+                        resolvingLines.add(resolve(UnresolvedRecord.from(line.split(DELIMITER))));
+                        while (!resolvingLines.isEmpty() && (resolvingLines.size() >= windowSize || resolvingLines.peek().isDone())) {
+                            writer.write(resolvingLines.poll().join());
+                        }
+                    }
+                    while (!resolvingLines.isEmpty()) {
+                        writer.write(resolvingLines.poll().join());
+                    }
+                } finally {
+                    writer.close();
+                }
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
 
-                // read the file line by line
-                String line;
-                boolean isFirstLine = true;
-                while ((line = br.readLine()) != null) {
-                    // convert line into columns
-                    UnresolvedRecord unresolvedRecord = UnresolvedRecord.from(line.split(DELIMITER));
-                    CountDownLatch latch = new CountDownLatch(unresolvedRecord.messageIds.size());
-                    LinkedBlockingQueue<Long> chatIds = new LinkedBlockingQueue<>(unresolvedRecord.messageIds.size());
-                    LinkedBlockingQueue<Long> messageIds = new LinkedBlockingQueue<>(unresolvedRecord.messageIds.size());
-                    for (String messageId : unresolvedRecord.messageIds) {
-                        client.send(
-                            new TdApi.GetMessageLinkInfo("https://t.me/" + unresolvedRecord.channelId + "/" + messageId),
-                            object -> {
-                                TdApi.MessageLinkInfo info = (TdApi.MessageLinkInfo) object;
-                                messageIds.add(info.message.id);
-                                chatIds.add(info.message.chatId);
-                                latch.countDown();
-                            },
-                            e -> latch.countDown());
+        private static CompletableFuture<String> resolve(UnresolvedRecord record) {
+            List<CompletableFuture<TdApi.MessageLinkInfo>> links = new ArrayList<>(record.messageIds.size());
+            for (String messageId : record.messageIds) {
+                links.add(client.sendAsync(new TdApi.GetMessageLinkInfo("https://t.me/" + record.channelId + "/" + messageId))
+                    .orTimeout(RESOLVE_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            }
+            return CompletableFuture.allOf(links.toArray(new CompletableFuture<?>[0])).handle((ignored, e) -> {
+                Long chatId = null;
+                List<Long> messageIds = new ArrayList<>(links.size());
+                for (CompletableFuture<TdApi.MessageLinkInfo> link : links) {
+                    if (link.isCompletedExceptionally()) {
+                        continue;
                     }
-                    latch.await();
-                    if (chatIds.isEmpty() || messageIds.isEmpty()) {
+                    TdApi.MessageLinkInfo info = link.join();
+                    if (info.message == null) {
                         continue;
                     }
+                    if (chatId == null) {
+                        chatId = info.message.chatId;
+                    }
+                    messageIds.add(info.message.id);
+                }
+                return chatId == null ? null : ResolvedRecord.from(record, chatId, messageIds).toString();
+            });
+        }
+
+        /**
+         * Writes resolved records and saves the number of processed input lines together with the size
+         * of the flushed output, so the output can be truncated to the checkpoint after a failure.
+         */
+        private static class ResolvedRecordWriter {
+            private final Path resolvedPath;
+            private final Path checkpointPath;
+            private final BufferedWriter bw;
+            private boolean isFirstLine;
+            private long lineCount;
+
+            private ResolvedRecordWriter(Path resolvedPath, Path checkpointPath, long lineCount, long resolvedSize) throws IOException {
+                this.resolvedPath = resolvedPath;
+                this.checkpointPath = checkpointPath;
+                this.lineCount = lineCount;
+                this.isFirstLine = resolvedSize == 0;
+                try (FileChannel channel = FileChannel.open(resolvedPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    // drop records written after the checkpoint
+                    channel.truncate(resolvedSize);
+                }
+                this.bw = Files.newBufferedWriter(resolvedPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+
+            static ResolvedRecordWriter open(Path resolvedPath, Path checkpointPath) throws IOException {
+                long lineCount = 0;
+                long resolvedSize = 0;
+                if (Files.exists(checkpointPath)) {
+                    String[] checkpoint = new String(Files.readAllBytes(checkpointPath), StandardCharsets.UTF_8).trim().split(";");
+                    lineCount = Long.parseLong(checkpoint[0]);
+                    resolvedSize = Long.parseLong(checkpoint[1]);
+                    print("Continue resolving from line " + (lineCount + 1));
+                }
+                return new ResolvedRecordWriter(resolvedPath, checkpointPath, lineCount, resolvedSize);
+            }
+
+            void write(String record) throws IOException {
+                if (record != null) {
                     if (!isFirstLine) {
                         bw.write("\n");
                     }
                     isFirstLine = false;
-                    bw.write(ResolvedRecord.from(unresolvedRecord, chatIds.poll(), messageIds).toString());
+                    bw.write(record);
+                }
+                lineCount++;
+                if (lineCount % CHECKPOINT_INTERVAL == 0) {
+                    saveCheckpoint();
                 }
+            }
+
+            private void saveCheckpoint() throws IOException {
                 bw.flush();
-            } catch (IOException ex) {
-                ex.printStackTrace();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+                Path newCheckpointPath = checkpointPath.resolveSibling(checkpointPath.getFileName() + ".new");
+                Files.write(newCheckpointPath, (lineCount + ";" + Files.size(resolvedPath)).getBytes(StandardCharsets.UTF_8));
+                Files.move(newCheckpointPath, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            void close() throws IOException {
+                try {
+                    saveCheckpoint();
+                } finally {
+                    bw.close();
+                }
             }
         }
     }
@@ -843,9 +723,27 @@ public final class Example {
             List<ResolvedRecord> records = readAllRecords(path);
             CountDownLatch latch = new CountDownLatch(records.size());
             print("\n\n[ACTION] Reporting message");
-            for (ResolvedRecord record : records) {
-                reportMessages(record, latch);
+            TdApi.Function<?>[] queries = new TdApi.Function<?>[records.size()];
+            Client.ResultHandler[] resultHandlers = new Client.ResultHandler[records.size()];
+            for (int i = 0; i < records.size(); i++) {
+                ResolvedRecord record = records.get(i);
+                queries[i] = new TdApi.ReportChat(
+                    record.channelId,
+                    record.messageIds.stream().mapToLong(Long::longValue).toArray(),
+                    toReason(record.reason),
+                    record.description
+                );
+                resultHandlers[i] = reportingResult -> {
+                    print(reportingResult.toString());
+                    print("[REPORTED] " + record.toString());
+                    latch.countDown();
+                };
             }
+            // reports, which are allowed by the rate limit, are passed to the TDLib in a single call
+            reportScheduler.sendBatch(queries, resultHandlers, e -> {
+                print("[ERROR] Fail to report " + e);
+                latch.countDown();
+            });
             try {
                 latch.await();
                 print("\n\n[ACTION] End of Reporting message");
@@ -872,25 +770,6 @@ public final class Example {
             return records;
         }
 
-        private static void reportMessages(ResolvedRecord record, CountDownLatch latch) {
-            client.send(
-                new TdApi.ReportChat(
-                    record.channelId,
-                    record.messageIds.stream().mapToLong(Long::longValue).toArray(),
-                    toReason(record.reason),
-                    record.description
-                ),
-                reportingResult -> {
-                    print(reportingResult.toString());
-                    print("[REPORTED] " + record.toString());
-                    latch.countDown();
-                },
-                e -> {
-                    print("[ERROR] Fail to report " + record.toString());
-                    latch.countDown();
-                });
-        }
-
         private static TdApi.ChatReportReason toReason(String reason) {
             switch (reason) {
                 case "unrelated":
@@ -951,10 +830,10 @@ public final class Example {
         }
 
         private static void reportChannel(UnresolvedChannelRecord record, CountDownLatch latch) {
-            client.send(new TdApi.SearchPublicChat(record.channelId),
+            reportScheduler.send(new TdApi.SearchPublicChat(record.channelId),
                 data -> {
                     TdApi.Chat chat = (TdApi.Chat) data;
-                    client.send(
+                    reportScheduler.send(
                         new TdApi.ReportChat(
                             chat.id,
                             new long[]{},
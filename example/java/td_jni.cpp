@@ -9,11 +9,20 @@
 #include <td/telegram/td_api.h>
 
 #include <td/tl/tl_jni_object.h>
+#include <td/tl/tl_object_store.h>
 
+#include <td/utils/tl_storers.h>
+
+#include <algorithm>
+#include <atomic>
 #include <cstdint>
 #include <cstdlib>
+#include <memory>
+#include <mutex>
 #include <string>
+#include <unordered_map>
 #include <utility>
+#include <vector>
 
 namespace td_jni {
 
@@ -39,6 +48,101 @@ static void Client_nativeClientSend(JNIEnv *env, jclass clazz, jint client_id, j
                       fetch_function(env, function));
 }
 
+static void Client_nativeClientSendBatch(JNIEnv *env, jclass clazz, jint client_id, jlong first_id,
+                                        jobjectArray functions, jintArray sent_count) {
+  auto *manager = get_manager();
+  jsize functions_size = env->GetArrayLength(functions);
+  jint sent = 0;
+  for (; sent < functions_size; sent++) {
+    jobject function = env->GetObjectArrayElement(functions, sent);
+    auto fetched_function = fetch_function(env, function);
+    env->DeleteLocalRef(function);
+    if (env->ExceptionCheck()) {
+      // the rest of the queries isn't sent; the exception is rethrown after the number of sent queries is stored
+      jthrowable exception = env->ExceptionOccurred();
+      env->ExceptionClear();
+      env->SetIntArrayRegion(sent_count, 0, 1, &sent);
+      env->Throw(exception);
+      env->DeleteLocalRef(exception);
+      return;
+    }
+    manager->send(static_cast<std::int32_t>(client_id), static_cast<std::uint64_t>(first_id + sent),
+                  std::move(fetched_function));
+  }
+  env->SetIntArrayRegion(sent_count, 0, 1, &sent);
+}
+
+using UpdateFilters = std::unordered_map<std::int32_t, std::vector<std::int32_t>>;  // sorted update constructors
+
+// filters are replaced as a whole, so readers can use a snapshot without locking
+static std::mutex update_filters_mutex;
+static std::shared_ptr<const UpdateFilters> update_filters;
+static std::atomic<std::uint64_t> update_filters_version{0};
+
+static void set_update_filter(std::int32_t client_id, std::vector<std::int32_t> *filter) {
+  std::lock_guard<std::mutex> lock(update_filters_mutex);
+  auto new_filters =
+      update_filters ? std::make_shared<UpdateFilters>(*update_filters) : std::make_shared<UpdateFilters>();
+  if (filter == nullptr) {
+    new_filters->erase(client_id);
+  } else {
+    (*new_filters)[client_id] = std::move(*filter);
+  }
+  update_filters = std::move(new_filters);
+  update_filters_version.fetch_add(1, std::memory_order_release);
+}
+
+static const UpdateFilters *get_update_filters() {
+  // the snapshot is reloaded only after the filters were changed, so clients without filters never lock
+  static thread_local std::shared_ptr<const UpdateFilters> filters;
+  static thread_local std::uint64_t filters_version = 0;
+  if (update_filters_version.load(std::memory_order_acquire) != filters_version) {
+    std::lock_guard<std::mutex> lock(update_filters_mutex);
+    filters = update_filters;
+    filters_version = update_filters_version.load(std::memory_order_relaxed);
+  }
+  return filters.get();
+}
+
+static void Client_nativeClientSetUpdateFilter(JNIEnv *env, jclass clazz, jint client_id,
+                                               jintArray update_constructors) {
+  if (update_constructors == nullptr) {
+    set_update_filter(static_cast<std::int32_t>(client_id), nullptr);
+    return;
+  }
+
+  std::vector<std::int32_t> filter;
+  jsize size = env->GetArrayLength(update_constructors);
+  filter.resize(static_cast<size_t>(size));
+  env->GetIntArrayRegion(update_constructors, 0, size, reinterpret_cast<jint *>(filter.data()));
+  filter.push_back(td::td_api::updateAuthorizationState::ID);
+  std::sort(filter.begin(), filter.end());
+  set_update_filter(static_cast<std::int32_t>(client_id), &filter);
+}
+
+static bool is_update_filtered_out(const td::ClientManager::Response &response) {
+  if (response.request_id != 0) {
+    return false;
+  }
+  const UpdateFilters *filters = get_update_filters();
+  if (filters == nullptr || filters->empty()) {
+    return false;
+  }
+  auto it = filters->find(response.client_id);
+  if (it == filters->end()) {
+    return false;
+  }
+  auto update_id = response.object->get_id();
+  if (update_id == td::td_api::updateAuthorizationState::ID &&
+      static_cast<const td::td_api::updateAuthorizationState &>(*response.object).authorization_state_->get_id() ==
+          td::td_api::authorizationStateClosed::ID) {
+    // there will be no more updates for the client
+    set_update_filter(response.client_id, nullptr);
+    return false;
+  }
+  return !std::binary_search(it->second.begin(), it->second.end(), update_id);
+}
+
 static jint Client_nativeClientReceive(JNIEnv *env, jclass clazz, jintArray client_ids, jlongArray ids,
                                        jobjectArray events, jdouble timeout) {
   jsize events_size = env->GetArrayLength(ids);  // client_ids, ids and events must be of equal size
@@ -50,6 +154,12 @@ static jint Client_nativeClientReceive(JNIEnv *env, jclass clazz, jintArray clie
   auto *manager = get_manager();
   auto response = manager->receive(timeout);
   while (response.object) {
+    if (is_update_filtered_out(response)) {
+      // the update isn't needed, so there is no need to convert it to a Java object
+      response = manager->receive(0);
+      continue;
+    }
+
     auto client_id = static_cast<jint>(response.client_id);
     env->SetIntArrayRegion(client_ids, result_size, 1, &client_id);
 
@@ -71,12 +181,84 @@ static jint Client_nativeClientReceive(JNIEnv *env, jclass clazz, jintArray clie
   return result_size;
 }
 
+// ClientManager::receive must not be called simultaneously from different threads, so there is a single receiver
+// thread, the TDLib thread of the Java Client; the response, which didn't fit in the buffer, is kept by the thread
+static thread_local td::ClientManager::Response pending_binary_response;
+
+static jint Client_nativeClientReceiveBinary(JNIEnv *env, jclass clazz, jintArray client_ids, jlongArray ids,
+                                             jobjectArray events, jobject buffer, jdouble timeout) {
+  jsize events_size = env->GetArrayLength(ids);  // client_ids, ids and events must be of equal size
+  if (events_size == 0) {
+    return 0;
+  }
+  auto *buffer_begin = static_cast<unsigned char *>(env->GetDirectBufferAddress(buffer));
+  auto buffer_size = static_cast<size_t>(env->GetDirectBufferCapacity(buffer));
+  size_t buffer_offset = 0;
+  std::vector<jint> result_client_ids;
+  std::vector<jlong> result_ids;
+
+  auto *manager = get_manager();
+  auto response = pending_binary_response.object ? std::move(pending_binary_response) : manager->receive(timeout);
+  while (response.object) {
+    if (is_update_filtered_out(response)) {
+      response = manager->receive(0);
+      continue;
+    }
+
+    td::TlStorerBounded storer(buffer_begin + buffer_offset, buffer_size - buffer_offset);
+    td::jni::TlStoreNullableBoxedObject::store(response.object, storer);
+    if (storer.is_overflowed()) {
+      if (buffer_offset != 0) {
+        // the response will be returned first next time
+        pending_binary_response = std::move(response);
+        break;
+      }
+
+      // the response can't fit in the buffer at all, so convert it to a Java object as usual
+      jobject object;
+      response.object->store(env, object);
+      env->SetObjectArrayElement(events, static_cast<jsize>(result_client_ids.size()), object);
+      env->DeleteLocalRef(object);
+    } else {
+      buffer_offset = static_cast<size_t>(storer.get_buf() - buffer_begin);
+    }
+
+    result_client_ids.push_back(static_cast<jint>(response.client_id));
+    result_ids.push_back(static_cast<jlong>(response.request_id));
+    if (static_cast<jsize>(result_ids.size()) == events_size) {
+      break;
+    }
+
+    response = manager->receive(0);
+  }
+
+  auto result_size = static_cast<jsize>(result_ids.size());
+  env->SetIntArrayRegion(client_ids, 0, result_size, result_client_ids.data());
+  env->SetLongArrayRegion(ids, 0, result_size, result_ids.data());
+  return result_size;
+}
+
 static jobject Client_nativeClientExecute(JNIEnv *env, jclass clazz, jobject function) {
   jobject result;
   td::ClientManager::execute(fetch_function(env, function))->store(env, result);
   return result;
 }
 
+static td::td_api::object_ptr<td::td_api::Object> get_lazy_object(jlong pointer) {
+  return td::td_api::object_ptr<td::td_api::Object>(
+      reinterpret_cast<td::td_api::Object *>(static_cast<std::uintptr_t>(pointer)));
+}
+
+static jobject LazyObject_nativeGet(JNIEnv *env, jclass clazz, jlong pointer) {
+  jobject result;
+  get_lazy_object(pointer)->store(env, result);
+  return result;
+}
+
+static void LazyObject_nativeRelease(JNIEnv *env, jclass clazz, jlong pointer) {
+  get_lazy_object(pointer).reset();
+}
+
 static void Log_setVerbosityLevel(JNIEnv *env, jclass clazz, jint new_log_verbosity_level) {
   td::Log::set_verbosity_level(static_cast<int>(new_log_verbosity_level));
 }
@@ -89,14 +271,6 @@ static void Log_setMaxFileSize(JNIEnv *env, jclass clazz, jlong max_file_size) {
   td::Log::set_max_file_size(max_file_size);
 }
 
-static jstring Object_toString(JNIEnv *env, jobject object) {
-  return td::jni::to_jstring(env, to_string(td::td_api::Object::fetch(env, object)));
-}
-
-static jstring Function_toString(JNIEnv *env, jobject object) {
-  return td::jni::to_jstring(env, to_string(td::td_api::Function::fetch(env, object)));
-}
-
 static constexpr jint JAVA_VERSION = JNI_VERSION_1_6;
 static JavaVM *java_vm;
 static jclass log_class;
@@ -134,23 +308,25 @@ static jint register_native(JavaVM *vm) {
 
   auto client_class = td::jni::get_jclass(env, PACKAGE_NAME "/Client");
   log_class = td::jni::get_jclass(env, PACKAGE_NAME "/Log");
-  auto object_class = td::jni::get_jclass(env, PACKAGE_NAME "/TdApi$Object");
-  auto function_class = td::jni::get_jclass(env, PACKAGE_NAME "/TdApi$Function");
+  auto lazy_object_class = td::jni::get_jclass(env, PACKAGE_NAME "/LazyObject");
 
 #define TD_OBJECT "L" PACKAGE_NAME "/TdApi$Object;"
 #define TD_FUNCTION "L" PACKAGE_NAME "/TdApi$Function;"
   register_method(client_class, "createNativeClient", "()I", Client_createNativeClient);
   register_method(client_class, "nativeClientSend", "(IJ" TD_FUNCTION ")V", Client_nativeClientSend);
+  register_method(client_class, "nativeClientSendBatch", "(IJ[" TD_FUNCTION "[I)V", Client_nativeClientSendBatch);
   register_method(client_class, "nativeClientReceive", "([I[J[" TD_OBJECT "D)I", Client_nativeClientReceive);
+  register_method(client_class, "nativeClientReceiveBinary", "([I[J[" TD_OBJECT "Ljava/nio/ByteBuffer;D)I",
+                  Client_nativeClientReceiveBinary);
   register_method(client_class, "nativeClientExecute", "(" TD_FUNCTION ")" TD_OBJECT, Client_nativeClientExecute);
+  register_method(client_class, "nativeClientSetUpdateFilter", "(I[I)V", Client_nativeClientSetUpdateFilter);
+
+  register_method(lazy_object_class, "nativeGet", "(J)" TD_OBJECT, LazyObject_nativeGet);
+  register_method(lazy_object_class, "nativeRelease", "(J)V", LazyObject_nativeRelease);
 
   register_method(log_class, "setVerbosityLevel", "(I)V", Log_setVerbosityLevel);
   register_method(log_class, "setFilePath", "(Ljava/lang/String;)Z", Log_setFilePath);
   register_method(log_class, "setMaxFileSize", "(J)V", Log_setMaxFileSize);
-
-  register_method(object_class, "toString", "()Ljava/lang/String;", Object_toString);
-
-  register_method(function_class, "toString", "()Ljava/lang/String;", Function_toString);
 #undef TD_FUNCTION
 #undef TD_OBJECT
 
@@ -0,0 +1,59 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Calls Client.call simultaneously from many virtual threads, each of which waits for the result of its own
+ * request, and fails if any call returns a wrong result or doesn't finish in time. The number of callers can be
+ * passed as the first argument, 100000 by default. Needs the TDLib JNI library and JDK 21 or newer.
+ */
+public final class ClientCallVirtualThreadStressTest {
+    private static final int DEFAULT_CALLER_COUNT = 100000;
+    private static final long CALL_TIMEOUT_SECONDS = 60;
+
+    private ClientCallVirtualThreadStressTest() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int callerCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CALLER_COUNT;
+
+        System.loadLibrary("tdjni");
+        Client.execute(new TdApi.SetLogVerbosityLevel(0));
+        Client client = Client.create(object -> {
+        }, null, null);
+
+        AtomicLong failedCallCount = new AtomicLong();
+        long startTime = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < callerCount; i++) {
+                int value = i % 46341; // the square must fit into int32
+                executor.execute(() -> {
+                    try {
+                        TdApi.TestInt result = client.call(new TdApi.TestSquareInt(value), CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                        if (result.value != value * value) {
+                            failedCallCount.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failedCallCount.incrementAndGet();
+                    }
+                });
+            }
+        } // waits for all callers
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        client.send(new TdApi.Close(), null);
+
+        if (failedCallCount.get() != 0) {
+            throw new AssertionError(failedCallCount.get() + " of " + callerCount + " calls failed");
+        }
+        System.out.println("ClientCallVirtualThreadStressTest passed: " + callerCount + " calls in " + elapsedMillis + " ms");
+    }
+}
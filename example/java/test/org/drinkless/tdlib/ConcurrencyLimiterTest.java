@@ -0,0 +1,182 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks limit adjustment, admission order and cancellation of requests of ConcurrencyLimiter.
+ */
+public final class ConcurrencyLimiterTest {
+    /**
+     * Request, which records the order in which requests were started.
+     */
+    private static final class Request implements Runnable {
+        private final String name;
+        private final List<String> startedRequests;
+
+        Request(String name, List<String> startedRequests) {
+            this.name = name;
+            this.startedRequests = startedRequests;
+        }
+
+        @Override
+        public void run() {
+            startedRequests.add(name);
+        }
+    }
+
+    private ConcurrencyLimiterTest() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        testAdditiveIncrease();
+        testMultiplicativeDecrease();
+        testSlowRequest();
+        testInteractiveFirst();
+        testBulkShare();
+        testCancel();
+        System.out.println("ConcurrencyLimiterTest passed");
+    }
+
+    private static void testAdditiveIncrease() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new Client.ConcurrencyLimitParameters(2, 1, 3, 10000, 0.5, 0.0));
+        check(limiter.tryAcquire(false) && limiter.tryAcquire(true), "requests under the limit must be admitted");
+        check(!limiter.tryAcquire(false) && !limiter.tryAcquire(true), "requests over the limit must not be admitted");
+
+        // each successful request, which finishes while the limit is reached, increases the limit by 1 / limit
+        limiter.release(System.nanoTime(), false); // 2.5
+        check(limiter.getLimit() == 2, "limit was increased too fast");
+        check(limiter.tryAcquire(false), "released slot must be reused");
+        limiter.release(System.nanoTime(), false); // 2.9
+        check(limiter.getLimit() == 2, "limit was increased too fast");
+        check(limiter.tryAcquire(false), "released slot must be reused");
+        limiter.release(System.nanoTime(), false); // 3.24
+        check(limiter.getLimit() == 3, "limit wasn't increased");
+        check(limiter.getInFlightCount() == 1, "wrong number of requests in flight");
+
+        // the limit isn't increased while it isn't reached
+        limiter.release(System.nanoTime(), false);
+        check(limiter.getLimit() == 3 && limiter.getInFlightCount() == 0, "limit must not grow while it isn't reached");
+
+        // the limit never exceeds the maximum
+        for (int i = 0; i < 100; i++) {
+            while (limiter.tryAcquire(false)) {
+            }
+            limiter.release(System.nanoTime(), false);
+        }
+        check(limiter.getLimit() == 3, "limit exceeded the maximum");
+    }
+
+    private static void testMultiplicativeDecrease() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new Client.ConcurrencyLimitParameters(8, 3, 16, 10000, 0.5, 0.0));
+        long firstStartTime = System.nanoTime();
+        for (int i = 0; i < 8; i++) {
+            check(limiter.tryAcquire(false), "requests under the limit must be admitted");
+        }
+
+        limiter.release(firstStartTime, true);
+        check(limiter.getLimit() == 4, "limit wasn't decreased on overload");
+
+        // requests sent before the decrease must not decrease the limit again
+        limiter.release(firstStartTime, true);
+        limiter.release(firstStartTime, true);
+        check(limiter.getLimit() == 4, "limit was decreased more than once for the same requests");
+
+        limiter.release(firstStartTime, false);
+        limiter.release(firstStartTime, false);
+        limiter.release(firstStartTime, false);
+        limiter.release(firstStartTime, false);
+        limiter.release(firstStartTime, false);
+        check(limiter.getInFlightCount() == 0, "wrong number of requests in flight");
+
+        // the limit never falls below the minimum
+        for (int i = 0; i < 10; i++) {
+            long startTime = System.nanoTime();
+            check(limiter.tryAcquire(false), "requests under the limit must be admitted");
+            limiter.release(startTime, true);
+        }
+        check(limiter.getLimit() == 3, "limit fell below the minimum");
+    }
+
+    private static void testSlowRequest() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new Client.ConcurrencyLimitParameters(8, 1, 16, 1, 0.5, 0.0));
+        long startTime = System.nanoTime();
+        check(limiter.tryAcquire(false), "requests under the limit must be admitted");
+        Thread.sleep(20);
+        limiter.release(startTime, false);
+        check(limiter.getLimit() == 4, "limit wasn't decreased after a slow request");
+    }
+
+    private static void testInteractiveFirst() {
+        List<String> startedRequests = new ArrayList<String>();
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new Client.ConcurrencyLimitParameters(1, 1, 1, 10000, 0.5, 0.0));
+        check(limiter.tryAcquire(true), "requests under the limit must be admitted");
+        limiter.enqueue(new Request("b1", startedRequests), true);
+        limiter.enqueue(new Request("i1", startedRequests), false);
+        limiter.enqueue(new Request("b2", startedRequests), true);
+        limiter.enqueue(new Request("i2", startedRequests), false);
+        check(startedRequests.isEmpty() && limiter.getQueueLength() == 4, "requests over the limit must wait");
+
+        for (int i = 0; i < 4; i++) {
+            limiter.release(System.nanoTime(), false);
+        }
+        check(startedRequests.toString().equals("[i1, i2, b1, b2]"), "interactive requests must be admitted first: " + startedRequests);
+        check(limiter.getInFlightCount() == 1 && limiter.getQueueLength() == 0, "wrong number of requests");
+
+        // a slot, which was released after tryAcquire failed, must be used by the enqueued request
+        limiter.release(System.nanoTime(), false);
+        limiter.enqueue(new Request("i3", startedRequests), false);
+        check(startedRequests.size() == 5 && limiter.getInFlightCount() == 1, "request wasn't started on a free slot");
+    }
+
+    private static void testBulkShare() {
+        List<String> startedRequests = new ArrayList<String>();
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new Client.ConcurrencyLimitParameters(1, 1, 1, 10000, 0.5, 0.5));
+        check(limiter.tryAcquire(false), "requests under the limit must be admitted");
+        for (int i = 1; i <= 4; i++) {
+            limiter.enqueue(new Request("i" + i, startedRequests), false);
+        }
+        for (int i = 1; i <= 3; i++) {
+            limiter.enqueue(new Request("b" + i, startedRequests), true);
+        }
+
+        for (int i = 0; i < 7; i++) {
+            limiter.release(System.nanoTime(), false);
+        }
+        // while both queues are non-empty, every second admission belongs to a bulk request
+        check(startedRequests.toString().equals("[i1, b1, i2, b2, i3, b3, i4]"), "bulk share wasn't guaranteed: " + startedRequests);
+    }
+
+    private static void testCancel() {
+        List<String> startedRequests = new ArrayList<String>();
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new Client.ConcurrencyLimitParameters(1, 1, 1, 10000, 0.5, 0.0));
+        check(limiter.tryAcquire(false), "requests under the limit must be admitted");
+        Request interactive = new Request("i", startedRequests);
+        Request bulk = new Request("b", startedRequests);
+        Request last = new Request("l", startedRequests);
+        limiter.enqueue(interactive, false);
+        limiter.enqueue(bulk, true);
+        limiter.enqueue(last, true);
+
+        check(limiter.cancel(interactive) && limiter.cancel(bulk), "waiting requests must be cancelled");
+        check(!limiter.cancel(bulk), "request must be cancelled only once");
+        check(limiter.getQueueLength() == 1, "cancelled requests weren't removed from the queue");
+
+        limiter.release(System.nanoTime(), false);
+        check(startedRequests.toString().equals("[l]"), "cancelled requests must never be started: " + startedRequests);
+        check(!limiter.cancel(last), "started request must not be cancelled");
+        check(limiter.getInFlightCount() == 1, "cancelled requests must not occupy slots");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks handling of "Too Many Requests" errors by FloodWaitScheduler against a fake TDLib backend.
+ */
+public final class FloodWaitSchedulerTest {
+    private static final class SentQuery {
+        final TdApi.GetChat query;
+        final Client.ResultHandler resultHandler;
+        final long sendTime;
+
+        SentQuery(TdApi.GetChat query, Client.ResultHandler resultHandler) {
+            this.query = query;
+            this.resultHandler = resultHandler;
+            this.sendTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Fake backend, which only records sent queries, so that the test can answer them in any order.
+     */
+    private static final class FakeSender implements QuerySender {
+        final BlockingQueue<SentQuery> sentQueries = new ArrayBlockingQueue<SentQuery>(100);
+        final BlockingQueue<Integer> batchSizes = new ArrayBlockingQueue<Integer>(100);
+
+        @Override
+        public void send(TdApi.Function<?> query, Client.ResultHandler resultHandler, Client.ExceptionHandler exceptionHandler) {
+            sentQueries.add(new SentQuery((TdApi.GetChat) query, resultHandler));
+        }
+
+        @Override
+        public void sendBatch(TdApi.Function<?>[] queries, Client.ResultHandler[] resultHandlers, Client.ExceptionHandler exceptionHandler) {
+            batchSizes.add(queries.length);
+            QuerySender.super.sendBatch(queries, resultHandlers, exceptionHandler);
+        }
+
+        SentQuery next() throws InterruptedException {
+            SentQuery sentQuery = sentQueries.poll(10, TimeUnit.SECONDS);
+            check(sentQuery != null, "query wasn't sent");
+            return sentQuery;
+        }
+    }
+
+    private FloodWaitSchedulerTest() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        testRetryOrderAndDelay();
+        testMaxRetryCount();
+        testBatch();
+        System.out.println("FloodWaitSchedulerTest passed");
+    }
+
+    private static void testRetryOrderAndDelay() throws InterruptedException {
+        FakeSender sender = new FakeSender();
+        FloodWaitScheduler scheduler = new FloodWaitScheduler(sender);
+        try {
+            SentQuery[] sent = new SentQuery[3];
+            for (int i = 0; i < 3; i++) {
+                scheduler.send(new TdApi.GetChat(i), null, null);
+                sent[i] = sender.next();
+                check(sent[i].query.chatId == i, "wrong order of sent queries");
+            }
+
+            // the requests fail in an order different from the order in which they were sent
+            sent[2].resultHandler.onResult(tooManyRequests(1));
+            sent[0].resultHandler.onResult(tooManyRequests(1));
+            long lastErrorTime = System.nanoTime();
+            sent[1].resultHandler.onResult(tooManyRequests(1));
+            scheduler.send(new TdApi.GetChat(3), null, null);
+            check(scheduler.getWaitingRequestCount() == 4, "wrong number of waiting requests");
+
+            for (int i = 0; i < 4; i++) {
+                SentQuery retried = sender.next();
+                check(retried.query.chatId == i, "retried queries must be sent in the original order");
+                check(retried.sendTime - lastErrorTime >= TimeUnit.SECONDS.toNanos(1), "retried query was sent too early");
+            }
+            check(scheduler.getRetriedRequestCount() == 3, "wrong number of retried requests");
+            check(scheduler.getWaitingRequestCount() == 0, "wrong number of waiting requests");
+        } finally {
+            scheduler.close();
+        }
+    }
+
+    private static void testMaxRetryCount() throws InterruptedException {
+        FakeSender sender = new FakeSender();
+        FloodWaitScheduler scheduler = new FloodWaitScheduler(sender);
+        try {
+            scheduler.setMaxRetryCount(2);
+            BlockingQueue<TdApi.Object> results = new ArrayBlockingQueue<TdApi.Object>(10);
+            scheduler.send(new TdApi.GetChat(1), results::add, null);
+            for (int i = 0; i <= 2; i++) {
+                sender.next().resultHandler.onResult(tooManyRequests(0));
+            }
+            TdApi.Object result = results.poll(10, TimeUnit.SECONDS);
+            check(result instanceof TdApi.Error && ((TdApi.Error) result).code == 429,
+                  "error must be passed to the handler after the last retry");
+            check(sender.sentQueries.isEmpty(), "query must not be sent after the last retry");
+            check(scheduler.getRetriedRequestCount() == 2, "wrong number of retried requests");
+        } finally {
+            scheduler.close();
+        }
+    }
+
+    private static void testBatch() throws InterruptedException {
+        FakeSender sender = new FakeSender();
+        FloodWaitScheduler scheduler = new FloodWaitScheduler(sender);
+        try {
+            scheduler.setRateLimit(TdApi.GetChat.CONSTRUCTOR, 1.0, 3);
+            TdApi.Function<?>[] queries = new TdApi.Function<?>[5];
+            Client.ResultHandler[] resultHandlers = new Client.ResultHandler[queries.length];
+            BlockingQueue<Throwable> exceptions = new ArrayBlockingQueue<Throwable>(10);
+            for (int i = 0; i < queries.length; i++) {
+                queries[i] = new TdApi.GetChat(i);
+                resultHandlers[i] = result -> {
+                    throw new IllegalStateException("handler failed");
+                };
+            }
+            scheduler.sendBatch(queries, resultHandlers, exceptions::add);
+
+            // requests allowed by the rate limit are sent at once, others wait for tokens
+            Integer batchSize = sender.batchSizes.poll(10, TimeUnit.SECONDS);
+            check(batchSize != null && batchSize == 3, "ready requests must be sent in one batch");
+            check(scheduler.getWaitingRequestCount() == 2, "wrong number of waiting requests");
+            for (int i = 0; i < 3; i++) {
+                SentQuery sent = sender.next();
+                check(sent.query.chatId == i, "wrong order of sent queries");
+                sent.resultHandler.onResult(new TdApi.Ok());
+                check(exceptions.poll() instanceof IllegalStateException, "exception handler must be called");
+            }
+            for (int i = 3; i < 5; i++) {
+                check(sender.next().query.chatId == i, "wrong order of delayed queries");
+            }
+        } finally {
+            scheduler.close();
+        }
+    }
+
+    private static TdApi.Error tooManyRequests(int retryAfter) {
+        return new TdApi.Error(429, "Too Many Requests: retry after " + retryAfter);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks LongObjectMap against HashMap while keys are removed, added again and the table is rebuilt.
+ */
+public final class LongObjectMapTest {
+    private LongObjectMapTest() {
+    }
+
+    public static void main(String[] args) {
+        testStableSize();
+        testRandomOperations();
+        System.out.println("LongObjectMapTest passed");
+    }
+
+    // the map keeps the same number of entries, but new keys are added all the time, so the table is rebuilt
+    private static void testStableSize() {
+        LongObjectMap<Long> map = new LongObjectMap<Long>();
+        int size = 64;
+        for (long key = 1; key <= size; key++) {
+            check(map.put(key, key) == null, "new key must not have a value");
+        }
+        for (long key = size + 1; key <= 100000; key++) {
+            long oldKey = key - size;
+            check(Long.valueOf(oldKey).equals(map.remove(oldKey)), "wrong removed value");
+            check(map.put(key, key) == null, "new key must not have a value");
+            check(map.size() == size, "wrong size");
+            if (key % 1000 == 0) {
+                // a removed key is added again
+                check(map.put(oldKey, -oldKey) == null, "removed key must not have a value");
+                check(Long.valueOf(-oldKey).equals(map.get(oldKey)), "wrong value of a key, which was added again");
+                check(Long.valueOf(-oldKey).equals(map.remove(oldKey)), "wrong removed value");
+            }
+        }
+        for (long key = 100000 - size + 1; key <= 100000; key++) {
+            check(Long.valueOf(key).equals(map.get(key)), "wrong value after rebuilds");
+        }
+        check(map.get(1) == null, "removed key must not have a value");
+    }
+
+    private static void testRandomOperations() {
+        LongObjectMap<Long> map = new LongObjectMap<Long>();
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        Random random = new Random(123);
+        for (int i = 0; i < 200000; i++) {
+            long key = random.nextInt(1000) - 10;  // includes the zero key
+            if (random.nextInt(3) == 0) {
+                check(equals(expected.remove(key), map.remove(key)), "wrong removed value");
+            } else {
+                long value = random.nextLong();
+                check(equals(expected.put(key, value), map.put(key, value)), "wrong previous value");
+            }
+            check(expected.size() == map.size(), "wrong size");
+        }
+        for (long key = -10; key < 1000; key++) {
+            check(equals(expected.get(key), map.get(key)), "wrong value");
+        }
+        final Map<Long, Long> visited = new HashMap<Long, Long>();
+        map.forEach(new LongObjectMap.Visitor<Long>() {
+            @Override
+            public void visit(long key, Long value) {
+                check(visited.put(key, value) == null, "key is visited twice");
+            }
+        });
+        check(expected.equals(visited), "wrong visited entries");
+    }
+
+    private static boolean equals(Long a, Long b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+/**
+ * Checks wraparound of slots and the fallback map of PendingRequestTable.
+ */
+public final class PendingRequestTableTest {
+    private static final int CAPACITY = 16;
+
+    private PendingRequestTableTest() {
+    }
+
+    public static void main(String[] args) {
+        testWraparound();
+        testOverflow();
+        System.out.println("PendingRequestTableTest passed");
+    }
+
+    private static void testWraparound() {
+        PendingRequestTable<Long> table = new PendingRequestTable<Long>(CAPACITY);
+        // every slot is reused many times
+        for (long id = 1; id <= 10 * CAPACITY; id++) {
+            table.put(id, id);
+            if (id > CAPACITY / 2) {
+                long oldId = id - CAPACITY / 2;
+                check(Long.valueOf(oldId).equals(table.remove(oldId)), "wrong value of a reused slot");
+            }
+            check(table.remove(id + CAPACITY) == null, "value of a request, which wasn't sent, must be absent");
+        }
+        check(table.size() == CAPACITY / 2, "wrong size after wraparound");
+        check(table.remove(1) == null, "removed value must not be returned twice");
+    }
+
+    private static void testOverflow() {
+        PendingRequestTable<Long> table = new PendingRequestTable<Long>(CAPACITY);
+        int count = 5 * CAPACITY;
+        for (long id = 1; id <= count; id++) {
+            table.put(id, id);
+        }
+        check(table.size() == count, "wrong size with overflowed requests");
+
+        // results are received out of order
+        for (long id = count; id >= 1; id -= 2) {
+            check(Long.valueOf(id).equals(table.remove(id)), "wrong value of an overflowed request");
+        }
+        check(table.size() == count / 2, "wrong size after removal of half of requests");
+
+        // new requests can use the released slots while older requests are still pending
+        for (long id = count + 1; id <= count + CAPACITY; id++) {
+            table.put(id, id);
+        }
+        for (long id = 1; id <= count + CAPACITY; id++) {
+            boolean isPending = id > count || id % 2 == 1;
+            Long value = table.remove(id);
+            check(isPending ? Long.valueOf(id).equals(value) : value == null, "wrong value after overflow");
+        }
+        check(table.size() == 0, "table must be empty");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
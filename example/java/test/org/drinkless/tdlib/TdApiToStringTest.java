@@ -0,0 +1,44 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+/**
+ * Checks that doubles are converted to strings by TdApi.Object.toString exactly as by the native "%.6f" format.
+ */
+public final class TdApiToStringTest {
+    // expected values are printed by glibc printf("%.6f"), which rounds the exact binary value half to even
+    private static final double[] VALUES = {
+        0.0, -0.0, 0.0000005, 0.0000015, 0.0000025, -0.0000005, 0.9999995, 1e-300, 4.9e-324, 123456789.0000005, 2.5,
+        0.1, 0.0078125, 0.0234375, -0.0234375, 9007199254740993.0, 9223372036854775807.0, 1e22,
+        -Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY
+    };
+    private static final String[] EXPECTED = {
+        "0.000000", "-0.000000", "0.000000", "0.000002", "0.000003", "-0.000000", "1.000000", "0.000000", "0.000000",
+        "123456789.000001", "2.500000", "0.100000", "0.007812", "0.023438", "-0.023438", "9007199254740992.000000",
+        "9223372036854775808.000000", "10000000000000000000000.000000",
+        "-1797693134862315708145274237317043567980705675258449965989174768031572607800285387605895586327668781715"
+            + "40458953514382464234321326889464182768467546703537516986049910576551282076245490090389328944075868508"
+            + "455133942304583236903222948165808559332123348274797826204144723168738177180919299881250404026184124858"
+            + "368.000000",
+        "nan", "inf", "-inf"
+    };
+
+    private TdApiToStringTest() {
+    }
+
+    public static void main(String[] args) {
+        for (int i = 0; i < VALUES.length; i++) {
+            String expected = "Location {\n  latitude = " + EXPECTED[i] +
+                "\n  longitude = 0.000000\n  horizontalAccuracy = 0.000000\n}\n";
+            String result = new TdApi.Location(VALUES[i], 0.0, 0.0).toString();
+            if (!expected.equals(result)) {
+                throw new AssertionError("wrong string for " + VALUES[i] + ": " + result);
+            }
+        }
+        System.out.println("TdApiToStringTest passed");
+    }
+}
@@ -0,0 +1,278 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks demand accounting, buffer overflow handling, cancellation and serialization of signals of UpdatePublisher.
+ */
+public final class UpdatePublisherTest {
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Subscriber, which records received signals. Must be used only with DIRECT_EXECUTOR.
+     */
+    private static class RecordingSubscriber implements Flow.Subscriber<TdApi.Update> {
+        Flow.Subscription subscription;
+        final List<TdApi.Update> updates = new ArrayList<TdApi.Update>();
+        Throwable error;
+        boolean isCompleted;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            check(this.subscription == null, "onSubscribe must be called once");
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(TdApi.Update update) {
+            check(error == null && !isCompleted, "onNext after a terminal signal");
+            updates.add(update);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            check(this.error == null && !isCompleted, "second terminal signal");
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+            check(error == null && !isCompleted, "second terminal signal");
+            isCompleted = true;
+        }
+    }
+
+    private UpdatePublisherTest() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        testDemand();
+        testFilter();
+        testSupersede();
+        testOverflowError();
+        testCancel();
+        testComplete();
+        testSerialization();
+        System.out.println("UpdatePublisherTest passed");
+    }
+
+    private static void testDemand() {
+        UpdatePublisher publisher = new UpdatePublisher(1);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.getPublisher(DIRECT_EXECUTOR, 100, null).subscribe(subscriber);
+        check(subscriber.subscription != null, "onSubscribe wasn't called");
+
+        for (int i = 0; i < 5; i++) {
+            publisher.publish(new TdApi.UpdateOption("option" + i, null));
+        }
+        check(subscriber.updates.isEmpty(), "updates must not be sent without demand");
+
+        subscriber.subscription.request(2);
+        check(subscriber.updates.size() == 2, "wrong number of updates sent for the demand");
+        subscriber.subscription.request(1);
+        check(subscriber.updates.size() == 3, "wrong number of updates sent for the demand");
+
+        // the demand must saturate instead of overflowing
+        subscriber.subscription.request(Long.MAX_VALUE);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        check(subscriber.updates.size() == 5, "buffered updates weren't sent");
+        for (int i = 5; i < 10; i++) {
+            publisher.publish(new TdApi.UpdateOption("option" + i, null));
+        }
+        check(subscriber.updates.size() == 10, "unbounded demand must not be exhausted");
+        for (int i = 0; i < 10; i++) {
+            check(((TdApi.UpdateOption) subscriber.updates.get(i)).name.equals("option" + i), "wrong order of updates");
+        }
+        check(subscriber.error == null, "unexpected onError");
+
+        subscriber.subscription.request(0);
+        check(subscriber.error instanceof IllegalArgumentException, "non-positive demand must be signalled with onError");
+        check(!publisher.hasSubscribers(), "failed subscription wasn't removed");
+    }
+
+    private static void testFilter() {
+        UpdatePublisher publisher = new UpdatePublisher(1);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.getPublisher(DIRECT_EXECUTOR, 100, new int[] {TdApi.UpdateUserStatus.CONSTRUCTOR}).subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        publisher.publish(new TdApi.UpdateOption("option", null));
+        publisher.publish(userStatus(1, 1));
+        publisher.publish(new TdApi.UpdateChatOnlineMemberCount(1, 1));
+        check(subscriber.updates.size() == 1 && subscriber.updates.get(0) instanceof TdApi.UpdateUserStatus, "updates weren't filtered");
+    }
+
+    private static void testSupersede() {
+        UpdatePublisher publisher = new UpdatePublisher(1);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.getPublisher(DIRECT_EXECUTOR, 2, null).subscribe(subscriber);
+
+        publisher.publish(userStatus(1, 1));
+        publisher.publish(userStatus(2, 2));
+        // the buffer is full; the status of the user 1 is superseded by the new status
+        publisher.publish(userStatus(1, 3));
+        check(subscriber.error == null, "superseded update must be removed instead of failing the subscription");
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        check(subscriber.updates.size() == 2, "wrong number of updates after superseding");
+        checkUserStatus(subscriber.updates.get(0), 2, 2);
+        checkUserStatus(subscriber.updates.get(1), 1, 3);
+        check(publisher.hasSubscribers(), "subscription must stay active");
+    }
+
+    private static void testOverflowError() {
+        UpdatePublisher publisher = new UpdatePublisher(1);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.getPublisher(DIRECT_EXECUTOR, 2, null).subscribe(subscriber);
+
+        publisher.publish(userStatus(1, 1));
+        publisher.publish(userStatus(2, 2));
+        // neither buffered update can be superseded by the new update
+        publisher.publish(userStatus(3, 3));
+        check(subscriber.error instanceof IllegalStateException, "buffer overflow must be signalled with onError");
+        check(!publisher.hasSubscribers(), "failed subscription wasn't removed");
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        publisher.publish(userStatus(4, 4));
+        check(subscriber.updates.isEmpty(), "updates must not be sent after onError");
+    }
+
+    private static void testCancel() {
+        UpdatePublisher publisher = new UpdatePublisher(1);
+        RecordingSubscriber subscriber = new RecordingSubscriber() {
+            @Override
+            public void onNext(TdApi.Update update) {
+                super.onNext(update);
+                if (updates.size() == 2) {
+                    subscription.cancel();
+                }
+            }
+        };
+        publisher.getPublisher(DIRECT_EXECUTOR, 100, null).subscribe(subscriber);
+        for (int i = 0; i < 5; i++) {
+            publisher.publish(new TdApi.UpdateOption("option" + i, null));
+        }
+        subscriber.subscription.request(Long.MAX_VALUE);
+        check(subscriber.updates.size() == 2, "updates must not be sent after cancel");
+        check(!publisher.hasSubscribers(), "cancelled subscription wasn't removed");
+
+        publisher.publish(new TdApi.UpdateOption("option", null));
+        publisher.close();
+        check(subscriber.updates.size() == 2, "updates must not be sent after cancel");
+        check(subscriber.error == null && !subscriber.isCompleted, "terminal signals must not be sent after cancel");
+    }
+
+    private static void testComplete() {
+        UpdatePublisher publisher = new UpdatePublisher(1);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.getPublisher(DIRECT_EXECUTOR, 100, null).subscribe(subscriber);
+        publisher.publish(new TdApi.UpdateOption("option", null));
+        publisher.close();
+        check(!subscriber.isCompleted, "onComplete must be sent after buffered updates");
+        subscriber.subscription.request(1);
+        check(subscriber.updates.size() == 1 && subscriber.isCompleted, "onComplete wasn't sent after buffered updates");
+
+        RecordingSubscriber lateSubscriber = new RecordingSubscriber();
+        publisher.getPublisher(DIRECT_EXECUTOR, 100, null).subscribe(lateSubscriber);
+        check(lateSubscriber.subscription != null && lateSubscriber.isCompleted, "subscriber of a closed publisher must be completed");
+    }
+
+    private static void testSerialization() throws InterruptedException {
+        final int updateCount = 100000;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            UpdatePublisher publisher = new UpdatePublisher(1);
+            final AtomicInteger activeSignalCount = new AtomicInteger();
+            final AtomicInteger nextChatId = new AtomicInteger();
+            final AtomicInteger violationCount = new AtomicInteger();
+            final CountDownLatch isDone = new CountDownLatch(1);
+            publisher.getPublisher(executor, updateCount, null).subscribe(new Flow.Subscriber<TdApi.Update>() {
+                private Flow.Subscription subscription; // visible to onNext only if signals are serialized
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    enter();
+                    this.subscription = subscription;
+                    subscription.request(1);
+                    exit();
+                }
+
+                @Override
+                public void onNext(TdApi.Update update) {
+                    enter();
+                    if (((TdApi.UpdateChatOnlineMemberCount) update).chatId != nextChatId.getAndIncrement()) {
+                        violationCount.incrementAndGet();
+                    }
+                    if (nextChatId.get() == updateCount) {
+                        isDone.countDown();
+                    }
+                    subscription.request(1);
+                    exit();
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    violationCount.incrementAndGet();
+                    isDone.countDown();
+                }
+
+                @Override
+                public void onComplete() {
+                }
+
+                private void enter() {
+                    if (activeSignalCount.incrementAndGet() != 1) {
+                        violationCount.incrementAndGet();
+                    }
+                }
+
+                private void exit() {
+                    activeSignalCount.decrementAndGet();
+                }
+            });
+
+            // each request from the subscriber competes with publishing of new updates
+            for (int i = 0; i < updateCount; i++) {
+                publisher.publish(new TdApi.UpdateChatOnlineMemberCount(i, 0));
+            }
+            check(isDone.await(30, TimeUnit.SECONDS), "not all updates were received");
+            check(violationCount.get() == 0, "signals to the subscriber weren't serialized or ordered");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static TdApi.UpdateUserStatus userStatus(long userId, int expires) {
+        return new TdApi.UpdateUserStatus(userId, new TdApi.UserStatusOnline(expires));
+    }
+
+    private static void checkUserStatus(TdApi.Update update, long userId, int expires) {
+        TdApi.UpdateUserStatus updateUserStatus = (TdApi.UpdateUserStatus) update;
+        check(updateUserStatus.userId == userId && ((TdApi.UserStatusOnline) updateUserStatus.status).expires == expires, "wrong update");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
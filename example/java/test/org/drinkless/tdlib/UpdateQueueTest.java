@@ -0,0 +1,161 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+package org.drinkless.tdlib;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks scheduling, overflow policies and opt-in coalescing of updates of UpdateQueue and UpdateKey.
+ */
+public final class UpdateQueueTest {
+    private UpdateQueueTest() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        testUpdateKey();
+        testScheduling();
+        testQueryResults();
+        testDropPolicy();
+        testCoalescePolicy();
+        testBlockPolicy();
+        testCoalesceUpdates();
+        System.out.println("UpdateQueueTest passed");
+    }
+
+    private static void testUpdateKey() {
+        check(UpdateKey.of(1, userStatus(1, 1)).equals(UpdateKey.of(1, userStatus(1, 2))), "keys of updates of the same user must be equal");
+        check(UpdateKey.of(1, userStatus(1, 1)).hashCode() == UpdateKey.of(1, userStatus(1, 2)).hashCode(), "equal keys must have equal hash codes");
+        check(!UpdateKey.of(1, userStatus(1, 1)).equals(UpdateKey.of(1, userStatus(2, 1))), "keys of updates of different users must differ");
+        check(!UpdateKey.of(1, userStatus(1, 1)).equals(UpdateKey.of(2, userStatus(1, 1))), "keys of updates of different clients must differ");
+        check(!UpdateKey.of(1, new TdApi.UpdateChatReadInbox(1, 0, 0)).equals(UpdateKey.of(1, new TdApi.UpdateChatReadOutbox(1, 0))), "keys of updates of different types must differ");
+        check(UpdateKey.of(1, new TdApi.UpdateOption("option", null)) == null, "update can't be superseded");
+    }
+
+    private static void testScheduling() {
+        UpdateQueue queue = new UpdateQueue(new Client.UpdateQueueParameters(10, Client.UpdateQueueOverflowPolicy.BLOCK, null));
+        check(queue.put(0, userStatus(1, 1)), "non-scheduled queue must be scheduled");
+        check(!queue.put(0, userStatus(2, 1)), "scheduled queue must not be scheduled again");
+        check(queue.poll() != null && queue.poll() != null, "queued updates weren't returned");
+        check(!queue.put(0, userStatus(3, 1)), "queue must stay scheduled until poll returns null");
+        check(queue.poll() != null && queue.poll() == null, "wrong number of queued updates");
+        check(queue.put(0, userStatus(4, 1)), "queue must be scheduled after poll returned null");
+        check(queue.getMaxUpdateCount() == 2, "wrong maximum number of queued updates");
+    }
+
+    private static void testQueryResults() {
+        UpdateQueue queue = new UpdateQueue(new Client.UpdateQueueParameters(1, Client.UpdateQueueOverflowPolicy.BLOCK, null));
+        queue.put(0, userStatus(1, 1));
+        // results of queries must never wait for free space
+        for (int i = 1; i <= 5; i++) {
+            queue.put(i, new TdApi.Ok());
+        }
+        check(queue.getUpdateCount() == 1, "results of queries must not be counted as updates");
+        for (int i = 0; i <= 5; i++) {
+            UpdateQueue.Entry entry = queue.poll();
+            check(entry != null && entry.id == i, "results weren't returned in the order they were received");
+        }
+        check(queue.poll() == null && queue.getUpdateCount() == 0, "queue must be empty");
+    }
+
+    private static void testDropPolicy() {
+        UpdateQueue queue = new UpdateQueue(new Client.UpdateQueueParameters(2, Client.UpdateQueueOverflowPolicy.DROP, new int[] {TdApi.UpdateUserStatus.CONSTRUCTOR}));
+        queue.put(0, userStatus(1, 1));
+        queue.put(0, userStatus(2, 1));
+        queue.put(0, userStatus(3, 1));
+        check(queue.getDroppedUpdateCount() == 1, "droppable update wasn't dropped");
+        check(queue.getUpdateCount() == 2, "wrong number of queued updates");
+        checkUserStatus(queue.poll(), 1, 1);
+        checkUserStatus(queue.poll(), 2, 1);
+        check(queue.poll() == null, "dropped update was queued");
+    }
+
+    private static void testCoalescePolicy() {
+        UpdateQueue queue = new UpdateQueue(new Client.UpdateQueueParameters(3, Client.UpdateQueueOverflowPolicy.COALESCE, null));
+        queue.put(0, userStatus(1, 1));
+        queue.put(0, userStatus(2, 1));
+        queue.put(0, userStatus(1, 2)); // there is free space, so the update isn't coalesced
+        check(queue.getCoalescedUpdateCount() == 0 && queue.getUpdateCount() == 3, "updates must be coalesced only if the queue is full");
+
+        // the queue is full; the last status of the user 1 is superseded by the new status
+        queue.put(0, userStatus(1, 3));
+        check(queue.getCoalescedUpdateCount() == 1 && queue.getUpdateCount() == 3, "superseded update wasn't removed");
+        checkUserStatus(queue.poll(), 1, 1);
+        checkUserStatus(queue.poll(), 2, 1);
+        checkUserStatus(queue.poll(), 1, 3);
+        check(queue.poll() == null, "superseded update was returned");
+    }
+
+    private static void testBlockPolicy() throws InterruptedException {
+        final UpdateQueue queue = new UpdateQueue(new Client.UpdateQueueParameters(1, Client.UpdateQueueOverflowPolicy.BLOCK, null));
+        queue.put(0, userStatus(1, 1));
+        final CountDownLatch isAdded = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // the new status can't supersede the queued status with this policy
+                queue.put(0, userStatus(1, 2));
+                isAdded.countDown();
+            }
+        });
+        thread.start();
+        check(!isAdded.await(100, TimeUnit.MILLISECONDS), "update must wait for free space");
+        checkUserStatus(queue.poll(), 1, 1);
+        check(isAdded.await(10, TimeUnit.SECONDS), "update wasn't added after space was freed");
+        thread.join();
+        checkUserStatus(queue.poll(), 1, 2);
+    }
+
+    private static void testCoalesceUpdates() {
+        UpdateQueue queue = new UpdateQueue(new Client.UpdateQueueParameters(10, Client.UpdateQueueOverflowPolicy.BLOCK, null, true));
+        queue.put(0, userStatus(1, 1));
+        queue.put(0, new TdApi.UpdateOption("option", null));
+        queue.put(0, userStatus(2, 1));
+        queue.put(0, new TdApi.UpdateOption("option", null));
+        queue.put(1, new TdApi.Ok());
+        // the update is coalesced even if there is free space
+        queue.put(0, userStatus(1, 2));
+        queue.put(0, userStatus(1, 3));
+        check(queue.getCoalescedUpdateCount() == 2, "superseded updates weren't removed");
+        check(queue.getUpdateCount() == 4, "wrong number of queued updates");
+
+        // the relative order of the remaining updates is kept
+        check(queue.poll().object instanceof TdApi.UpdateOption, "wrong order of updates");
+        checkUserStatus(queue.poll(), 2, 1);
+        check(queue.poll().object instanceof TdApi.UpdateOption, "wrong order of updates");
+        check(queue.poll().id == 1, "wrong order of results");
+        checkUserStatus(queue.poll(), 1, 3);
+
+        // an update, which was already returned, can't be superseded
+        queue.put(0, userStatus(2, 2));
+        check(queue.getCoalescedUpdateCount() == 2, "returned update was superseded");
+        checkUserStatus(queue.poll(), 2, 2);
+        check(queue.poll() == null && queue.getUpdateCount() == 0, "queue must be empty");
+
+        // updates of different chats and of different types aren't coalesced
+        queue.put(0, new TdApi.UpdateChatReadInbox(1, 1, 0));
+        queue.put(0, new TdApi.UpdateChatReadInbox(2, 1, 0));
+        queue.put(0, new TdApi.UpdateChatReadOutbox(1, 1));
+        check(queue.getCoalescedUpdateCount() == 2 && queue.getUpdateCount() == 3, "unrelated updates were coalesced");
+    }
+
+    private static TdApi.UpdateUserStatus userStatus(long userId, int expires) {
+        return new TdApi.UpdateUserStatus(userId, new TdApi.UserStatusOnline(expires));
+    }
+
+    private static void checkUserStatus(UpdateQueue.Entry entry, long userId, int expires) {
+        check(entry != null && entry.id == 0, "update wasn't returned");
+        TdApi.UpdateUserStatus updateUserStatus = (TdApi.UpdateUserStatus) entry.object;
+        check(updateUserStatus.userId == userId && ((TdApi.UserStatusOnline) updateUserStatus.status).expires == expires, "wrong update");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
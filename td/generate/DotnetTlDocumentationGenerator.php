@@ -85,7 +85,7 @@ class DotnetTlDocumentationGenerator extends TlDocumentationGenerator
         }
     }
 
-    protected function getBaseClassName($is_function)
+    protected function getBaseClassName($is_function, $result_class_name)
     {
         return $is_function ? 'Function' : 'Object';
     }
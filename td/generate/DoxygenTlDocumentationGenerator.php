@@ -110,7 +110,7 @@ class DoxygenTlDocumentationGenerator extends TlDocumentationGenerator
         }
     }
 
-    protected function getBaseClassName($is_function)
+    protected function getBaseClassName($is_function, $result_class_name)
     {
         return $is_function ? 'Function' : 'Object';
     }
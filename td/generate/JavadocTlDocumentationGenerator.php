@@ -79,9 +79,10 @@ class JavadocTlDocumentationGenerator extends TlDocumentationGenerator
         }
     }
 
-    protected function getBaseClassName($is_function)
+    protected function getBaseClassName($is_function, $result_class_name)
     {
-        return $is_function ? 'Function' : 'Object';
+        // function classes are parameterized by the type of their result
+        return $is_function ? "Function<$result_class_name>" : 'Object';
     }
 
     protected function needRemoveLine($line)
@@ -111,7 +112,7 @@ class JavadocTlDocumentationGenerator extends TlDocumentationGenerator
 
     protected function fixLine($line)
     {
-        if (strpos($line, 'CONSTRUCTOR = ') > 0) {
+        if (strpos($line, 'public static final int ') !== false) {
             return substr($line, 0, strpos($line, '='));
         }
 
@@ -150,16 +151,63 @@ EOT
 EOT
 );
 
-        $this->addDocumentation('        public native String toString();', <<<EOT
+        $this->addDocumentation('        public abstract int getConstructorIndex();', <<<EOT
+        /**
+         * @return index of the type of the object, which is less than TdApi.CONSTRUCTOR_INDEX_COUNT.
+         */
+EOT
+);
+
+        $this->addDocumentation('        public void appendTo(Appendable out) throws java.io.IOException {', <<<EOT
+        /**
+         * Appends string representation of the object to the given Appendable.
+         *
+         * @param out Destination for the string representation.
+         * @throws java.io.IOException If an I/O error occurs.
+         */
+EOT
+);
+
+        $this->addDocumentation('        public void writeJson(Appendable out) throws java.io.IOException {', <<<EOT
+        /**
+         * Appends representation of the object in the TDLib JSON interface format to the given Appendable.
+         *
+         * @param out Destination for the JSON representation.
+         * @throws java.io.IOException If an I/O error occurs.
+         */
+EOT
+);
+
+        $this->addDocumentation('        public String toString() {', <<<EOT
         /**
          * @return string representation of the object.
          */
 EOT
 );
 
-        $this->addDocumentation('    public abstract static class Function extends Object {', <<<EOT
+        $this->addDocumentation('        public String toJson() {', <<<EOT
+        /**
+         * @return representation of the object in the TDLib JSON interface format.
+         */
+EOT
+);
+
+        $this->addDocumentation('        public Object copy() {', <<<EOT
+        /**
+         * Returns a shallow copy of the object. Fields of the copy refer to the same arrays and nested objects
+         * as fields of the original object, so they must not be modified if the original object is still in use.
+         * Lazily materialized fields are loaded before the object is copied.
+         *
+         * @return copy of the object.
+         */
+EOT
+);
+
+        $this->addDocumentation('    public abstract static class Function<R extends Object> extends Object {', <<<EOT
     /**
      * This class is a base class for all TDLib interface function-classes.
+     *
+     * @param <R> The object type that is returned by the function.
      */
 EOT
 );
@@ -176,6 +224,37 @@ EOT
          * @return this.CONSTRUCTOR
          */
 EOT
+);
+
+        $this->addDocumentation('        public static final int CONSTRUCTOR_INDEX', <<<EOT
+        /**
+         * Index of the type of the object among all TDLib interface types, which can be used to access arrays
+         * of size TdApi.CONSTRUCTOR_INDEX_COUNT instead of lookups by the identifier.
+         */
+EOT
+);
+
+        $this->addDocumentation('        public int getConstructorIndex() {', <<<EOT
+        /**
+         * @return this.CONSTRUCTOR_INDEX
+         */
+EOT
+);
+
+        $this->addDocumentation('        public void releaseLazyFields() {', <<<EOT
+        /**
+         * Releases native memory of fields, which are materialized lazily and weren't accessed yet.
+         * The fields remain null after that.
+         */
+EOT
+);
+
+        $this->addDocumentation('    public static final int CONSTRUCTOR_INDEX_COUNT', <<<EOT
+    /**
+     * Number of different TDLib interface types. Values returned by getConstructorIndex are between 0 and
+     * CONSTRUCTOR_INDEX_COUNT - 1.
+     */
+EOT
 );
     }
 
@@ -218,6 +297,17 @@ EOT
         if ($may_be_null && $this->nullable_annotation && ($this->java_version >= 8 || substr($type_name, -1) != ']')) {
             $this->addLineReplacement($full_line, "        $this->nullable_annotation public $type_name $field_name;".PHP_EOL);
         }
+
+        // getter of the field, which is generated only if the field is materialized lazily
+        $getter_name = 'get'.ucfirst($field_name);
+        $this->addDocumentation($class_name."        public $type_name $getter_name() {", <<<EOT
+        /**
+         * Returns the field $field_name, which is kept in the native memory until the first call of the method.
+         *
+         * @return $field_info
+         */
+EOT
+);
     }
 
     protected function addDefaultConstructorDocumentation($class_name, $class_description)
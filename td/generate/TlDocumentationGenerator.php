@@ -71,7 +71,7 @@ abstract class TlDocumentationGenerator
 
     abstract protected function getTypeName($type);
 
-    abstract protected function getBaseClassName($is_function);
+    abstract protected function getBaseClassName($is_function, $result_class_name);
 
     abstract protected function needRemoveLine($line);
 
@@ -242,7 +242,7 @@ abstract class TlDocumentationGenerator
                     $this->printError("Have wrong documentation for class `$class_name`");
                 }
 
-                $base_class_name = $current_class ?: $this->getBaseClassName($is_function);
+                $base_class_name = $current_class ?: $this->getBaseClassName($is_function, $type);
                 $class_description = $description;
                 if ($is_function) {
                     $class_description .= $this->getFunctionReturnTypeDescription($this->getTypeName($type), false);
@@ -41,7 +41,8 @@ int main() {
 
 #ifdef TD_ENABLE_JNI
   generate_cpp<td::TD_TL_writer_jni_cpp, td::TD_TL_writer_jni_h>(
-      "auto/td/telegram", "td_api", "std::string", "std::string", {"\"td/tl/tl_jni_object.h\""}, {"<string>"});
+      "auto/td/telegram", "td_api", "std::string", "std::string",
+      {"\"td/tl/tl_jni_object.h\"", "\"td/tl/tl_object_store.h\"", "\"td/utils/tl_storers.h\""}, {"<string>"});
 #else
   generate_cpp<>("auto/td/telegram", "td_api", "std::string", "std::string", {}, {"<string>"});
 #endif
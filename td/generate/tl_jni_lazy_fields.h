@@ -0,0 +1,42 @@
+//
+// Copyright Aliaksei Levin (levlam@telegram.org), Arseny Smirnov (arseny30@gmail.com) 2014-2022
+//
+// Distributed under the Boost Software License, Version 1.0. (See accompanying
+// file LICENSE_1_0.txt or copy at http://www.boost.org/LICENSE_1_0.txt)
+//
+#pragma once
+
+#include "td/tl/tl_core.h"
+
+#include <cstdio>
+#include <cstdlib>
+#include <string>
+
+namespace td {
+
+// Returns true, if the field must be kept in the native memory until it is accessed from Java.
+// Lazy fields are specified by TD_JNI_LAZY_FIELDS as a comma-separated list of "<constructor>.<field>",
+// for example, "message.content,message.reply_markup". Only fields of object types can be lazy.
+inline bool is_jni_lazy_field(const std::string &constructor_name, const tl::arg &a) {
+#ifdef TD_JNI_LAZY_FIELDS
+  std::string lazy_fields = std::string(",") + TD_JNI_LAZY_FIELDS + ",";
+  if (lazy_fields.find("," + constructor_name + "." + a.name + ",") == std::string::npos) {
+    return false;
+  }
+  if (a.type->get_type() != tl::NODE_TYPE_TYPE) {
+    return false;
+  }
+  const std::string &type_name = static_cast<const tl::tl_tree_type *>(a.type)->type->name;
+  if (type_name == "Bool" || type_name == "Int32" || type_name == "Int53" || type_name == "Int64" ||
+      type_name == "Double" || type_name == "String" || type_name == "Bytes" || type_name == "Vector") {
+    std::fprintf(stderr, "Field %s.%s of type %s can't be lazy\n", constructor_name.c_str(), a.name.c_str(),
+                 type_name.c_str());
+    std::abort();
+  }
+  return true;
+#else
+  return false;
+#endif
+}
+
+}  // namespace td
@@ -493,7 +493,7 @@ std::string TD_TL_writer_cpp::gen_forward_class_declaration(const std::string &c
 }
 
 std::string TD_TL_writer_cpp::gen_class_begin(const std::string &class_name, const std::string &base_class_name,
-                                              bool is_proxy) const {
+                                              bool is_proxy, const tl::tl_tree *result) const {
   return "";
 }
 
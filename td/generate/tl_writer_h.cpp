@@ -255,7 +255,7 @@ std::string TD_TL_writer_h::gen_forward_class_declaration(const std::string &cla
 }
 
 std::string TD_TL_writer_h::gen_class_begin(const std::string &class_name, const std::string &base_class_name,
-                                            bool is_proxy) const {
+                                            bool is_proxy, const tl::tl_tree *result) const {
   return "class " + class_name + (!is_proxy ? " final " : "") + ": public " + base_class_name +
          " {\n"
          " public:\n";
@@ -363,7 +363,7 @@ std::string TD_TL_writer_h::gen_store_function_begin(const std::string &storer_n
   }
   return "\n"
          "  void store(" +
-         storer_name + " &s" + std::string(storer_type == 0 ? "" : ", const char *field_name") + ") const final;\n";
+         storer_name + " &s" + std::string(storer_type == 1 ? ", const char *field_name" : "") + ") const final;\n";
 }
 
 std::string TD_TL_writer_h::gen_store_function_end(const std::vector<tl::var_description> &vars,
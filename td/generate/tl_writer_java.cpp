@@ -6,6 +6,8 @@
 //
 #include "tl_writer_java.h"
 
+#include "tl_jni_lazy_fields.h"
+
 #include <cassert>
 
 namespace td {
@@ -52,13 +54,17 @@ int TD_TL_writer_java::get_parser_type(const tl::tl_combinator *t, const std::st
   return 0;
 }
 
+tl::TL_writer::Mode TD_TL_writer_java::get_parser_mode(int type) const {
+  return Client;  // only results are received from the TDLib
+}
+
 int TD_TL_writer_java::get_storer_type(const tl::tl_combinator *t, const std::string &storer_name) const {
   return 0;
 }
 
 std::vector<std::string> TD_TL_writer_java::get_parsers() const {
   std::vector<std::string> parsers;
-  parsers.push_back("<inlined>");
+  parsers.push_back("TlBinaryReader");
   return parsers;
 }
 
@@ -198,7 +204,641 @@ std::string TD_TL_writer_java::gen_output_begin() const {
 }
 
 std::string TD_TL_writer_java::gen_output_end() const {
-  return "}\n";
+  // split the switch into several methods to keep them small enough to be compiled by JIT
+  const std::size_t MAX_SWITCH_CASES = 256;
+  std::size_t method_count = (fetched_class_names.size() + MAX_SWITCH_CASES - 1) / MAX_SWITCH_CASES;
+  std::string fetch_methods =
+      "\n"
+      "    static Object fetch(TlBinaryReader reader) {\n"
+      "        int constructor = reader.readInt();\n"
+      "        return constructor == 0 ? null : fetch0(reader, constructor);\n"
+      "    }\n";
+  for (std::size_t i = 0; i < method_count; i++) {
+    fetch_methods += "\n"
+                     "    private static Object fetch" +
+                     int_to_string(static_cast<int>(i)) +
+                     "(TlBinaryReader reader, int constructor) {\n"
+                     "        switch (constructor) {\n";
+    for (std::size_t j = i * MAX_SWITCH_CASES; j < fetched_class_names.size() && j < (i + 1) * MAX_SWITCH_CASES;
+         j++) {
+      fetch_methods += "            case " + fetched_class_names[j] +
+                       ".CONSTRUCTOR:\n"
+                       "                return new " +
+                       fetched_class_names[j] + "(reader);\n";
+    }
+    fetch_methods += "            default:\n";
+    if (i + 1 < method_count) {
+      fetch_methods += "                return fetch" + int_to_string(static_cast<int>(i + 1)) +
+                       "(reader, constructor);\n";
+    } else {
+      fetch_methods += "                throw new IllegalArgumentException(\"Unknown constructor \" + constructor);\n";
+    }
+    fetch_methods +=
+        "        }\n"
+        "    }\n";
+  }
+
+  return fetch_methods +
+         "\n"
+         "    static final class TlBinaryReader {\n"
+         "        private static final int BOOL_FALSE = 0xbc799737;\n"
+         "        private static final int BOOL_TRUE = 0x997275b5;\n"
+         "\n"
+         "        private final java.nio.ByteBuffer buffer;\n"
+         "        private byte[] stringBytes = new byte[256];\n"
+         "\n"
+         "        TlBinaryReader(java.nio.ByteBuffer buffer) {\n"
+         "            this.buffer = buffer;\n"
+         "        }\n"
+         "\n"
+         "        int readInt() {\n"
+         "            return buffer.getInt();\n"
+         "        }\n"
+         "\n"
+         "        long readLong() {\n"
+         "            return buffer.getLong();\n"
+         "        }\n"
+         "\n"
+         "        double readDouble() {\n"
+         "            return buffer.getDouble();\n"
+         "        }\n"
+         "\n"
+         "        boolean readBool() {\n"
+         "            int constructor = buffer.getInt();\n"
+         "            if (constructor != BOOL_TRUE && constructor != BOOL_FALSE) {\n"
+         "                throw new IllegalArgumentException(\"Unknown Bool constructor \" + constructor);\n"
+         "            }\n"
+         "            return constructor == BOOL_TRUE;\n"
+         "        }\n"
+         "\n"
+         "        String readString() {\n"
+         "            int start = buffer.position();\n"
+         "            int length = readStringLength();\n"
+         "            if (stringBytes.length < length) {\n"
+         "                stringBytes = new byte[Math.max(length, 2 * stringBytes.length)];\n"
+         "            }\n"
+         "            buffer.get(stringBytes, 0, length);\n"
+         "            skipPadding(start);\n"
+         "            return new String(stringBytes, 0, length, java.nio.charset.StandardCharsets.UTF_8);\n"
+         "        }\n"
+         "\n"
+         "        byte[] readBytes() {\n"
+         "            int start = buffer.position();\n"
+         "            byte[] result = new byte[readStringLength()];\n"
+         "            buffer.get(result);\n"
+         "            skipPadding(start);\n"
+         "            return result;\n"
+         "        }\n"
+         "\n"
+         "        int[] readInts() {\n"
+         "            int[] result = new int[buffer.getInt()];\n"
+         "            for (int i = 0; i < result.length; i++) {\n"
+         "                result[i] = buffer.getInt();\n"
+         "            }\n"
+         "            return result;\n"
+         "        }\n"
+         "\n"
+         "        long[] readLongs() {\n"
+         "            long[] result = new long[buffer.getInt()];\n"
+         "            for (int i = 0; i < result.length; i++) {\n"
+         "                result[i] = buffer.getLong();\n"
+         "            }\n"
+         "            return result;\n"
+         "        }\n"
+         "\n"
+         "        double[] readDoubles() {\n"
+         "            double[] result = new double[buffer.getInt()];\n"
+         "            for (int i = 0; i < result.length; i++) {\n"
+         "                result[i] = buffer.getDouble();\n"
+         "            }\n"
+         "            return result;\n"
+         "        }\n"
+         "\n"
+         "        private int readStringLength() {\n"
+         "            int length = buffer.get() & 0xFF;\n"
+         "            if (length < 254) {\n"
+         "                return length;\n"
+         "            }\n"
+         "            int headerLength = length == 254 ? 3 : 7;\n"
+         "            long longLength = 0;\n"
+         "            for (int i = 0; i < headerLength; i++) {\n"
+         "                longLength |= (long) (buffer.get() & 0xFF) << (8 * i);\n"
+         "            }\n"
+         "            if (longLength > Integer.MAX_VALUE) {\n"
+         "                throw new IllegalArgumentException(\"Too long string of length \" + longLength);\n"
+         "            }\n"
+         "            return (int) longLength;\n"
+         "        }\n"
+         "\n"
+         "        private void skipPadding(int start) {\n"
+         "            buffer.position(buffer.position() + ((start - buffer.position()) & 3));\n"
+         "        }\n"
+         "    }\n"
+         "\n"
+         "    abstract static class TlObjectWriter {\n"
+         "        final Appendable out;\n"
+         "        private final char[] digits = new char[20];\n"
+         "\n"
+         "        TlObjectWriter(Appendable out) {\n"
+         "            this.out = out;\n"
+         "        }\n"
+         "\n"
+         "        abstract void beginObject(String name, String jsonName, String className, String typeName) throws"
+         " java.io.IOException;\n"
+         "\n"
+         "        abstract void endObject() throws java.io.IOException;\n"
+         "\n"
+         "        abstract void beginVector(String name, String jsonName, int size) throws java.io.IOException;\n"
+         "\n"
+         "        abstract void endVector() throws java.io.IOException;\n"
+         "\n"
+         "        abstract void writeNull(String name, String jsonName) throws java.io.IOException;\n"
+         "\n"
+         "        abstract void writeBool(String name, String jsonName, boolean value) throws java.io.IOException;\n"
+         "\n"
+         "        abstract void writeInt32(String name, String jsonName, int value) throws java.io.IOException;\n"
+         "\n"
+         "        abstract void writeInt53(String name, String jsonName, long value) throws java.io.IOException;\n"
+         "\n"
+         "        abstract void writeInt64(String name, String jsonName, long value) throws java.io.IOException;\n"
+         "\n"
+         "        abstract void writeDouble(String name, String jsonName, double value) throws java.io.IOException;\n"
+         "\n"
+         "        abstract void writeString(String name, String jsonName, String value) throws java.io.IOException;\n"
+         "\n"
+         "        abstract void writeBytes(String name, String jsonName, byte[] value) throws java.io.IOException;\n"
+         "\n"
+         "        final void writeObject(String name, String jsonName, Object value) throws java.io.IOException {\n"
+         "            if (value == null) {\n"
+         "                writeNull(name, jsonName);\n"
+         "            } else {\n"
+         "                value.write(this, name, jsonName);\n"
+         "            }\n"
+         "        }\n"
+         "\n"
+         "        final void writeBoolVector(String name, String jsonName, boolean[] values) throws"
+         " java.io.IOException {\n"
+         "            int size = values == null ? 0 : values.length;\n"
+         "            beginVector(name, jsonName, size);\n"
+         "            for (int i = 0; i < size; i++) {\n"
+         "                writeBool(null, null, values[i]);\n"
+         "            }\n"
+         "            endVector();\n"
+         "        }\n"
+         "\n"
+         "        final void writeInt32Vector(String name, String jsonName, int[] values) throws java.io.IOException"
+         " {\n"
+         "            int size = values == null ? 0 : values.length;\n"
+         "            beginVector(name, jsonName, size);\n"
+         "            for (int i = 0; i < size; i++) {\n"
+         "                writeInt32(null, null, values[i]);\n"
+         "            }\n"
+         "            endVector();\n"
+         "        }\n"
+         "\n"
+         "        final void writeInt53Vector(String name, String jsonName, long[] values) throws java.io.IOException"
+         " {\n"
+         "            int size = values == null ? 0 : values.length;\n"
+         "            beginVector(name, jsonName, size);\n"
+         "            for (int i = 0; i < size; i++) {\n"
+         "                writeInt53(null, null, values[i]);\n"
+         "            }\n"
+         "            endVector();\n"
+         "        }\n"
+         "\n"
+         "        final void writeInt64Vector(String name, String jsonName, long[] values) throws java.io.IOException"
+         " {\n"
+         "            int size = values == null ? 0 : values.length;\n"
+         "            beginVector(name, jsonName, size);\n"
+         "            for (int i = 0; i < size; i++) {\n"
+         "                writeInt64(null, null, values[i]);\n"
+         "            }\n"
+         "            endVector();\n"
+         "        }\n"
+         "\n"
+         "        final void writeDoubleVector(String name, String jsonName, double[] values) throws"
+         " java.io.IOException {\n"
+         "            int size = values == null ? 0 : values.length;\n"
+         "            beginVector(name, jsonName, size);\n"
+         "            for (int i = 0; i < size; i++) {\n"
+         "                writeDouble(null, null, values[i]);\n"
+         "            }\n"
+         "            endVector();\n"
+         "        }\n"
+         "\n"
+         "        final void writeStringVector(String name, String jsonName, String[] values) throws"
+         " java.io.IOException {\n"
+         "            int size = values == null ? 0 : values.length;\n"
+         "            beginVector(name, jsonName, size);\n"
+         "            for (int i = 0; i < size; i++) {\n"
+         "                writeString(null, null, values[i]);\n"
+         "            }\n"
+         "            endVector();\n"
+         "        }\n"
+         "\n"
+         "        final void writeBytesVector(String name, String jsonName, byte[][] values) throws"
+         " java.io.IOException {\n"
+         "            int size = values == null ? 0 : values.length;\n"
+         "            beginVector(name, jsonName, size);\n"
+         "            for (int i = 0; i < size; i++) {\n"
+         "                writeBytes(null, null, values[i]);\n"
+         "            }\n"
+         "            endVector();\n"
+         "        }\n"
+         "\n"
+         "        final void writeObjectVector(String name, String jsonName, Object[] values) throws"
+         " java.io.IOException {\n"
+         "            int size = values == null ? 0 : values.length;\n"
+         "            beginVector(name, jsonName, size);\n"
+         "            for (int i = 0; i < size; i++) {\n"
+         "                writeObject(null, null, values[i]);\n"
+         "            }\n"
+         "            endVector();\n"
+         "        }\n"
+         "\n"
+         "        final void appendLong(long value) throws java.io.IOException {\n"
+         "            if (value == Long.MIN_VALUE) {\n"
+         "                out.append(\"-9223372036854775808\");\n"
+         "                return;\n"
+         "            }\n"
+         "            if (value < 0) {\n"
+         "                out.append('-');\n"
+         "                value = -value;\n"
+         "            }\n"
+         "            int position = digits.length;\n"
+         "            do {\n"
+         "                digits[--position] = (char) ('0' + value % 10);\n"
+         "                value /= 10;\n"
+         "            } while (value != 0);\n"
+         "            while (position < digits.length) {\n"
+         "                out.append(digits[position++]);\n"
+         "            }\n"
+         "        }\n"
+         "    }\n"
+         "\n"
+         "    static final class TlStringWriter extends TlObjectWriter {\n"
+         "        private static final char[] HEX_DIGITS = \"0123456789ABCDEF\".toCharArray();\n"
+         "        private static final int MAX_PRINTED_BYTES = 64;\n"
+         "\n"
+         "        private int shift = 0;\n"
+         "        private int[] bigIntegerWords;\n"
+         "        private char[] bigIntegerDigits;\n"
+         "\n"
+         "        TlStringWriter(Appendable out) {\n"
+         "            super(out);\n"
+         "        }\n"
+         "\n"
+         "        private void beginField(String name) throws java.io.IOException {\n"
+         "            for (int i = 0; i < shift; i++) {\n"
+         "                out.append(' ');\n"
+         "            }\n"
+         "            if (name != null) {\n"
+         "                out.append(name).append(\" = \");\n"
+         "            }\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void beginObject(String name, String jsonName, String className, String typeName) throws"
+         " java.io.IOException {\n"
+         "            beginField(name);\n"
+         "            out.append(className).append(\" {\\n\");\n"
+         "            shift += 2;\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void endObject() throws java.io.IOException {\n"
+         "            shift -= 2;\n"
+         "            beginField(null);\n"
+         "            out.append(\"}\\n\");\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void beginVector(String name, String jsonName, int size) throws java.io.IOException {\n"
+         "            beginField(name);\n"
+         "            out.append(\"vector[\");\n"
+         "            appendLong(size);\n"
+         "            out.append(\"] {\\n\");\n"
+         "            shift += 2;\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void endVector() throws java.io.IOException {\n"
+         "            endObject();\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void writeNull(String name, String jsonName) throws java.io.IOException {\n"
+         "            beginField(name);\n"
+         "            out.append(\"null\\n\");\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void writeBool(String name, String jsonName, boolean value) throws java.io.IOException {\n"
+         "            beginField(name);\n"
+         "            out.append(value ? \"true\\n\" : \"false\\n\");\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void writeInt32(String name, String jsonName, int value) throws java.io.IOException {\n"
+         "            beginField(name);\n"
+         "            appendLong(value);\n"
+         "            out.append('\\n');\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void writeInt53(String name, String jsonName, long value) throws java.io.IOException {\n"
+         "            beginField(name);\n"
+         "            appendLong(value);\n"
+         "            out.append('\\n');\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void writeInt64(String name, String jsonName, long value) throws java.io.IOException {\n"
+         "            beginField(name);\n"
+         "            appendLong(value);\n"
+         "            out.append('\\n');\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void writeDouble(String name, String jsonName, double value) throws java.io.IOException {\n"
+         "            beginField(name);\n"
+         "            if (Double.isNaN(value)) {\n"
+         "                out.append(\"nan\");\n"
+         "            } else if (Double.isInfinite(value)) {\n"
+         "                out.append(value > 0 ? \"inf\" : \"-inf\");\n"
+         "            } else {\n"
+         "                appendFixedDouble(value);\n"
+         "            }\n"
+         "            out.append('\\n');\n"
+         "        }\n"
+         "\n"
+         "        // the same format as \"%.6f\"; the exact binary value is rounded half to even\n"
+         "        private void appendFixedDouble(double value) throws java.io.IOException {\n"
+         "            if (Math.copySign(1.0, value) < 0) {\n"
+         "                out.append('-');\n"
+         "                value = -value;\n"
+         "            }\n"
+         "            if (value >= 0x1p63) {\n"
+         "                appendBigInteger(value);\n"
+         "                out.append(\".000000\");\n"
+         "                return;\n"
+         "            }\n"
+         "            long integerPart = (long) value;\n"
+         "            long micros = roundMicros(value - integerPart);\n"
+         "            if (micros == 1000000) {\n"
+         "                integerPart++;\n"
+         "                micros = 0;\n"
+         "            }\n"
+         "            appendLong(integerPart);\n"
+         "            out.append('.');\n"
+         "            for (int divisor = 100000; divisor != 0; divisor /= 10) {\n"
+         "                out.append((char) ('0' + micros / divisor % 10));\n"
+         "            }\n"
+         "        }\n"
+         "\n"
+         "        // returns the exact value of fraction * 10^6 rounded half to even\n"
+         "        private static long roundMicros(double fraction) {\n"
+         "            long bits = Double.doubleToRawLongBits(fraction);\n"
+         "            int exponent = (int) (bits >>> 52);\n"
+         "            long mantissa = bits & 0xFFFFFFFFFFFFFL;\n"
+         "            if (exponent == 0) {\n"
+         "                exponent = 1;\n"
+         "            } else {\n"
+         "                mantissa |= 1L << 52;\n"
+         "            }\n"
+         "            // fraction * 10^6 == mantissa * 15625 * 2^-shift, where the product has at most 67 bits\n"
+         "            int shift = 1075 - exponent - 6;\n"
+         "            if (mantissa == 0 || shift >= 68) {\n"
+         "                return 0;\n"
+         "            }\n"
+         "            long high = Math.multiplyHigh(mantissa, 15625);\n"
+         "            long low = mantissa * 15625;\n"
+         "            // shift >= 47, because fraction < 1, so the lowest bit of the shifted product is the first\n"
+         "            // dropped bit\n"
+         "            int halfShift = shift - 1;\n"
+         "            long result;\n"
+         "            boolean isExactHalf;\n"
+         "            if (halfShift < 64) {\n"
+         "                result = (low >>> halfShift) | (high << (64 - halfShift));\n"
+         "                isExactHalf = (low << (64 - halfShift)) == 0;\n"
+         "            } else {\n"
+         "                result = high >>> (halfShift - 64);\n"
+         "                isExactHalf = low == 0 && (high & ((1L << (halfShift - 64)) - 1)) == 0;\n"
+         "            }\n"
+         "            boolean isRoundedUp = (result & 1) != 0 && (!isExactHalf || (result & 2) != 0);\n"
+         "            return (result >>> 1) + (isRoundedUp ? 1 : 0);\n"
+         "        }\n"
+         "\n"
+         "        // appends the exact decimal value of an integer, which doesn't fit in long\n"
+         "        private void appendBigInteger(double value) throws java.io.IOException {\n"
+         "            if (bigIntegerWords == null) {\n"
+         "                bigIntegerWords = new int[34];\n"
+         "                bigIntegerDigits = new char[315];\n"
+         "            }\n"
+         "            int[] words = bigIntegerWords;\n"
+         "            char[] result = bigIntegerDigits;\n"
+         "            long bits = Double.doubleToRawLongBits(value);\n"
+         "            int exponent = (int) (bits >>> 52) - 1075;\n"
+         "            long mantissa = (bits & 0xFFFFFFFFFFFFFL) | (1L << 52);\n"
+         "            int size = (exponent >>> 5) + 3;\n"
+         "            java.util.Arrays.fill(words, 0, size, 0);\n"
+         "            int bitShift = exponent & 31;\n"
+         "            words[size - 3] = (int) (mantissa << bitShift);\n"
+         "            words[size - 2] = (int) (mantissa >>> (32 - bitShift));\n"
+         "            words[size - 1] = bitShift == 0 ? 0 : (int) (mantissa >>> (64 - bitShift));\n"
+         "\n"
+         "            // the value is divided by 10^9 until it becomes zero; remainders are the next 9 digits\n"
+         "            int position = result.length;\n"
+         "            while (size > 0) {\n"
+         "                long remainder = 0;\n"
+         "                for (int i = size - 1; i >= 0; i--) {\n"
+         "                    long current = (remainder << 32) | (words[i] & 0xFFFFFFFFL);\n"
+         "                    words[i] = (int) (current / 1000000000);\n"
+         "                    remainder = current % 1000000000;\n"
+         "                }\n"
+         "                for (int i = 0; i < 9; i++) {\n"
+         "                    result[--position] = (char) ('0' + remainder % 10);\n"
+         "                    remainder /= 10;\n"
+         "                }\n"
+         "                while (size > 0 && words[size - 1] == 0) {\n"
+         "                    size--;\n"
+         "                }\n"
+         "            }\n"
+         "            while (result[position] == '0') {\n"
+         "                position++;\n"
+         "            }\n"
+         "            while (position < result.length) {\n"
+         "                out.append(result[position++]);\n"
+         "            }\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void writeString(String name, String jsonName, String value) throws java.io.IOException {\n"
+         "            beginField(name);\n"
+         "            out.append('\"');\n"
+         "            if (value != null) {\n"
+         "                out.append(value);\n"
+         "            }\n"
+         "            out.append(\"\\\"\\n\");\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void writeBytes(String name, String jsonName, byte[] value) throws java.io.IOException {\n"
+         "            int size = value == null ? 0 : value.length;\n"
+         "            beginField(name);\n"
+         "            out.append(\"bytes [\");\n"
+         "            appendLong(size);\n"
+         "            out.append(\"] { \");\n"
+         "            for (int i = 0; i < size && i < MAX_PRINTED_BYTES; i++) {\n"
+         "                out.append(HEX_DIGITS[(value[i] >> 4) & 15]).append(HEX_DIGITS[value[i] & 15]).append(' ');\n"
+         "            }\n"
+         "            if (size > MAX_PRINTED_BYTES) {\n"
+         "                out.append(\"...\");\n"
+         "            }\n"
+         "            out.append(\"}\\n\");\n"
+         "        }\n"
+         "    }\n"
+         "\n"
+         "    static final class TlJsonWriter extends TlObjectWriter {\n"
+         "        private static final char[] HEX_DIGITS = \"0123456789abcdef\".toCharArray();\n"
+         "        private static final char[] BASE64_DIGITS ="
+         " \"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/\".toCharArray();\n"
+         "\n"
+         "        private boolean isFirstValue = true;\n"
+         "\n"
+         "        TlJsonWriter(Appendable out) {\n"
+         "            super(out);\n"
+         "        }\n"
+         "\n"
+         "        private void beginValue(String jsonName) throws java.io.IOException {\n"
+         "            if (!isFirstValue) {\n"
+         "                out.append(',');\n"
+         "            }\n"
+         "            isFirstValue = false;\n"
+         "            if (jsonName != null) {\n"
+         "                out.append('\"').append(jsonName).append(\"\\\":\");\n"
+         "            }\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void beginObject(String name, String jsonName, String className, String typeName) throws"
+         " java.io.IOException {\n"
+         "            beginValue(jsonName);\n"
+         "            out.append(\"{\\\"@type\\\":\\\"\").append(typeName).append('\"');\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void endObject() throws java.io.IOException {\n"
+         "            out.append('}');\n"
+         "            isFirstValue = false;\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void beginVector(String name, String jsonName, int size) throws java.io.IOException {\n"
+         "            beginValue(jsonName);\n"
+         "            out.append('[');\n"
+         "            isFirstValue = true;\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void endVector() throws java.io.IOException {\n"
+         "            out.append(']');\n"
+         "            isFirstValue = false;\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void writeNull(String name, String jsonName) throws java.io.IOException {\n"
+         "            beginValue(jsonName);\n"
+         "            out.append(\"null\");\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void writeBool(String name, String jsonName, boolean value) throws java.io.IOException {\n"
+         "            beginValue(jsonName);\n"
+         "            out.append(value ? \"true\" : \"false\");\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void writeInt32(String name, String jsonName, int value) throws java.io.IOException {\n"
+         "            beginValue(jsonName);\n"
+         "            appendLong(value);\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void writeInt53(String name, String jsonName, long value) throws java.io.IOException {\n"
+         "            beginValue(jsonName);\n"
+         "            appendLong(value);\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void writeInt64(String name, String jsonName, long value) throws java.io.IOException {\n"
+         "            // 64-bit integers are passed as strings, because they can't be represented exactly as JSON"
+         " numbers\n"
+         "            beginValue(jsonName);\n"
+         "            out.append('\"');\n"
+         "            appendLong(value);\n"
+         "            out.append('\"');\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void writeDouble(String name, String jsonName, double value) throws java.io.IOException {\n"
+         "            beginValue(jsonName);\n"
+         "            if (Double.isNaN(value) || Double.isInfinite(value)) {\n"
+         "                out.append(\"null\");\n"
+         "            } else {\n"
+         "                out.append(Double.toString(value));\n"
+         "            }\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void writeString(String name, String jsonName, String value) throws java.io.IOException {\n"
+         "            beginValue(jsonName);\n"
+         "            out.append('\"');\n"
+         "            int length = value == null ? 0 : value.length();\n"
+         "            for (int i = 0; i < length; i++) {\n"
+         "                char c = value.charAt(i);\n"
+         "                if (c == '\"' || c == '\\\\') {\n"
+         "                    out.append('\\\\').append(c);\n"
+         "                } else if (c >= 0x20) {\n"
+         "                    out.append(c);\n"
+         "                } else if (c == '\\n') {\n"
+         "                    out.append(\"\\\\n\");\n"
+         "                } else if (c == '\\r') {\n"
+         "                    out.append(\"\\\\r\");\n"
+         "                } else if (c == '\\t') {\n"
+         "                    out.append(\"\\\\t\");\n"
+         "                } else {\n"
+         "                    out.append(\"\\\\u00\").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 15]);\n"
+         "                }\n"
+         "            }\n"
+         "            out.append('\"');\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        void writeBytes(String name, String jsonName, byte[] value) throws java.io.IOException {\n"
+         "            beginValue(jsonName);\n"
+         "            out.append('\"');\n"
+         "            int size = value == null ? 0 : value.length;\n"
+         "            for (int i = 0; i < size; i += 3) {\n"
+         "                int bits = (value[i] & 0xFF) << 16;\n"
+         "                if (i + 1 < size) {\n"
+         "                    bits |= (value[i + 1] & 0xFF) << 8;\n"
+         "                }\n"
+         "                if (i + 2 < size) {\n"
+         "                    bits |= value[i + 2] & 0xFF;\n"
+         "                }\n"
+         "                out.append(BASE64_DIGITS[bits >> 18]).append(BASE64_DIGITS[(bits >> 12) & 63]);\n"
+         "                out.append(i + 1 < size ? BASE64_DIGITS[(bits >> 6) & 63] : '=');\n"
+         "                out.append(i + 2 < size ? BASE64_DIGITS[bits & 63] : '=');\n"
+         "            }\n"
+         "            out.append('\"');\n"
+         "        }\n"
+         "    }\n"
+         "\n"
+         "    public static final int CONSTRUCTOR_INDEX_COUNT = " +
+         int_to_string(constructor_index_count) +
+         ";\n"
+         "}\n";
 }
 
 std::string TD_TL_writer_java::gen_forward_class_declaration(const std::string &class_name, bool is_proxy) const {
@@ -206,17 +846,21 @@ std::string TD_TL_writer_java::gen_forward_class_declaration(const std::string &
 }
 
 std::string TD_TL_writer_java::gen_class_begin(const std::string &class_name, const std::string &base_class_name,
-                                               bool is_proxy) const {
+                                               bool is_proxy, const tl::tl_tree *result) const {
   std::string full_class_name = "static class " + class_name;
+  if (class_name == gen_base_function_class_name()) {
+    full_class_name += "<R extends " + gen_base_tl_class_name() + ">";
+  }
   if (class_name != gen_base_tl_class_name()) {
     full_class_name += " extends " + base_class_name;
+    if (result != nullptr) {
+      assert(result->get_type() == tl::NODE_TYPE_TYPE);
+      full_class_name += "<" + gen_type_name(static_cast<const tl::tl_tree_type *>(result)) + ">";
+    }
+  } else {
+    full_class_name += " implements Cloneable";
   }
-  std::string result = "    public " + std::string(is_proxy ? "abstract " : "") + full_class_name + " {\n";
-  if (class_name == gen_base_tl_class_name() || class_name == gen_base_function_class_name()) {
-    result += "        public native String toString();\n";
-  }
-
-  return result;
+  return "    public " + std::string(is_proxy ? "abstract " : "") + full_class_name + " {\n";
 }
 
 std::string TD_TL_writer_java::gen_class_end() const {
@@ -303,7 +947,53 @@ std::string TD_TL_writer_java::gen_field_fetch(int field_num, const tl::arg &a,
 
   assert(a.var_num == -1);
   assert(a.type->get_type() == tl::NODE_TYPE_TYPE);
-  return "";
+  const tl::tl_tree_type *tree_type = static_cast<const tl::tl_tree_type *>(a.type);
+  return gen_binary_fetch("this." + gen_field_name(a.name), tree_type, "            ", 0);
+}
+
+std::string TD_TL_writer_java::gen_binary_fetch(const std::string &target, const tl::tl_tree_type *tree_type,
+                                                const std::string &indent, int depth) const {
+  const std::string &name = tree_type->type->name;
+  std::string value;
+  if (name == "Bool") {
+    value = "reader.readBool()";
+  } else if (name == "Int32") {
+    value = "reader.readInt()";
+  } else if (name == "Int53" || name == "Int64") {
+    value = "reader.readLong()";
+  } else if (name == "Double") {
+    value = "reader.readDouble()";
+  } else if (name == "String") {
+    value = "reader.readString()";
+  } else if (name == "Bytes") {
+    value = "reader.readBytes()";
+  } else if (name == "Vector") {
+    const tl::tl_tree_type *child = static_cast<const tl::tl_tree_type *>(tree_type->children[0]);
+    const std::string &child_name = child->type->name;
+    assert(child_name != "Bool");  // not supported
+    if (child_name == "Int32") {
+      value = "reader.readInts()";
+    } else if (child_name == "Int53" || child_name == "Int64") {
+      value = "reader.readLongs()";
+    } else if (child_name == "Double") {
+      value = "reader.readDoubles()";
+    } else {
+      std::string child_type_name = gen_type_name(child);
+      std::size_t array_pos = child_type_name.find('[');
+      if (array_pos == std::string::npos) {
+        array_pos = child_type_name.size();
+      }
+      std::string new_array =
+          child_type_name.substr(0, array_pos) + "[reader.readInt()]" + child_type_name.substr(array_pos);
+      std::string index = "i" + int_to_string(depth);
+      return indent + target + " = new " + new_array + ";\n" + indent + "for (int " + index + " = 0; " + index +
+             " < " + target + ".length; " + index + "++) {\n" +
+             gen_binary_fetch(target + "[" + index + "]", child, indent + "    ", depth + 1) + indent + "}\n";
+    }
+  } else {
+    value = "(" + gen_type_name(tree_type) + ") " + tl_name + ".fetch(reader)";
+  }
+  return indent + target + " = " + value + ";\n";
 }
 
 std::string TD_TL_writer_java::gen_field_store(const tl::arg &a, std::vector<tl::var_description> &vars, bool flat,
@@ -328,16 +1018,25 @@ std::string TD_TL_writer_java::gen_var_type_fetch(const tl::arg &a) const {
 
 std::string TD_TL_writer_java::gen_get_id(const std::string &class_name, std::int32_t id, bool is_proxy) const {
   if (is_proxy) {
-    return class_name == gen_base_tl_class_name() ? "\n        public abstract int getConstructor();\n" : "";
+    return class_name == gen_base_tl_class_name() ? "\n        public abstract int getConstructor();\n"
+                                                    "\n        public abstract int getConstructorIndex();\n"
+                                                  : "";
   }
 
   return "\n"
          "        public static final int CONSTRUCTOR = " +
          int_to_string(id) +
          ";\n\n"
+         "        public static final int CONSTRUCTOR_INDEX = " +
+         int_to_string(constructor_index_count++) +
+         ";\n\n"
          "        @Override\n"
          "        public int getConstructor() {\n"
          "            return CONSTRUCTOR;\n"
+         "        }\n\n"
+         "        @Override\n"
+         "        public int getConstructorIndex() {\n"
+         "            return CONSTRUCTOR_INDEX;\n"
          "        }\n";
 }
 
@@ -349,13 +1048,22 @@ std::string TD_TL_writer_java::gen_fetch_function_begin(const std::string &parse
                                                         const std::string &parent_class_name, int arity,
                                                         int field_count, std::vector<tl::var_description> &vars,
                                                         int parser_type) const {
-  return "";
+  if (parser_type == -1) {
+    return "";
+  }
+  fetched_class_names.push_back(class_name);
+  return "\n"
+         "        " +
+         class_name + "(" + parser_name + " reader) {\n";
 }
 
 std::string TD_TL_writer_java::gen_fetch_function_end(bool has_parent, int field_count,
                                                       const std::vector<tl::var_description> &vars,
                                                       int parser_type) const {
-  return "";
+  if (parser_type == -1) {
+    return "";
+  }
+  return "        }\n";
 }
 
 std::string TD_TL_writer_java::gen_fetch_function_result_begin(const std::string &parser_name,
@@ -448,7 +1156,202 @@ std::string TD_TL_writer_java::gen_constructor_end(const tl::tl_combinator *t, i
     return ") {\n"
            "        }\n";
   }
-  return "        }\n";
+  if (is_default) {
+    return "        }\n";
+  }
+  return "        }\n" + gen_lazy_fields(t);
+}
+
+std::string TD_TL_writer_java::gen_lazy_field_getter_name(const std::string &field_name) const {
+  std::string getter_name = "get" + field_name;
+  getter_name[3] = to_upper(getter_name[3]);
+  return getter_name;
+}
+
+std::string TD_TL_writer_java::gen_lazy_fields(const tl::tl_combinator *t) const {
+  std::string fields;
+  std::string getters;
+  std::string load;
+  std::string release;
+  for (auto &a : t->args) {
+    if (!is_jni_lazy_field(t->name, a)) {
+      continue;
+    }
+    std::string field_name = gen_field_name(a.name);
+    std::string lazy_field_name = field_name + "Lazy";
+    std::string type_name = gen_type_name(static_cast<const tl::tl_tree_type *>(a.type));
+    std::string getter_name = gen_lazy_field_getter_name(field_name);
+
+    fields += "        private LazyObject " + lazy_field_name + ";\n";
+    getters += "\n"
+               "        public " +
+               type_name + " " + getter_name +
+               "() {\n"
+               "            LazyObject lazy = " +
+               lazy_field_name +
+               ";\n"
+               "            if (lazy != null) {\n"
+               "                " +
+               field_name + " = (" + type_name +
+               ") lazy.get();\n"
+               "                " +
+               lazy_field_name +
+               " = null;\n"
+               "            }\n"
+               "            return " +
+               field_name +
+               ";\n"
+               "        }\n";
+    load += "            " + getter_name + "();\n";
+    release += "            if (" + lazy_field_name +
+               " != null) {\n"
+               "                " +
+               lazy_field_name +
+               ".release();\n"
+               "                " +
+               lazy_field_name +
+               " = null;\n"
+               "            }\n";
+  }
+  if (fields.empty()) {
+    return "";
+  }
+  return "\n" + fields + getters +
+         "\n"
+         "        @Override\n"
+         "        void loadLazyFields() {\n" +
+         load +
+         "        }\n"
+         "\n"
+         "        public void releaseLazyFields() {\n" +
+         release + "        }\n";
+}
+
+std::vector<std::string> TD_TL_writer_java::get_additional_functions() const {
+  std::vector<std::string> additional_functions;
+  additional_functions.push_back("write");
+  return additional_functions;
+}
+
+std::string TD_TL_writer_java::gen_additional_function(const std::string &function_name, const tl::tl_combinator *t,
+                                                       bool is_function) const {
+  assert(function_name == "write");
+  std::string res =
+      "\n"
+      "        @Override\n"
+      "        void write(TlObjectWriter writer, String name, String jsonName) throws java.io.IOException {\n"
+      "            writer.beginObject(name, jsonName, \"" +
+      gen_class_name(t->name) + "\", \"" + t->name + "\");\n";
+  for (auto &a : t->args) {
+    assert(a.type->get_type() == tl::NODE_TYPE_TYPE);
+    std::string field_name = gen_field_name(a.name);
+    std::string value =
+        is_jni_lazy_field(t->name, a) ? gen_lazy_field_getter_name(field_name) + "()" : "this." + field_name;
+    res += gen_object_write("\"" + field_name + "\", \"" + a.name + "\"", value,
+                            static_cast<const tl::tl_tree_type *>(a.type), "            ", 0);
+  }
+  return res +
+         "            writer.endObject();\n"
+         "        }\n";
+}
+
+std::string TD_TL_writer_java::gen_object_write(const std::string &names, const std::string &value,
+                                                const tl::tl_tree_type *tree_type, const std::string &indent,
+                                                int depth) const {
+  const std::string &name = tree_type->type->name;
+  if (name == "Vector") {
+    const tl::tl_tree_type *child = static_cast<const tl::tl_tree_type *>(tree_type->children[0]);
+    if (child->type->name != "Vector") {
+      return indent + "writer.write" + gen_write_method_suffix(child) + "Vector(" + names + ", " + value + ");\n";
+    }
+    std::string element = "value" + int_to_string(depth);
+    return indent + "writer.beginVector(" + names + ", " + value + " == null ? 0 : " + value + ".length);\n" +
+           indent + "if (" + value + " != null) {\n" + indent + "    for (" + gen_type_name(child) + " " + element +
+           " : " + value + ") {\n" +
+           gen_object_write("null, null", element, child, indent + "        ", depth + 1) + indent + "    }\n" +
+           indent + "}\n" + indent + "writer.endVector();\n";
+  }
+  return indent + "writer.write" + gen_write_method_suffix(tree_type) + "(" + names + ", " + value + ");\n";
+}
+
+std::string TD_TL_writer_java::gen_write_method_suffix(const tl::tl_tree_type *tree_type) const {
+  const std::string &name = tree_type->type->name;
+  if (is_built_in_simple_type(name)) {
+    return name;
+  }
+  assert(!is_built_in_complex_type(name));
+  return "Object";
+}
+
+std::string TD_TL_writer_java::gen_additional_proxy_function_begin(const std::string &function_name,
+                                                                   const tl::tl_type *type,
+                                                                   const std::string &class_name, int arity,
+                                                                   bool is_function) const {
+  assert(function_name == "write");
+  if (type != nullptr || is_function || class_name != gen_base_tl_class_name()) {
+    return "";
+  }
+  return "\n"
+         "        public void appendTo(Appendable out) throws java.io.IOException {\n"
+         "            write(new TlStringWriter(out), null, null);\n"
+         "        }\n"
+         "\n"
+         "        public void writeJson(Appendable out) throws java.io.IOException {\n"
+         "            write(new TlJsonWriter(out), null, null);\n"
+         "        }\n"
+         "\n"
+         "        @Override\n"
+         "        public String toString() {\n"
+         "            StringBuilder result = new StringBuilder();\n"
+         "            try {\n"
+         "                appendTo(result);\n"
+         "            } catch (java.io.IOException e) {\n"
+         "                throw new IllegalStateException(e);  // can't happen for a StringBuilder\n"
+         "            }\n"
+         "            return result.toString();\n"
+         "        }\n"
+         "\n"
+         "        public String toJson() {\n"
+         "            StringBuilder result = new StringBuilder();\n"
+         "            try {\n"
+         "                writeJson(result);\n"
+         "            } catch (java.io.IOException e) {\n"
+         "                throw new IllegalStateException(e);  // can't happen for a StringBuilder\n"
+         "            }\n"
+         "            return result.toString();\n"
+         "        }\n"
+         "\n"
+         "        public Object copy() {\n"
+         "            loadLazyFields();\n"
+         "            try {\n"
+         "                return (Object) super.clone();\n"
+         "            } catch (CloneNotSupportedException e) {\n"
+         "                throw new IllegalStateException(e);  // can't happen, because the class is Cloneable\n"
+         "            }\n"
+         "        }\n"
+         "\n"
+         "        void loadLazyFields() {\n"
+         "        }\n"
+         "\n"
+         "        abstract void write(TlObjectWriter writer, String name, String jsonName)"
+         " throws java.io.IOException;\n";
+}
+
+std::string TD_TL_writer_java::gen_additional_proxy_function_case(const std::string &function_name,
+                                                                  const tl::tl_type *type,
+                                                                  const std::string &class_name, int arity) const {
+  return "";
+}
+
+std::string TD_TL_writer_java::gen_additional_proxy_function_case(const std::string &function_name,
+                                                                  const tl::tl_type *type, const tl::tl_combinator *t,
+                                                                  int arity, bool is_function) const {
+  return "";
+}
+
+std::string TD_TL_writer_java::gen_additional_proxy_function_end(const std::string &function_name,
+                                                                 const tl::tl_type *type, bool is_function) const {
+  return "";
 }
 
 }  // namespace td
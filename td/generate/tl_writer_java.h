@@ -23,6 +23,19 @@ class TD_TL_writer_java final : public tl::TL_writer {
 
   const std::string package_name;
 
+  mutable int constructor_index_count = 0;  // the number of already generated constructors
+  mutable std::vector<std::string> fetched_class_names;  // classes, which can be fetched from the binary format
+
+  std::string gen_lazy_field_getter_name(const std::string &field_name) const;
+  std::string gen_lazy_fields(const tl::tl_combinator *t) const;
+
+  std::string gen_binary_fetch(const std::string &target, const tl::tl_tree_type *tree_type, const std::string &indent,
+                               int depth) const;
+
+  std::string gen_object_write(const std::string &names, const std::string &value, const tl::tl_tree_type *tree_type,
+                               const std::string &indent, int depth) const;
+  std::string gen_write_method_suffix(const tl::tl_tree_type *tree_type) const;
+
  public:
   TD_TL_writer_java(const std::string &tl_name, const std::string &package_name)
       : TL_writer(tl_name), package_name(package_name) {
@@ -36,9 +49,11 @@ class TD_TL_writer_java final : public tl::TL_writer {
   bool is_combinator_supported(const tl::tl_combinator *constructor) const final;
 
   int get_parser_type(const tl::tl_combinator *t, const std::string &parser_name) const final;
+  Mode get_parser_mode(int type) const final;
   int get_storer_type(const tl::tl_combinator *t, const std::string &storer_name) const final;
   std::vector<std::string> get_parsers() const final;
   std::vector<std::string> get_storers() const final;
+  std::vector<std::string> get_additional_functions() const final;
 
   std::string gen_base_tl_class_name() const final;
   std::string gen_base_type_class_name(int arity) const final;
@@ -59,7 +74,7 @@ class TD_TL_writer_java final : public tl::TL_writer {
   std::string gen_forward_class_declaration(const std::string &class_name, bool is_proxy) const final;
 
   std::string gen_class_begin(const std::string &class_name, const std::string &base_class_name,
-                              bool is_proxy) const final;
+                              bool is_proxy, const tl::tl_tree *result) const final;
   std::string gen_class_end() const final;
 
   std::string gen_class_alias(const std::string &class_name, const std::string &alias_name) const final;
@@ -114,6 +129,18 @@ class TD_TL_writer_java final : public tl::TL_writer {
   std::string gen_constructor_field_init(int field_num, const std::string &class_name, const tl::arg &a,
                                          bool is_default) const final;
   std::string gen_constructor_end(const tl::tl_combinator *t, int field_count, bool is_default) const final;
+
+  std::string gen_additional_function(const std::string &function_name, const tl::tl_combinator *t,
+                                      bool is_function) const final;
+  std::string gen_additional_proxy_function_begin(const std::string &function_name, const tl::tl_type *type,
+                                                  const std::string &class_name, int arity,
+                                                  bool is_function) const final;
+  std::string gen_additional_proxy_function_case(const std::string &function_name, const tl::tl_type *type,
+                                                 const std::string &class_name, int arity) const final;
+  std::string gen_additional_proxy_function_case(const std::string &function_name, const tl::tl_type *type,
+                                                 const tl::tl_combinator *t, int arity, bool is_function) const final;
+  std::string gen_additional_proxy_function_end(const std::string &function_name, const tl::tl_type *type,
+                                                bool is_function) const final;
 };
 
 }  // namespace td
@@ -6,11 +6,28 @@
 //
 #include "tl_writer_jni_cpp.h"
 
+#include "tl_jni_lazy_fields.h"
+
 #include <cassert>
 #include <cstdio>
 
 namespace td {
 
+bool TD_TL_writer_jni_cpp::is_lazy_jni_init() const {
+#ifdef TD_ENABLE_JNI_LAZY_INIT
+  return true;
+#else
+  return false;
+#endif
+}
+
+std::string TD_TL_writer_jni_cpp::gen_jni_vars_init(const std::string &class_name) const {
+  if (!is_lazy_jni_init()) {
+    return "";
+  }
+  return "jni::init_jni_vars_once<" + class_name + ">(env);";
+}
+
 bool TD_TL_writer_jni_cpp::is_built_in_simple_type(const std::string &name) const {
   return name == "Bool" || name == "Int32" || name == "Int53" || name == "Int64" || name == "Double" ||
          name == "String" || name == "Bytes";
@@ -34,10 +51,18 @@ std::vector<std::string> TD_TL_writer_jni_cpp::get_parsers() const {
   return parsers;
 }
 
+int TD_TL_writer_jni_cpp::get_storer_type(const tl::tl_combinator *t, const std::string &storer_name) const {
+  if (storer_name == "TlStorerBounded") {
+    return 2;
+  }
+  return TD_TL_writer_cpp::get_storer_type(t, storer_name);
+}
+
 std::vector<std::string> TD_TL_writer_jni_cpp::get_storers() const {
   std::vector<std::string> storers;
   storers.push_back("JNIEnv *env, jobject");
   storers.push_back("TlStorerToString");
+  storers.push_back("TlStorerBounded");
   return storers;
 }
 
@@ -57,7 +82,7 @@ std::string TD_TL_writer_jni_cpp::gen_base_tl_class_name() const {
 }
 
 std::string TD_TL_writer_jni_cpp::gen_class_begin(const std::string &class_name, const std::string &base_class_name,
-                                                  bool is_proxy) const {
+                                                  bool is_proxy, const tl::tl_tree *result) const {
   return "\n"
          "jclass " +
          class_name + "::Class;\n";
@@ -221,6 +246,10 @@ std::string TD_TL_writer_jni_cpp::gen_field_fetch(int field_num, const tl::arg &
   const tl::tl_tree_type *tree_type = static_cast<tl::tl_tree_type *>(a.type);
 
   assert(parser_type != 0);
+  if (is_jni_lazy_field(current_class_name, a)) {
+    return "  " + field_name + " = jni::fetch_tl_object<" + gen_main_class_name(tree_type->type) +
+           ">(env, jni::fetch_lazy_object(env, p, " + field_name + "fieldID, " + field_name + "lazy_fieldID));\n";
+  }
   return "  " + gen_type_fetch(field_name, tree_type, vars, parser_type) + ";\n";
 }
 
@@ -250,7 +279,18 @@ std::string TD_TL_writer_jni_cpp::gen_vector_store(const std::string &field_name
   if (vector_type == "int32" || vector_type == "int53" || vector_type == "int64" || vector_type == "double" ||
       vector_type == "string" || vector_type.compare(0, 5, "array") == 0 ||
       vector_type.compare(0, 10, "object_ptr") == 0) {
-    return "{ "
+    std::string init_element_class;
+    const tl::tl_tree_type *element_type = t;
+    while (gen_type_name(element_type).compare(0, 5, "array") == 0) {
+      element_type = static_cast<const tl::tl_tree_type *>(element_type->children[0]);
+    }
+    if (gen_type_name(element_type).compare(0, 10, "object_ptr") == 0) {
+      init_element_class = gen_jni_vars_init(gen_main_class_name(element_type->type));
+      if (!init_element_class.empty()) {
+        init_element_class += " ";
+      }
+    }
+    return "{ " + init_element_class +
            "auto arr_tmp_ = jni::store_vector(env, " +
            field_name +
            "); "
@@ -290,6 +330,10 @@ std::string TD_TL_writer_jni_cpp::gen_type_store(const std::string &field_name,
     assert(is_type_bare(t));
   }
 
+  if (storer_type == 2) {
+    return gen_binary_store_class_name(tree_type) + "::store(" + field_name + ", s);";
+  }
+
   std::string res;
   if (name == "Int32" || name == "Int53" || name == "Int64" || name == "Double" || name == "Bool" || name == "String") {
     if (storer_type == 1) {
@@ -334,6 +378,26 @@ std::string TD_TL_writer_jni_cpp::gen_type_store(const std::string &field_name,
   return res;
 }
 
+std::string TD_TL_writer_jni_cpp::gen_binary_store_class_name(const tl::tl_tree_type *tree_type) const {
+  const std::string &name = tree_type->type->name;
+  if (name == "Int32" || name == "Int53" || name == "Int64" || name == "Double") {
+    return "TlStoreBinary";
+  }
+  if (name == "Bool") {
+    return "TlStoreBool";
+  }
+  if (name == "String" || name == "Bytes") {
+    return "TlStoreString";
+  }
+  if (name == "Vector") {
+    const tl::tl_tree_type *child = static_cast<const tl::tl_tree_type *>(tree_type->children[0]);
+    assert(child->type->name != "Bool");  // not supported
+    return "TlStoreVector<" + gen_binary_store_class_name(child) + ">";
+  }
+  assert(tree_type->children.empty());
+  return "jni::TlStoreNullableBoxedObject";
+}
+
 std::string TD_TL_writer_jni_cpp::gen_field_store(const tl::arg &a, std::vector<tl::var_description> &vars, bool flat,
                                                   int storer_type) const {
   std::string field_name = gen_field_name(a.name);
@@ -366,6 +430,11 @@ std::string TD_TL_writer_jni_cpp::gen_field_store(const tl::arg &a, std::vector<
   assert(a.var_num == -1);
   assert(a.type->get_type() == tl::NODE_TYPE_TYPE);
   const tl::tl_tree_type *tree_type = static_cast<tl::tl_tree_type *>(a.type);
+  if (storer_type == 0 && is_jni_lazy_field(current_class_name, a)) {
+    return shift + "if (" + field_name + " != nullptr) { jobject next = jni::store_lazy_object(env, " + field_name +
+           "); if (next) { env->SetObjectField(s, " + field_name +
+           "lazy_fieldID, next); env->DeleteLocalRef(next); } }\n";
+  }
   return shift + gen_type_store(field_name, tree_type, vars, storer_type) + "\n";
 }
 
@@ -385,6 +454,7 @@ std::string TD_TL_writer_jni_cpp::gen_fetch_function_begin(const std::string &pa
     assert(vars[i].is_stored == false);
   }
 
+  current_class_name = class_name;
   std::string fetched_type = "object_ptr<" + class_name + "> ";
   std::string returned_type = "object_ptr<" + parent_class_name + "> ";
   assert(arity == 0);
@@ -393,8 +463,8 @@ std::string TD_TL_writer_jni_cpp::gen_fetch_function_begin(const std::string &pa
 
   return "\n" + returned_type + class_name + "::fetch(" + parser_name + " &p) {\n" +
          (parser_type == -1 ? ""
-                            : "  if (p == nullptr) return nullptr;\n"
-                              "  " +
+                            : "  if (p == nullptr) return nullptr;\n" +
+                                  (is_lazy_jni_init() ? "  " + gen_jni_vars_init(class_name) + "\n" : "") + "  " +
                                   fetched_type + "res = make_object<" + class_name + ">();\n");
 }
 
@@ -451,19 +521,29 @@ std::string TD_TL_writer_jni_cpp::gen_store_function_begin(const std::string &st
   if (storer_type == -1) {
     return "";
   }
+  current_class_name = class_name;
+  if (storer_type == 2) {
+    return TD_TL_writer_cpp::gen_store_function_begin(storer_name, class_name, arity, vars, 0);
+  }
 
   assert(arity == 0);
   return "\n"
          "void " +
          class_name + "::store(" + storer_name + " &s" +
          std::string(storer_type <= 0 ? "" : ", const char *field_name") + ") const {\n" +
-         (storer_type <= 0 ? "  s = env->AllocObject(Class);\n"
-                             "  if (!s) { return; }\n"
+         (storer_type <= 0 ? (is_lazy_jni_init() ? "  " + gen_jni_vars_init(class_name) + "\n" : "") +
+                                 "  s = env->AllocObject(Class);\n"
+                                 "  if (!s) { return; }\n"
                            : "  if (!LOG_IS_STRIPPED(ERROR)) {\n"
                              "    s.store_class_begin(field_name, \"" +
                                  get_pretty_class_name(class_name) + "\");\n");
 }
 
+std::string TD_TL_writer_jni_cpp::gen_store_function_end(const std::vector<tl::var_description> &vars,
+                                                         int storer_type) const {
+  return TD_TL_writer_cpp::gen_store_function_end(vars, storer_type == 2 ? 0 : storer_type);
+}
+
 std::string TD_TL_writer_jni_cpp::gen_fetch_switch_begin() const {
   return "  if (p == nullptr) { return nullptr; }\n"
          "  switch (env->CallIntMethod(p, jni::GetConstructorID)) {\n";
@@ -557,7 +637,16 @@ std::string TD_TL_writer_jni_cpp::gen_additional_function(const std::string &fun
   assert(function_name == "init_jni_vars");
   std::string class_name = gen_class_name(t->name);
   std::string class_name_class = "Class";
-  std::string res =
+  std::string res;
+  for (auto &a : t->args) {
+    if (is_jni_lazy_field(t->name, a)) {
+      res += "jfieldID " + class_name + "::" + gen_field_name(a.name) + "lazy_fieldID;\n";
+    }
+  }
+  if (!res.empty()) {
+    res = "\n" + res;
+  }
+  res +=
       "\n"
       "void " +
       class_name + "::" + function_name +
@@ -593,6 +682,10 @@ std::string TD_TL_writer_jni_cpp::gen_additional_function(const std::string &fun
       }
       res += "  " + field_name + "fieldID = jni::get_field_id(env, " + class_name_class + ", \"" + java_field_name +
              "\", " + type_signature + ");\n";
+      if (is_jni_lazy_field(t->name, a)) {
+        res += "  " + field_name + "lazy_fieldID = jni::get_field_id(env, " + class_name_class + ", \"" +
+               java_field_name + "Lazy\", (PSLICE() << \"L\" << package_name << \"/LazyObject;\").c_str());\n";
+      }
     }
   }
   res += "}\n";
@@ -618,6 +711,10 @@ std::string TD_TL_writer_jni_cpp::gen_additional_proxy_function_case(const std::
                                                                      const std::string &class_name, int arity) const {
   assert(function_name == "init_jni_vars");
   assert(arity == 0);
+  if (is_lazy_jni_init()) {
+    // the class is initialized on the first use
+    return "";
+  }
   return "  " + class_name + "::" + function_name + "(env, package_name);\n";
 }
 
@@ -627,6 +724,10 @@ std::string TD_TL_writer_jni_cpp::gen_additional_proxy_function_case(const std::
                                                                      bool is_function) const {
   assert(function_name == "init_jni_vars");
   assert(arity == 0);
+  if (is_lazy_jni_init()) {
+    // the class is initialized on the first use
+    return "";
+  }
   return "  " + gen_class_name(t->name) + "::" + function_name + "(env, package_name);\n";
 }
 
@@ -22,8 +22,12 @@ class TD_TL_writer_jni_cpp final : public TD_TL_writer_cpp {
   std::string gen_vector_store(const std::string &field_name, const tl::tl_tree_type *t,
                                const std::vector<tl::var_description> &vars, int storer_type) const;
 
+  std::string gen_binary_store_class_name(const tl::tl_tree_type *tree_type) const;
+
   std::string package_name;
 
+  mutable std::string current_class_name;  // the class, which fetch or store function is generated
+
   std::string gen_java_field_name(std::string name) const;
 
   std::string gen_basic_java_class_name(std::string name) const;
@@ -32,6 +36,10 @@ class TD_TL_writer_jni_cpp final : public TD_TL_writer_cpp {
 
   std::string gen_type_signature(const tl::tl_tree_type *tree_type) const;
 
+  bool is_lazy_jni_init() const;
+
+  std::string gen_jni_vars_init(const std::string &class_name) const;
+
   std::string get_pretty_field_name(std::string field_name) const final;
 
   std::string get_pretty_class_name(std::string class_name) const final;
@@ -48,6 +56,7 @@ class TD_TL_writer_jni_cpp final : public TD_TL_writer_cpp {
   int get_parser_type(const tl::tl_combinator *t, const std::string &parser_name) const final;
   int get_additional_function_type(const std::string &additional_function_name) const final;
   std::vector<std::string> get_parsers() const final;
+  int get_storer_type(const tl::tl_combinator *t, const std::string &storer_name) const final;
   std::vector<std::string> get_storers() const final;
   std::vector<std::string> get_additional_functions() const final;
 
@@ -55,7 +64,7 @@ class TD_TL_writer_jni_cpp final : public TD_TL_writer_cpp {
   std::string gen_base_tl_class_name() const final;
 
   std::string gen_class_begin(const std::string &class_name, const std::string &base_class_name,
-                              bool is_proxy) const final;
+                              bool is_proxy, const tl::tl_tree *result) const final;
 
   std::string gen_field_definition(const std::string &class_name, const std::string &type_name,
                                    const std::string &field_name) const final;
@@ -88,6 +97,7 @@ class TD_TL_writer_jni_cpp final : public TD_TL_writer_cpp {
 
   std::string gen_store_function_begin(const std::string &storer_name, const std::string &class_name, int arity,
                                        std::vector<tl::var_description> &vars, int storer_type) const final;
+  std::string gen_store_function_end(const std::vector<tl::var_description> &vars, int storer_type) const final;
 
   std::string gen_fetch_switch_begin() const final;
   std::string gen_fetch_switch_case(const tl::tl_combinator *t, int arity) const final;
@@ -6,6 +6,8 @@
 //
 #include "tl_writer_jni_h.h"
 
+#include "tl_jni_lazy_fields.h"
+
 #include <cassert>
 
 namespace td {
@@ -36,10 +38,18 @@ std::vector<std::string> TD_TL_writer_jni_h::get_parsers() const {
   return parsers;
 }
 
+int TD_TL_writer_jni_h::get_storer_type(const tl::tl_combinator *t, const std::string &storer_name) const {
+  if (storer_name == "TlStorerBounded") {
+    return 2;
+  }
+  return TD_TL_writer_h::get_storer_type(t, storer_name);
+}
+
 std::vector<std::string> TD_TL_writer_jni_h::get_storers() const {
   std::vector<std::string> storers;
   storers.push_back("JNIEnv *env, jobject");
   storers.push_back("TlStorerToString");
+  storers.push_back("TlStorerBounded");
   return storers;
 }
 
@@ -73,7 +83,7 @@ std::string TD_TL_writer_jni_h::gen_output_begin() const {
          "\n"
 
          "namespace td {\n" +
-         forward_declaration("TlStorerToString") +
+         forward_declaration("TlStorerToString") + forward_declaration("TlStorerBounded") +
          "\n"
          "namespace " +
          tl_name +
@@ -126,7 +136,7 @@ std::string TD_TL_writer_jni_h::gen_output_begin() const {
 }
 
 std::string TD_TL_writer_jni_h::gen_class_begin(const std::string &class_name, const std::string &base_class_name,
-                                                bool is_proxy) const {
+                                                bool is_proxy, const tl::tl_tree *result) const {
   if (class_name == gen_base_tl_class_name()) {
     return "class " + class_name +
            " {\n"
@@ -138,6 +148,8 @@ std::string TD_TL_writer_jni_h::gen_class_begin(const std::string &class_name, c
            "  virtual void store(JNIEnv *env, jobject &s) const {\n"
            "  }\n\n"
            "  virtual void store(TlStorerToString &s, const char *field_name) const = 0;\n\n"
+           "  virtual void store(TlStorerBounded &s) const {\n"
+           "  }\n\n"
            "  static jclass Class;\n";
   }
   return "class " + class_name + (!is_proxy ? " final " : "") + ": public " + base_class_name +
@@ -155,7 +167,14 @@ std::string TD_TL_writer_jni_h::gen_field_definition(const std::string &class_na
 std::string TD_TL_writer_jni_h::gen_additional_function(const std::string &function_name, const tl::tl_combinator *t,
                                                         bool is_function) const {
   if (function_name == "init_jni_vars") {
-    return "\n"
+    std::string lazy_field_ids;
+    for (auto &a : t->args) {
+      if (is_jni_lazy_field(t->name, a)) {
+        lazy_field_ids += "  static jfieldID " + gen_field_name(a.name) + "lazy_fieldID;\n";
+      }
+    }
+    return lazy_field_ids +
+           "\n"
            "  static void " +
            function_name + "(JNIEnv *env, const char *package_name);\n";
   }
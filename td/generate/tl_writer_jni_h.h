@@ -26,6 +26,7 @@ class TD_TL_writer_jni_h final : public TD_TL_writer_h {
   int get_parser_type(const tl::tl_combinator *t, const std::string &parser_name) const final;
   int get_additional_function_type(const std::string &additional_function_name) const final;
   std::vector<std::string> get_parsers() const final;
+  int get_storer_type(const tl::tl_combinator *t, const std::string &storer_name) const final;
   std::vector<std::string> get_storers() const final;
   std::vector<std::string> get_additional_functions() const final;
 
@@ -35,7 +36,7 @@ class TD_TL_writer_jni_h final : public TD_TL_writer_h {
   std::string gen_output_begin() const final;
 
   std::string gen_class_begin(const std::string &class_name, const std::string &base_class_name,
-                              bool is_proxy) const final;
+                              bool is_proxy, const tl::tl_tree *result) const final;
 
   std::string gen_field_definition(const std::string &class_name, const std::string &type_name,
                                    const std::string &field_name) const final;
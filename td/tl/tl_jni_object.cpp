@@ -13,6 +13,8 @@
 #include "td/utils/Slice.h"
 #include "td/utils/SliceBuilder.h"
 
+#include <atomic>
+#include <cstring>
 #include <memory>
 
 namespace td {
@@ -34,6 +36,37 @@ jmethodID BooleanGetValueMethodID;
 jmethodID IntegerGetValueMethodID;
 jmethodID LongGetValueMethodID;
 jmethodID DoubleGetValueMethodID;
+jclass LazyObjectClass;
+jmethodID LazyObjectConstructorID;
+static jmethodID LazyObjectGetMethodID;
+static std::string TdApiJavaPackage;
+
+static constexpr jsize MAX_LOCAL_STRING_LENGTH = 256;
+
+// Java strings for short frequently repeated values, like usernames, links and language codes
+static constexpr std::size_t SHORT_STRING_CACHE_SIZE = 1024;
+static constexpr std::size_t MAX_CACHED_STRING_SIZE = 32;
+struct ShortString {
+  std::size_t size;
+  char value[MAX_CACHED_STRING_SIZE];
+
+  bool equals(const std::string &s) const {
+    return size == s.size() && std::memcmp(value, s.data(), s.size()) == 0;
+  }
+
+  void assign(const std::string &s) {
+    size = s.size();
+    std::memcpy(value, s.data(), s.size());
+  }
+};
+struct CachedString {
+  ShortString cached;     // value of java_string, if it isn't null
+  ShortString candidate;  // the last seen value, which isn't cached; valid only if has_candidate
+  bool has_candidate;
+  jstring java_string;
+};
+static CachedString short_string_cache[SHORT_STRING_CACHE_SIZE];
+static std::atomic_flag short_string_cache_lock = ATOMIC_FLAG_INIT;
 
 static void fatal_error(JNIEnv *env, CSlice error) {
   LOG(ERROR) << error;
@@ -99,6 +132,7 @@ std::unique_ptr<JNIEnv, JvmThreadDetacher> get_jni_env(JavaVM *java_vm, jint jni
 }
 
 void init_vars(JNIEnv *env, const char *td_api_java_package) {
+  TdApiJavaPackage = td_api_java_package;
   BooleanClass = get_jclass(env, "java/lang/Boolean");
   IntegerClass = get_jclass(env, "java/lang/Integer");
   LongClass = get_jclass(env, "java/lang/Long");
@@ -116,6 +150,60 @@ void init_vars(JNIEnv *env, const char *td_api_java_package) {
   IntegerGetValueMethodID = get_method_id(env, IntegerClass, "intValue", "()I");
   LongGetValueMethodID = get_method_id(env, LongClass, "longValue", "()J");
   DoubleGetValueMethodID = get_method_id(env, DoubleClass, "doubleValue", "()D");
+  LazyObjectClass = get_jclass(env, (PSLICE() << td_api_java_package << "/LazyObject").c_str());
+  LazyObjectConstructorID = get_method_id(env, LazyObjectClass, "<init>", "(J)V");
+  LazyObjectGetMethodID =
+      get_method_id(env, LazyObjectClass, "get", (PSLICE() << "()L" << td_api_java_package << "/TdApi$Object;").c_str());
+}
+
+jobject fetch_lazy_object(JNIEnv *env, jobject p, jfieldID id, jfieldID lazy_id) {
+  jobject result = env->GetObjectField(p, id);
+  if (result != nullptr) {
+    return result;
+  }
+  jobject lazy_object = env->GetObjectField(p, lazy_id);
+  if (lazy_object == nullptr) {
+    return nullptr;
+  }
+  result = env->CallObjectMethod(lazy_object, LazyObjectGetMethodID);
+  env->DeleteLocalRef(lazy_object);
+  return result;
+}
+
+const char *get_td_api_java_package() {
+  return TdApiJavaPackage.c_str();
+}
+
+static jsize get_ascii_prefix_length(const jchar *p, jsize len) {
+  jsize i = 0;
+  // check 4 characters at a time
+  for (; i + 4 <= len; i += 4) {
+    uint64 chars;
+    std::memcpy(&chars, p + i, sizeof(chars));
+    if ((chars & 0xFF80FF80FF80FF80ULL) != 0) {
+      break;
+    }
+  }
+  while (i < len && p[i] <= 0x7f) {
+    i++;
+  }
+  return i;
+}
+
+static size_t get_ascii_prefix_length(const char *p, size_t len) {
+  size_t i = 0;
+  // check 8 bytes at a time
+  for (; i + 8 <= len; i += 8) {
+    uint64 bytes;
+    std::memcpy(&bytes, p + i, sizeof(bytes));
+    if ((bytes & 0x8080808080808080ULL) != 0) {
+      break;
+    }
+  }
+  while (i < len && (p[i] & 0x80) == 0) {
+    i++;
+  }
+  return i;
 }
 
 static size_t get_utf8_from_utf16_length(const jchar *p, jsize len) {
@@ -123,7 +211,7 @@ static size_t get_utf8_from_utf16_length(const jchar *p, jsize len) {
   for (jsize i = 0; i < len; i++) {
     uint32 cur = p[i];
     if ((cur & 0xF800) == 0xD800) {
-      if (i < len) {
+      if (i + 1 < len) {
         uint32 next = p[++i];
         if ((next & 0xFC00) == 0xDC00 && (cur & 0x400) == 0) {
           result += 4;
@@ -211,44 +299,123 @@ std::string fetch_string(JNIEnv *env, jobject o, jfieldID id) {
   return res;
 }
 
+static std::string utf16_to_string(const jchar *p, jsize len) {
+  // most strings are ASCII, so their prefix is converted separately without checks for each character
+  jsize ascii_len = get_ascii_prefix_length(p, len);
+  size_t utf8_len = static_cast<size_t>(ascii_len);
+  if (ascii_len != len) {
+    size_t suffix_len = get_utf8_from_utf16_length(p + ascii_len, len - ascii_len);
+    if (suffix_len == 0) {
+      return std::string();
+    }
+    utf8_len += suffix_len;
+  }
+  std::string res(utf8_len, '\0');
+  char *dst = utf8_len ? &res[0] : nullptr;
+  for (jsize i = 0; i < ascii_len; i++) {
+    dst[i] = static_cast<char>(p[i]);
+  }
+  if (ascii_len != len) {
+    utf16_to_utf8(p + ascii_len, len - ascii_len, dst + ascii_len);
+  }
+  return res;
+}
+
 std::string from_jstring(JNIEnv *env, jstring s) {
   if (!s) {
     return std::string();
   }
   jsize s_len = env->GetStringLength(s);
+  if (s_len <= MAX_LOCAL_STRING_LENGTH) {
+    // copy short strings to a local buffer to avoid allocation of a temporary buffer in the JVM
+    jchar buf[MAX_LOCAL_STRING_LENGTH];
+    env->GetStringRegion(s, 0, s_len, buf);
+    return utf16_to_string(buf, s_len);
+  }
   const jchar *p = env->GetStringChars(s, nullptr);
   if (p == nullptr) {
     parse_error = true;
     return std::string();
   }
-  size_t len = get_utf8_from_utf16_length(p, s_len);
-  std::string res(len, '\0');
-  if (len) {
-    utf16_to_utf8(p, s_len, &res[0]);
-  }
+  std::string res = utf16_to_string(p, s_len);
   env->ReleaseStringChars(s, p);
   return res;
 }
 
-jstring to_jstring(JNIEnv *env, const std::string &s) {
+static jstring to_jstring_uncached(JNIEnv *env, const std::string &s) {
+  // NewStringUTF expects modified UTF-8 without '\0' and supplementary characters, so strings with them are
+  // converted to UTF-16 manually
+  bool has_zero = std::memchr(s.data(), '\0', s.size()) != nullptr;
+  size_t ascii_len = get_ascii_prefix_length(s.data(), s.size());
+  if (ascii_len == s.size() && !has_zero) {
+    return env->NewStringUTF(s.c_str());
+  }
   jsize surrogates = 0;
-  jsize unicode_len = get_utf16_from_utf8_length(s.c_str(), s.size(), &surrogates);
-  if (surrogates == 0) {
-    // TODO '\0'
+  jsize unicode_len = static_cast<jsize>(ascii_len) +
+                      get_utf16_from_utf8_length(s.data() + ascii_len, s.size() - ascii_len, &surrogates);
+  if (surrogates == 0 && !has_zero) {
     return env->NewStringUTF(s.c_str());
   }
   jsize result_len = surrogates + unicode_len;
-  if (result_len <= 256) {
-    jchar result[256];
-    utf8_to_utf16(s.c_str(), s.size(), result);
+  if (result_len <= MAX_LOCAL_STRING_LENGTH) {
+    jchar result[MAX_LOCAL_STRING_LENGTH];
+    for (size_t i = 0; i < ascii_len; i++) {
+      result[i] = static_cast<jchar>(s[i]);
+    }
+    utf8_to_utf16(s.data() + ascii_len, s.size() - ascii_len, result + ascii_len);
     return env->NewString(result, result_len);
   }
 
   auto result = std::make_unique<jchar[]>(result_len);
-  utf8_to_utf16(s.c_str(), s.size(), result.get());
+  for (size_t i = 0; i < ascii_len; i++) {
+    result[i] = static_cast<jchar>(s[i]);
+  }
+  utf8_to_utf16(s.data() + ascii_len, s.size() - ascii_len, result.get() + ascii_len);
   return env->NewString(result.get(), result_len);
 }
 
+static std::size_t get_short_string_hash(const std::string &s) {
+  uint32 hash = 2166136261u;
+  for (auto c : s) {
+    hash = (hash ^ static_cast<unsigned char>(c)) * 16777619u;
+  }
+  return hash;
+}
+
+static jstring get_cached_jstring(JNIEnv *env, const std::string &s) {
+  auto &entry = short_string_cache[get_short_string_hash(s) % SHORT_STRING_CACHE_SIZE];
+  if (entry.java_string != nullptr && entry.cached.equals(s)) {
+    return static_cast<jstring>(env->NewLocalRef(entry.java_string));
+  }
+  if (!entry.has_candidate || !entry.candidate.equals(s)) {
+    // a value replaces the cached Java string only after it is repeated, so unique strings don't evict cached strings
+    entry.candidate.assign(s);
+    entry.has_candidate = true;
+    return to_jstring_uncached(env, s);
+  }
+
+  jstring result = to_jstring_uncached(env, s);
+  if (result != nullptr) {
+    if (entry.java_string != nullptr) {
+      env->DeleteGlobalRef(entry.java_string);
+    }
+    entry.java_string = static_cast<jstring>(env->NewGlobalRef(result));
+    entry.cached.assign(s);
+    entry.has_candidate = false;
+  }
+  return result;
+}
+
+jstring to_jstring(JNIEnv *env, const std::string &s) {
+  if (s.size() > MAX_CACHED_STRING_SIZE || short_string_cache_lock.test_and_set(std::memory_order_acquire)) {
+    // the string is too long to be cached or the cache is used by another thread
+    return to_jstring_uncached(env, s);
+  }
+  jstring result = get_cached_jstring(env, s);
+  short_string_cache_lock.clear(std::memory_order_release);
+  return result;
+}
+
 std::string from_bytes(JNIEnv *env, jbyteArray arr) {
   std::string b;
   if (arr != nullptr) {
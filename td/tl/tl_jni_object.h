@@ -6,6 +6,8 @@
 //
 #pragma once
 
+#include "td/tl/TlObject.h"
+
 #include <jni.h>
 
 #include <cstdint>
@@ -15,6 +17,7 @@
 
 namespace td {
 namespace td_api {
+class Object;
 class keyboardButton;
 class inlineKeyboardButton;
 class pageBlockTableCell;
@@ -32,6 +35,8 @@ extern jmethodID BooleanGetValueMethodID;
 extern jmethodID IntegerGetValueMethodID;
 extern jmethodID LongGetValueMethodID;
 extern jmethodID DoubleGetValueMethodID;
+extern jclass LazyObjectClass;
+extern jmethodID LazyObjectConstructorID;
 
 jclass get_jclass(JNIEnv *env, const char *class_name);
 
@@ -97,6 +102,33 @@ jbyteArray to_bytes(JNIEnv *env, const std::string &b);
 
 void init_vars(JNIEnv *env, const char *td_api_java_package);
 
+const char *get_td_api_java_package();
+
+// resolves JNI class and field identifiers of the class T on its first use;
+// must be called only from threads, which run Java code, to find classes using the application class loader
+template <class T>
+void init_jni_vars_once(JNIEnv *env) {
+  static const bool is_inited = (T::init_jni_vars(env, get_td_api_java_package()), true);
+  static_cast<void>(is_inited);
+}
+
+// moves the object to a new Java LazyObject, which owns it until it is converted to a Java object;
+// objects are stored to Java only once right before they are destroyed, so the object can be moved out
+template <class T>
+jobject store_lazy_object(JNIEnv *env, const tl::unique_ptr<T> &object) {
+  T *native_object = const_cast<tl::unique_ptr<T> &>(object).release();
+  jobject result = env->NewObject(LazyObjectClass, LazyObjectConstructorID,
+                                  static_cast<jlong>(reinterpret_cast<std::uintptr_t>(
+                                      static_cast<td_api::Object *>(native_object))));
+  if (result == nullptr) {
+    delete native_object;
+  }
+  return result;
+}
+
+// returns value of the field, which is materialized lazily, converting the object kept by the LazyObject if needed
+jobject fetch_lazy_object(JNIEnv *env, jobject p, jfieldID id, jfieldID lazy_id);
+
 jintArray store_vector(JNIEnv *env, const std::vector<std::int32_t> &v);
 
 jlongArray store_vector(JNIEnv *env, const std::vector<std::int64_t> &v);
@@ -257,5 +289,18 @@ struct FetchVector<std::vector<T>> {
   }
 };
 
+class TlStoreNullableBoxedObject {
+ public:
+  template <class T, class StorerT>
+  static void store(const T &obj, StorerT &storer) {
+    if (obj == nullptr) {
+      storer.store_binary(static_cast<std::int32_t>(0));
+    } else {
+      storer.store_binary(obj->get_id());
+      obj->store(storer);
+    }
+  }
+};
+
 }  // namespace jni
 }  // namespace td
@@ -140,6 +140,76 @@ class TlStorerCalcLength {
   }
 };
 
+// stores data to a buffer of a limited size; if the data doesn't fit, nothing more is stored after the overflow
+class TlStorerBounded {
+  unsigned char *buf_;
+  unsigned char *end_;
+  bool is_overflowed_ = false;
+
+  bool reserve(size_t size) {
+    if (is_overflowed_ || static_cast<size_t>(end_ - buf_) < size) {
+      is_overflowed_ = true;
+      return false;
+    }
+    return true;
+  }
+
+ public:
+  TlStorerBounded(unsigned char *buf, size_t size) : buf_(buf), end_(buf + size) {
+  }
+
+  TlStorerBounded(const TlStorerBounded &other) = delete;
+  TlStorerBounded &operator=(const TlStorerBounded &other) = delete;
+
+  template <class T>
+  void store_binary(const T &x) {
+    if (reserve(sizeof(T))) {
+      std::memcpy(buf_, &x, sizeof(T));
+      buf_ += sizeof(T);
+    }
+  }
+
+  void store_int(int32 x) {
+    store_binary<int32>(x);
+  }
+
+  void store_long(int64 x) {
+    store_binary<int64>(x);
+  }
+
+  void store_slice(Slice slice) {
+    if (reserve(slice.size())) {
+      std::memcpy(buf_, slice.begin(), slice.size());
+      buf_ += slice.size();
+    }
+  }
+
+  void store_storer(const Storer &storer) {
+    if (reserve(storer.size())) {
+      buf_ += storer.store(buf_);
+    }
+  }
+
+  template <class T>
+  void store_string(const T &str) {
+    TlStorerCalcLength storer_calc_length;
+    storer_calc_length.store_string(str);
+    if (reserve(storer_calc_length.get_length())) {
+      TlStorerUnsafe storer_unsafe(buf_);
+      storer_unsafe.store_string(str);
+      buf_ = storer_unsafe.get_buf();
+    }
+  }
+
+  unsigned char *get_buf() const {
+    return buf_;
+  }
+
+  bool is_overflowed() const {
+    return is_overflowed_;
+  }
+};
+
 template <class T>
 size_t tl_calc_length(const T &data) {
   TlStorerCalcLength storer_calc_length;